@@ -0,0 +1,17 @@
+package app.weather.cache;
+
+/**
+ * 两级缓存条目变更的监听器, 通过 {@link TwoLevelCacheManager#addListener(CacheChangeListener)} 注册.
+ * 本节点写入/删除条目, 以及收到其他节点的失效消息时调用.
+ */
+@FunctionalInterface
+public interface CacheChangeListener {
+
+    /**
+     * 缓存条目已变更
+     *
+     * @param cacheName 缓存名称
+     * @param key       缓存 key, 为 null 时表示整个缓存已清空
+     */
+    void onChange(String cacheName, String key);
+}
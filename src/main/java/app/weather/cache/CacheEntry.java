@@ -0,0 +1,59 @@
+package app.weather.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 带时间戳的缓存条目, 配置了 {@link CachePolicy} 的缓存在 L1/Redis 中保存的都是该对象.
+ * 用于判断条目是否需要提前刷新, 以及过期后是否仍可作为旧值返回.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEntry {
+    /**
+     * 缓存的值
+     */
+    private Object value;
+
+    /**
+     * 写入时间 (毫秒时间戳)
+     */
+    private long createdAt;
+
+    /**
+     * 过期时间 (毫秒时间戳), 之后的条目只能在宽限期内作为旧值返回
+     */
+    private long expiresAt;
+
+    /**
+     * 旧格式 (未包装) 的缓存值, 视为一直新鲜
+     *
+     * @param value 缓存的值
+     * @return CacheEntry
+     */
+    public static CacheEntry of(Object value) {
+        return new CacheEntry(value, 0L, Long.MAX_VALUE);
+    }
+
+    /**
+     * 是否已过期
+     */
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    /**
+     * 是否已超过提前刷新阈值
+     *
+     * @param now      当前时间
+     * @param fraction 提前刷新比例, 例如 0.8 表示 TTL 过去 80% 后刷新
+     */
+    public boolean shouldRefresh(long now, double fraction) {
+        if (expiresAt == Long.MAX_VALUE || fraction <= 0 || fraction >= 1) {
+            return false;
+        }
+        return now >= createdAt + (long) ((expiresAt - createdAt) * fraction);
+    }
+}
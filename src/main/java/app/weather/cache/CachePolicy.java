@@ -0,0 +1,81 @@
+package app.weather.cache;
+
+import java.time.Duration;
+
+/**
+ * 单个缓存的过期与刷新策略
+ *
+ * @param ttl                  新鲜期
+ * @param refreshAheadFraction 提前刷新比例, TTL 过去该比例后命中时先返回当前值再异步刷新, 0 表示关闭
+ * @param staleGrace           过期后的宽限期, Redis 中的条目会额外保留该时长
+ * @param serveStale           宽限期内是否直接返回旧值并异步刷新, 关闭时过期条目按未命中处理
+ * @param negativeTtl          不可缓存的结果 (如和风天气 code 非 200) 的保留时间, 0 表示不缓存
+ * @param expiry               按上游发布时间计算新鲜期, 为 null 时固定使用 ttl
+ */
+public record CachePolicy(Duration ttl, double refreshAheadFraction, Duration staleGrace, boolean serveStale,
+                          Duration negativeTtl, UpstreamExpiry expiry) {
+
+    public CachePolicy(Duration ttl, double refreshAheadFraction, Duration staleGrace, boolean serveStale) {
+        this(ttl, refreshAheadFraction, staleGrace, serveStale, Duration.ZERO);
+    }
+
+    public CachePolicy(Duration ttl, double refreshAheadFraction, Duration staleGrace, boolean serveStale,
+                       Duration negativeTtl) {
+        this(ttl, refreshAheadFraction, staleGrace, serveStale, negativeTtl, null);
+    }
+
+    /**
+     * 新写入条目的过期时间
+     *
+     * @param value    写入的值
+     * @param now      写入时间 (毫秒时间戳)
+     * @param negative 是否为负缓存条目
+     * @return 过期时间 (毫秒时间戳)
+     */
+    public long expiresAt(Object value, long now, boolean negative) {
+        if (negative) {
+            return now + negativeTtl.toMillis();
+        }
+        return now + (expiry == null ? ttl : expiry.ttlFor(value, now, ttl)).toMillis();
+    }
+
+    /**
+     * 正常条目可能的最长新鲜期
+     */
+    public Duration maxTtl() {
+        return expiry == null || expiry.maxTtl().compareTo(ttl) <= 0 ? ttl : expiry.maxTtl();
+    }
+
+    /**
+     * 是否缓存不可缓存的结果 (负缓存)
+     */
+    public boolean cachesNegative() {
+        return negativeTtl != null && negativeTtl.isPositive();
+    }
+
+    /**
+     * Redis 中条目的实际保留时长
+     *
+     * @param value 写入的值
+     * @return TTL
+     */
+    public Duration redisTtl(Object value) {
+        return redisTtl(value, false);
+    }
+
+    /**
+     * Redis 中条目的实际保留时长, 负缓存条目过期后不作为旧值返回, 不保留宽限期
+     *
+     * @param value    写入的值
+     * @param negative 是否为负缓存条目
+     * @return TTL
+     */
+    public Duration redisTtl(Object value, boolean negative) {
+        Duration grace = negative ? Duration.ZERO : staleGrace;
+        if (value instanceof CacheEntry entry && entry.getExpiresAt() != Long.MAX_VALUE) {
+            long remaining = Math.max(entry.getExpiresAt() - System.currentTimeMillis(), 1000L);
+            return Duration.ofMillis(remaining).plus(grace);
+        }
+        return (negative ? negativeTtl : ttl).plus(grace);
+    }
+}
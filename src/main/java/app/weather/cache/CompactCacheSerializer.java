@@ -0,0 +1,193 @@
+package app.weather.cache;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 紧凑的缓存值序列化器 (Smile 二进制 JSON).
+ * <p>
+ * 与带 default typing 的 JSON 不同, 只在头部记录一次顶层类型, 嵌套对象不再携带类名. 格式:
+ * <pre>
+ * [0x00 标识][版本][标志位] + 内容 (超过阈值时 gzip 压缩)
+ * 内容 = [是否为 CacheEntry] ([createdAt][expiresAt]) [值的类名] [Smile 编码的值]
+ * </pre>
+ * 读取时兼容旧的 JSON 格式 (首字节不是 0x00), 无法识别的版本按未命中处理, 以便滚动升级格式.
+ * 写入格式可以切回 JSON (与旧版本节点混合部署或回滚时), 此时仍能读取已写入的 Smile 数据.
+ * 只允许反序列化 {@link #ALLOWED_PACKAGES} 中的类型.
+ */
+@Slf4j
+public class CompactCacheSerializer implements RedisSerializer<Object> {
+
+    private static final byte MAGIC = 0x00;
+
+    private static final byte VERSION = 1;
+
+    private static final byte FLAG_GZIP = 0x01;
+
+    private static final int HEADER_LENGTH = 3;
+
+    private static final List<String> ALLOWED_PACKAGES = List.of("app.weather.", "java.lang.", "java.util.");
+
+    private final ObjectMapper smileMapper;
+
+    private final RedisSerializer<Object> legacySerializer;
+
+    private final int compressionThreshold;
+
+    private final boolean writeCompact;
+
+    private final ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+    private final Map<String, Class<?>> types = new ConcurrentHashMap<>();
+
+    /**
+     * @param legacySerializer     旧格式 (JSON) 序列化器, 用于读取升级前写入的数据
+     * @param compressionThreshold 内容超过该字节数时 gzip 压缩, 小于等于 0 表示不压缩
+     */
+    public CompactCacheSerializer(RedisSerializer<Object> legacySerializer, int compressionThreshold) {
+        this(legacySerializer, compressionThreshold, true);
+    }
+
+    /**
+     * @param legacySerializer     旧格式 (JSON) 序列化器, 用于读取升级前写入的数据
+     * @param compressionThreshold 内容超过该字节数时 gzip 压缩, 小于等于 0 表示不压缩
+     * @param writeCompact         是否以 Smile 格式写入, 为 false 时以旧格式写入 (读取时两种格式都支持)
+     */
+    public CompactCacheSerializer(RedisSerializer<Object> legacySerializer, int compressionThreshold,
+                                  boolean writeCompact) {
+        this.legacySerializer = legacySerializer;
+        this.compressionThreshold = compressionThreshold;
+        this.writeCompact = writeCompact;
+        SmileFactory smileFactory = SmileFactory.builder()
+                // 指数/逐小时数据中大量重复的短字符串 (如 "晴", "东北风") 只写一次
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        this.smileMapper = new ObjectMapper(smileFactory);
+        smileMapper.registerModule(new JavaTimeModule());
+        smileMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        smileMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (!writeCompact) {
+            return legacySerializer.serialize(value);
+        }
+        try {
+            byte[] content = encodeContent(value);
+            boolean gzip = compressionThreshold > 0 && content.length > compressionThreshold;
+            if (gzip) {
+                content = gzip(content);
+            }
+            byte[] result = new byte[HEADER_LENGTH + content.length];
+            result[0] = MAGIC;
+            result[1] = VERSION;
+            result[2] = gzip ? FLAG_GZIP : 0;
+            System.arraycopy(content, 0, result, HEADER_LENGTH, content.length);
+            return result;
+        } catch (IOException e) {
+            throw new SerializationException("缓存值序列化失败: " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return legacySerializer.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[1] != VERSION) {
+            log.debug("无法识别的缓存值格式版本, 按未命中处理: version={}", bytes.length > 1 ? bytes[1] : null);
+            return null;
+        }
+        try {
+            byte[] content = (bytes[2] & FLAG_GZIP) != 0
+                    ? gunzip(bytes, HEADER_LENGTH)
+                    : Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+            return decodeContent(content);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SerializationException("缓存值反序列化失败", e);
+        }
+    }
+
+    private byte[] encodeContent(Object value) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(buffer);
+        Object payload = value;
+        if (value instanceof CacheEntry entry) {
+            out.writeBoolean(true);
+            out.writeLong(entry.getCreatedAt());
+            out.writeLong(entry.getExpiresAt());
+            payload = entry.getValue();
+        } else {
+            out.writeBoolean(false);
+        }
+        out.writeUTF(payload.getClass().getName());
+        out.write(smileMapper.writeValueAsBytes(payload));
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private Object decodeContent(byte[] content) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        boolean entry = in.readBoolean();
+        long createdAt = entry ? in.readLong() : 0L;
+        long expiresAt = entry ? in.readLong() : 0L;
+        Class<?> type = resolveType(in.readUTF());
+        int offset = content.length - in.available();
+        Object value = smileMapper.readValue(content, offset, content.length - offset, type);
+        return entry ? new CacheEntry(value, createdAt, expiresAt) : value;
+    }
+
+    private Class<?> resolveType(String className) throws ClassNotFoundException {
+        Class<?> type = types.get(className);
+        if (type != null) {
+            return type;
+        }
+        if (ALLOWED_PACKAGES.stream().noneMatch(className::startsWith)) {
+            throw new ClassNotFoundException("不允许反序列化的类型: " + className);
+        }
+        type = ClassUtils.forName(className, classLoader);
+        types.put(className, type);
+        return type;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(content);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes, int offset) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package app.weather.cache;
+
+import app.weather.config.CacheConfig;
+import app.weather.config.WeatherCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 集群级请求合并 (基于 Redis 租约).
+ * <p>
+ * 缓存未命中时, 各节点先尝试 {@code SET key token NX PX ttl} 获取租约:
+ * 拿到租约的节点请求上游并回填缓存; 其他节点在 waitTimeout 内轮询缓存, 命中则直接返回,
+ * 超时或租约提前释放 (上游失败) 时再自行请求上游. Redis 不可用时直接请求上游.
+ * <p>
+ * 上游返回可缓存的结果时不主动释放租约, 让其自然过期, 避免缓存回填完成前其他节点抢到租约重复请求;
+ * 其他情况 (失败、空结果、被取消或结果不可缓存) 立即释放, 等待中的节点不必等到 waitTimeout.
+ * <p>
+ * 指标: qweather.lease.outcomes{group, outcome}, qweather.upstream.requests{group}.
+ */
+@Component
+@Slf4j
+public class DistributedSingleFlight {
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final WeatherCacheProperties.Lease properties;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final CacheManager cacheManager;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    public DistributedSingleFlight(WeatherCacheProperties weatherCacheProperties,
+                                   ReactiveStringRedisTemplate redisTemplate,
+                                   CacheManager cacheManager,
+                                   MeterRegistry meterRegistry) {
+        this.properties = weatherCacheProperties.getLease();
+        this.redisTemplate = redisTemplate;
+        this.cacheManager = cacheManager;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 执行上游请求, 启用租约时同一缓存 key 在整个集群内同时只有一个节点请求上游
+     *
+     * @param cacheName 缓存名称, 未拿到租约时从该缓存等待回填
+     * @param key       缓存 key
+     * @param loader    上游请求
+     * @return 上游结果或其他节点回填的缓存值
+     */
+    public <T> Mono<T> execute(String cacheName, String key, Supplier<Mono<T>> loader) {
+        return execute(cacheName, key, loader, () -> readCache(cacheName, key));
+    }
+
+    /**
+     * 执行上游请求, 未拿到租约时通过 probe 检查其他节点是否已回填 (用于不经过 Spring Cache 的存储)
+     *
+     * @param cacheName 分组 (一般为缓存名称), 与 key 一起组成租约 key
+     * @param key       请求 key
+     * @param loader    上游请求
+     * @param probe     读取已回填的值, 未回填时返回空
+     * @return 上游结果或其他节点回填的值
+     */
+    public <T> Mono<T> execute(String cacheName, String key, Supplier<Mono<T>> loader, Supplier<Mono<T>> probe) {
+        if (!properties.isEnabled()) {
+            return fetch(cacheName, loader);
+        }
+        String leaseKey = properties.getKeyPrefix() + cacheName + ":" + key;
+        String token = nodeId + ":" + UUID.randomUUID();
+        return redisTemplate.opsForValue()
+                .setIfAbsent(leaseKey, token, properties.getTtl())
+                .onErrorResume(e -> {
+                    log.warn("获取上游请求租约失败, 直接请求上游: key={}, error={}", leaseKey, e.getMessage());
+                    record(cacheName, "error");
+                    return Mono.just(true);
+                })
+                .flatMap(acquired -> {
+                    if (Boolean.TRUE.equals(acquired)) {
+                        record(cacheName, "acquired");
+                        AtomicBoolean filled = new AtomicBoolean();
+                        return fetch(cacheName, loader)
+                                .doOnNext(value -> filled.set(CacheConfig.isCacheable(value)))
+                                // 没有回填缓存时尽快释放租约, 让等待中的节点自行请求
+                                .doFinally(signal -> {
+                                    if (!filled.get()) {
+                                        release(leaseKey, token);
+                                    }
+                                });
+                    }
+                    return waitForFill(cacheName, key, leaseKey, probe)
+                            .doOnNext(value -> record(cacheName, "filled"))
+                            .switchIfEmpty(Mono.defer(() -> {
+                                record(cacheName, "fallback");
+                                return fetch(cacheName, loader);
+                            }));
+                });
+    }
+
+    /**
+     * 读取 Spring Cache 中已回填的值. 两级缓存通过 {@link TwoLevelCache#readFilled(Object)} 读取,
+     * 回填的条目原样返回给本节点的加载, 不会以当前时间重新写入
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> readCache(String cacheName, String key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null) {
+            return Mono.empty();
+        }
+        if (cache instanceof TwoLevelCache twoLevelCache) {
+            return Mono.fromFuture(() -> twoLevelCache.readFilled(key)).map(value -> (T) value);
+        }
+        return Mono.fromFuture(() -> (CompletableFuture<Object>) cache.retrieve(key))
+                .mapNotNull(value -> (T) unwrap(value));
+    }
+
+    /**
+     * 轮询直到被其他节点回填, 超时或租约已释放时返回空
+     */
+    private <T> Mono<T> waitForFill(String cacheName, String key, String leaseKey, Supplier<Mono<T>> probe) {
+        return Flux.interval(properties.getPollInterval())
+                // 单次轮询慢于间隔时丢弃多余的 tick, 避免 interval 溢出
+                .onBackpressureDrop()
+                .concatMap(tick -> probe.get()
+                        .switchIfEmpty(redisTemplate.hasKey(leaseKey)
+                                // 租约已释放且缓存仍为空, 说明持有者请求失败, 不再等待
+                                .flatMap(leased -> leased ? Mono.empty() : Mono.error(new LeaseReleasedException()))))
+                .next()
+                .timeout(properties.getWaitTimeout(), Mono.empty())
+                .onErrorResume(e -> {
+                    if (!(e instanceof LeaseReleasedException)) {
+                        log.warn("等待缓存回填失败: cache={}, key={}, error={}", cacheName, key, e.getMessage());
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    private <T> Mono<T> fetch(String cacheName, Supplier<Mono<T>> loader) {
+        return Mono.defer(() -> {
+            Counter.builder("qweather.upstream.requests")
+                    .description("实际发往和风天气的请求次数")
+                    .tag("group", cacheName)
+                    .register(meterRegistry)
+                    .increment();
+            return loader.get();
+        });
+    }
+
+    private void release(String leaseKey, String token) {
+        redisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey), List.of(token))
+                .subscribe(null, e -> log.warn("释放上游请求租约失败: key={}, error={}", leaseKey, e.getMessage()));
+    }
+
+    private void record(String cacheName, String outcome) {
+        Counter.builder("qweather.lease.outcomes")
+                .description("集群级请求合并结果: acquired/filled/fallback/error")
+                .tags("group", cacheName, "outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static Object unwrap(Object value) {
+        return value instanceof Cache.ValueWrapper wrapper ? wrapper.get() : value;
+    }
+
+    private static class LeaseReleasedException extends RuntimeException {
+        LeaseReleasedException() {
+            super(null, null, false, false);
+        }
+    }
+}
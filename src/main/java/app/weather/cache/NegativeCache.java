@@ -0,0 +1,105 @@
+package app.weather.cache;
+
+import app.weather.config.WeatherCacheProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * 上游错误的负缓存 (进程内).
+ * <p>
+ * 上游对某个 key 返回 4xx/5xx 后, 在 qweather.cache.negative.client-error-ttl / server-error-ttl 内
+ * 同一 group + key 的请求直接返回该错误, 不再请求上游; 用于吸收爬虫等对无效坐标的重复请求.
+ * 401/403/429 与 key 无关 (鉴权/限流), 不缓存. 网络错误与超时由熔断器处理, 也不缓存.
+ * <p>
+ * code 非 200 的正常响应由 {@link TwoLevelCache} 负缓存.
+ * <p>
+ * 指标: qweather.cache.negative{cache, type=error, result=hit|store}.
+ */
+@Component
+public class NegativeCache {
+
+    private final WeatherCacheProperties.Negative properties;
+
+    private final Cache<String, Failure> failures;
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public NegativeCache(WeatherCacheProperties weatherCacheProperties, MeterRegistry meterRegistry) {
+        this.properties = weatherCacheProperties.getNegative();
+        this.meterRegistry = meterRegistry;
+        Duration maxTtl = properties.getClientErrorTtl().compareTo(properties.getServerErrorTtl()) > 0
+                ? properties.getClientErrorTtl() : properties.getServerErrorTtl();
+        this.failures = CacheBuilder.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(maxTtl.isPositive() ? maxTtl : Duration.ofSeconds(1))
+                .build();
+    }
+
+    /**
+     * 执行上游请求, 最近失败过的 group + key 直接返回缓存的错误
+     *
+     * @param group  分组, 一般为缓存名称
+     * @param key    请求 key, 与缓存 key 一致
+     * @param loader 上游请求
+     * @return 上游结果
+     */
+    public <T> Mono<T> guard(String group, String key, Supplier<Mono<T>> loader) {
+        if (!properties.isEnabled()) {
+            return Mono.defer(loader);
+        }
+        String failureKey = group + ":" + key;
+        return Mono.defer(() -> {
+            Failure failure = failures.getIfPresent(failureKey);
+            if (failure != null) {
+                if (System.currentTimeMillis() < failure.expiresAt()) {
+                    counter(group, "hit").increment();
+                    return Mono.error(failure.error());
+                }
+                failures.invalidate(failureKey);
+            }
+            return loader.get().doOnError(error -> {
+                Duration ttl = ttl(error);
+                if (ttl.isPositive()) {
+                    failures.put(failureKey, new Failure(error, System.currentTimeMillis() + ttl.toMillis()));
+                    counter(group, "store").increment();
+                }
+            });
+        });
+    }
+
+    private Duration ttl(Throwable error) {
+        if (!(error instanceof WebClientResponseException response)) {
+            return Duration.ZERO;
+        }
+        int status = response.getStatusCode().value();
+        if (status == HttpStatus.UNAUTHORIZED.value() || status == HttpStatus.FORBIDDEN.value()
+                || status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            return Duration.ZERO;
+        }
+        if (response.getStatusCode().is4xxClientError()) {
+            return properties.getClientErrorTtl();
+        }
+        return response.getStatusCode().is5xxServerError() ? properties.getServerErrorTtl() : Duration.ZERO;
+    }
+
+    private Counter counter(String group, String result) {
+        return Counter.builder("qweather.cache.negative")
+                .description("负缓存 (上游错误) 的写入与命中次数")
+                .tags("cache", group, "type", "error", "result", result)
+                .register(meterRegistry);
+    }
+
+    private record Failure(Throwable error, long expiresAt) {
+    }
+}
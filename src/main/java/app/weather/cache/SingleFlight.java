@@ -0,0 +1,68 @@
+package app.weather.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 进程内请求合并 (single-flight).
+ * <p>
+ * 同一 group + key 同时只会有一个上游请求在执行, 期间到达的其他调用直接共享该请求的结果;
+ * 请求结束 (成功或失败) 后立即移除, 之后的调用重新发起请求.
+ * <p>
+ * 指标: qweather.singleflight.calls{group, role=leader|follower},
+ * leader 表示实际发起上游请求的调用, follower 表示被合并的调用.
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentMap<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("qweather.singleflight.inflight", inFlight, ConcurrentMap::size);
+    }
+
+    /**
+     * 执行请求, 相同 group + key 的并发调用共享同一个上游 Mono
+     *
+     * @param group  分组, 一般为缓存名称
+     * @param key    请求 key, 一般与缓存 key 一致
+     * @param loader 上游请求, 只有 leader 会订阅
+     * @return 共享的结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String group, String key, Supplier<Mono<T>> loader) {
+        return Mono.defer(() -> {
+            String flightKey = group + ":" + key;
+            Mono<?>[] self = new Mono<?>[1];
+            Mono<T> candidate = Mono.defer(loader)
+                    .doFinally(signal -> inFlight.remove(flightKey, self[0]))
+                    .cache();
+            self[0] = candidate;
+            Mono<?> existing = inFlight.putIfAbsent(flightKey, candidate);
+            if (existing == null) {
+                counter(group, "leader").increment();
+                return candidate;
+            }
+            counter(group, "follower").increment();
+            return (Mono<T>) existing;
+        });
+    }
+
+    private Counter counter(String group, String role) {
+        return Counter.builder("qweather.singleflight.calls")
+                .description("合并后的上游调用次数, leader 为实际发起请求, follower 为被合并的请求")
+                .tags("group", group, "role", role)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,519 @@
+package app.weather.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 两级缓存: 进程内 L1 (Guava) + Redis L2.
+ * <p>
+ * 读取时优先命中 L1, 未命中再读取 Redis 并回填 L1; 写入/删除时同时作用于两级,
+ * 并通过 {@link TwoLevelCacheManager} 广播失效消息, 让其他节点丢弃各自的 L1 副本.
+ * <p>
+ * 不可缓存的结果 (和风天气 code 非 200) 在配置了负缓存时以较短的 TTL 保存, 命中时直接返回, 过期后同步加载.
+ * 指标: qweather.cache.negative{cache, type=code, result=hit|store}.
+ * <p>
+ * 配置了 {@link CachePolicy} 的缓存以 {@link CacheEntry} 保存, 通过
+ * {@link #retrieve(Object, Supplier)} (即 {@code @Cacheable(sync = true)}) 读取时:
+ * <ul>
+ *     <li>超过提前刷新阈值: 返回当前值, 并在后台调用 valueLoader 刷新</li>
+ *     <li>已过期但仍在宽限期内: 允许时返回旧值并在后台刷新, 否则同步加载</li>
+ * </ul>
+ * 同一 key 的并发未命中合并为一次加载: 只查询一次 Redis、调用一次 valueLoader 并写入一次 (一次 L1 写入、
+ * 一次 Redis 写入、一次失效广播), 其他请求等待同一个结果.
+ * 指标: qweather.cache.loads{cache, role=leader|follower}.
+ * <p>
+ * 注意: L1 中保存的是反序列化后的对象本身, 调用方不应修改缓存返回的对象.
+ */
+@Slf4j
+public class TwoLevelCache implements Cache {
+
+    private final String name;
+
+    private final RedisCache redisCache;
+
+    private final com.google.common.cache.Cache<String, Object> localCache;
+
+    private final TwoLevelCacheManager cacheManager;
+
+    private final CachePolicy policy;
+
+    /**
+     * 是否允许写入缓存, 例如和风天气返回 code 非 200 时不缓存
+     */
+    private final Predicate<Object> cacheable;
+
+    /**
+     * 正在加载的 key -> 加载结果, 见 {@link #flight(String, Supplier)}
+     */
+    private final ConcurrentMap<String, CompletableFuture<CacheEntry>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 正在加载的 key -> 等待租约时读到的其他节点回填的条目, 见 {@link #readFilled(Object)}
+     */
+    private final ConcurrentMap<String, CacheEntry> filled = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final Counter redisHitCounter;
+
+    private final Counter redisMissCounter;
+
+    private final Counter staleServeCounter;
+
+    private final Counter negativeHitCounter;
+
+    private final Counter negativeStoreCounter;
+
+    private final Counter leaderCounter;
+
+    private final Counter followerCounter;
+
+    public TwoLevelCache(String name, RedisCache redisCache, com.google.common.cache.Cache<String, Object> localCache,
+                         TwoLevelCacheManager cacheManager, CachePolicy policy, Predicate<Object> cacheable,
+                         MeterRegistry meterRegistry) {
+        this.name = name;
+        this.redisCache = redisCache;
+        this.localCache = localCache;
+        this.cacheManager = cacheManager;
+        this.policy = policy;
+        this.cacheable = cacheable;
+        this.meterRegistry = meterRegistry;
+        this.redisHitCounter = Counter.builder("cache.gets")
+                .tags("cache", name, "tier", "l2", "result", "hit")
+                .register(meterRegistry);
+        this.redisMissCounter = Counter.builder("cache.gets")
+                .tags("cache", name, "tier", "l2", "result", "miss")
+                .register(meterRegistry);
+        this.staleServeCounter = Counter.builder("qweather.cache.stale.serves")
+                .description("过期后在宽限期内返回旧值的次数")
+                .tag("cache", name)
+                .register(meterRegistry);
+        this.negativeHitCounter = negativeCounter(name, "hit", meterRegistry);
+        this.negativeStoreCounter = negativeCounter(name, "store", meterRegistry);
+        this.leaderCounter = loadCounter(name, "leader", meterRegistry);
+        this.followerCounter = loadCounter(name, "follower", meterRegistry);
+    }
+
+    private static Counter loadCounter(String cacheName, String role, MeterRegistry meterRegistry) {
+        return Counter.builder("qweather.cache.loads")
+                .description("缓存加载次数, leader 为实际执行的加载, follower 为合并到进行中加载的请求")
+                .tags("cache", cacheName, "role", role)
+                .register(meterRegistry);
+    }
+
+    private static Counter negativeCounter(String cacheName, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("qweather.cache.negative")
+                .description("负缓存 (code 非 200) 的写入与命中次数")
+                .tags("cache", cacheName, "type", "code", "result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    /**
+     * 缓存策略, 未配置时返回 null
+     */
+    public CachePolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = toLocalKey(key);
+        Object local = localCache.getIfPresent(localKey);
+        if (local == null) {
+            ValueWrapper wrapper = redisCache.get(key);
+            recordRedisLookup(wrapper);
+            if (wrapper == null || wrapper.get() == null) {
+                return null;
+            }
+            local = wrapper.get();
+            localCache.put(localKey, local);
+        }
+        CacheEntry entry = toEntry(local);
+        return entry.isExpired(System.currentTimeMillis()) ? null : new SimpleValueWrapper(entry.getValue());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public CompletableFuture<?> retrieve(Object key) {
+        return lookupEntry(key, toLocalKey(key)).thenApply(entry -> {
+            if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+                return null;
+            }
+            if (isNegative(entry)) {
+                negativeHitCounter.increment();
+            }
+            return entry.getValue();
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        return retrieveEntry(key, valueLoader).thenApply(entry -> entry == null ? null : (T) entry.getValue());
+    }
+
+    /**
+     * 与 {@link #retrieve(Object, Supplier)} 相同, 但返回缓存条目, 调用方可以据此判断返回的是否为旧值
+     * (已过期、仍在宽限期内的条目). 新加载的值包装为新鲜的条目.
+     *
+     * @param key         缓存 key
+     * @param valueLoader 未命中或需要刷新时的加载函数
+     * @return 缓存条目, 加载结果为空时为 null
+     */
+    public <T> CompletableFuture<CacheEntry> retrieveEntry(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        return retrieveEntry(key, valueLoader, valueLoader);
+    }
+
+    /**
+     * 与 {@link #retrieveEntry(Object, Supplier)} 相同, 但后台刷新 (提前刷新、返回旧值后的刷新) 使用单独的加载函数,
+     * 调用方可以据此降低刷新请求的优先级
+     *
+     * @param key           缓存 key
+     * @param valueLoader   未命中时的加载函数
+     * @param refreshLoader 后台刷新时的加载函数
+     * @return 缓存条目, 加载结果为空时为 null
+     */
+    public <T> CompletableFuture<CacheEntry> retrieveEntry(Object key, Supplier<CompletableFuture<T>> valueLoader,
+                                                           Supplier<CompletableFuture<T>> refreshLoader) {
+        String localKey = toLocalKey(key);
+        Object local = localCache.getIfPresent(localKey);
+        if (local != null) {
+            CacheEntry served = serve(key, localKey, toEntry(local), refreshLoader, false);
+            if (served != null) {
+                return CompletableFuture.completedFuture(served);
+            }
+        }
+        return flight(localKey, () -> lookupEntry(key, localKey).thenCompose(entry -> {
+            CacheEntry served = entry == null ? null : serve(key, localKey, entry, refreshLoader, true);
+            return served != null ? CompletableFuture.completedFuture(served) : load(key, localKey, valueLoader);
+        }));
+    }
+
+    /**
+     * 立即重新加载 key 并写入缓存 (如热点预取), 与未命中的加载、后台刷新共用 {@link #flight(String, Supplier)}:
+     * 同一 key 正在加载时等待同一结果; valueLoader 返回其他节点回填的值时不重复写入
+     *
+     * @param key         缓存 key
+     * @param valueLoader 加载函数
+     * @return 缓存条目, 加载结果为空时为 null
+     */
+    public <T> CompletableFuture<CacheEntry> reload(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        String localKey = toLocalKey(key);
+        return flight(localKey, () -> load(key, localKey, valueLoader));
+    }
+
+    /**
+     * 按缓存策略处理已有的条目: 可以直接返回时返回该条目 (必要时在后台刷新), 需要同步加载时返回 null
+     *
+     * @param refreshLoader 后台刷新时的加载函数
+     * @param inFlight      是否在该 key 的 {@link #flight(String, Supplier)} 中调用, 是则在其完成后再刷新
+     */
+    private <T> CacheEntry serve(Object key, String localKey, CacheEntry entry,
+                                 Supplier<CompletableFuture<T>> refreshLoader, boolean inFlight) {
+        long now = System.currentTimeMillis();
+        if (isNegative(entry)) {
+            // 负缓存条目不提前刷新, 过期后也不作为旧值返回
+            if (entry.isExpired(now)) {
+                return null;
+            }
+            negativeHitCounter.increment();
+            return entry;
+        }
+        if (!entry.isExpired(now)) {
+            if (policy != null && entry.shouldRefresh(now, policy.refreshAheadFraction())) {
+                refresh(key, localKey, refreshLoader, "ahead", inFlight);
+            }
+            return entry;
+        }
+        if (policy != null && policy.serveStale()) {
+            staleServeCounter.increment();
+            refresh(key, localKey, refreshLoader, "stale", inFlight);
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * 同一 key 同时只有一次加载 (Redis 查询、上游请求与写入), 并发的请求等待同一个结果.
+     * 每个调用方拿到的是结果的副本, 单个调用方取消不会影响加载本身
+     */
+    private CompletableFuture<CacheEntry> flight(String localKey, Supplier<CompletableFuture<CacheEntry>> task) {
+        CompletableFuture<CacheEntry> created = new CompletableFuture<>();
+        CompletableFuture<CacheEntry> existing = loading.putIfAbsent(localKey, created);
+        if (existing != null) {
+            followerCounter.increment();
+            return existing.copy();
+        }
+        leaderCounter.increment();
+        CompletableFuture<CacheEntry> result;
+        try {
+            result = task.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((entry, ex) -> {
+            loading.remove(localKey, created);
+            if (ex != null) {
+                created.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null
+                        ? ex.getCause() : ex);
+            } else {
+                created.complete(entry);
+            }
+        });
+        return created.copy();
+    }
+
+    /**
+     * 读取其他节点回填的值, 供 {@link DistributedSingleFlight} 等待租约时轮询 (与 {@link #retrieve(Object)} 相同,
+     * 不返回已过期的条目). 本节点正在加载该 key 时记录读到的条目, 加载拿到同一个值后直接使用该条目, 不再重复写入
+     *
+     * @param key 缓存 key
+     * @return 缓存的值, 不存在或已过期时为 null
+     */
+    public CompletableFuture<Object> readFilled(Object key) {
+        String localKey = toLocalKey(key);
+        return lookupEntry(key, localKey).thenApply(entry -> {
+            if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+                return null;
+            }
+            if (loading.containsKey(localKey)) {
+                filled.put(localKey, entry);
+            }
+            return entry.getValue();
+        });
+    }
+
+    /**
+     * 读取缓存条目, 包括已过期但仍在宽限期内的条目
+     *
+     * @param key 缓存 key
+     * @return 缓存条目, 不存在时为 null
+     */
+    public CompletableFuture<CacheEntry> retrieveEntry(Object key) {
+        return lookupEntry(key, toLocalKey(key));
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            evict(key);
+            return;
+        }
+        store(key, toLocalKey(key), value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = get(key);
+        if (existing == null) {
+            put(key, value);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        String localKey = toLocalKey(key);
+        localCache.invalidate(localKey);
+        cacheManager.notifyChange(name, localKey);
+        cacheManager.publishInvalidation(name, localKey);
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCache.invalidateAll();
+        cacheManager.notifyChange(name, null);
+        cacheManager.publishInvalidation(name, null);
+    }
+
+    /**
+     * 仅清除本节点的 L1 缓存 (收到其他节点的失效通知时调用)
+     *
+     * @param key 缓存 key, 为 null 时清空全部
+     */
+    void evictLocal(String key) {
+        if (key == null) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(key);
+        }
+    }
+
+    private CompletableFuture<CacheEntry> lookupEntry(Object key, String localKey) {
+        Object local = localCache.getIfPresent(localKey);
+        if (local != null) {
+            return CompletableFuture.completedFuture(toEntry(local));
+        }
+        return redisCache.retrieve(key).thenApply(wrapper -> {
+            recordRedisLookup(wrapper);
+            if (wrapper == null || wrapper.get() == null) {
+                return null;
+            }
+            localCache.put(localKey, wrapper.get());
+            return toEntry(wrapper.get());
+        });
+    }
+
+    /**
+     * 调用 valueLoader 并写入缓存. valueLoader 返回的是其他节点回填的值 (见 {@link #readFilled(Object)}) 时
+     * 直接返回已有的条目, 不再重复写入 (否则会以当前时间重新计算过期时间并再次广播失效消息)
+     */
+    private <T> CompletableFuture<CacheEntry> load(Object key, String localKey,
+                                                   Supplier<CompletableFuture<T>> valueLoader) {
+        CompletableFuture<T> future;
+        try {
+            future = valueLoader.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.handle((value, ex) -> {
+            CacheEntry found = filled.remove(localKey);
+            if (ex != null) {
+                throw ex instanceof CompletionException completion ? completion : new CompletionException(ex);
+            }
+            if (value == null) {
+                return null;
+            }
+            if (found != null && found.getValue() == value) {
+                return found;
+            }
+            return store(key, localKey, value);
+        });
+    }
+
+    private <T> void refresh(Object key, String localKey, Supplier<CompletableFuture<T>> valueLoader, String trigger,
+                             boolean inFlight) {
+        CompletableFuture<CacheEntry> current = inFlight ? loading.get(localKey) : null;
+        if (current != null) {
+            current.whenComplete((entry, ex) -> refreshInBackground(key, localKey, valueLoader, trigger));
+        } else {
+            refreshInBackground(key, localKey, valueLoader, trigger);
+        }
+    }
+
+    /**
+     * 后台刷新与未命中的加载共用 {@link #flight(String, Supplier)}: 同一 key 正在加载时不再刷新,
+     * 刷新只写入一次. valueLoader 经过集群租约时, 未拿到租约的节点直接使用已有的条目, 不重复刷新与写入
+     */
+    private <T> void refreshInBackground(Object key, String localKey, Supplier<CompletableFuture<T>> valueLoader,
+                                         String trigger) {
+        if (loading.containsKey(localKey)) {
+            return;
+        }
+        flight(localKey, () -> load(key, localKey, valueLoader).whenComplete((entry, ex) -> {
+            if (ex != null) {
+                log.warn("后台刷新缓存失败: cache={}, key={}, error={}", name, localKey, ex.getMessage());
+            }
+            Counter.builder("qweather.cache.refreshes")
+                    .description("后台刷新次数, trigger=ahead 为提前刷新, stale 为过期后返回旧值时的刷新")
+                    .tags("cache", name, "trigger", trigger, "result", ex == null ? "success" : "failure")
+                    .register(meterRegistry)
+                    .increment();
+        }));
+    }
+
+    /**
+     * 可缓存的结果正常写入; 不可缓存的结果在配置了负缓存时以 {@link CachePolicy#negativeTtl()} 写入, 否则丢弃
+     *
+     * @return 写入的条目 (未写入时为新鲜的条目)
+     */
+    private CacheEntry store(Object key, String localKey, Object value) {
+        if (cacheable.test(value)) {
+            return write(key, localKey, value, false);
+        }
+        if (policy != null && policy.cachesNegative()) {
+            negativeStoreCounter.increment();
+            return write(key, localKey, value, true);
+        }
+        return CacheEntry.of(value);
+    }
+
+    /**
+     * 写入两级缓存. L1 立即生效, Redis 写入在弹性线程池中异步执行, 完成后再通知其他节点
+     */
+    private CacheEntry write(Object key, String localKey, Object value, boolean negative) {
+        long now = System.currentTimeMillis();
+        Object stored = policy != null ? new CacheEntry(value, now, policy.expiresAt(value, now, negative)) : value;
+        localCache.put(localKey, stored);
+        cacheManager.notifyChange(name, localKey);
+        Mono.fromRunnable(() -> redisCache.put(key, stored))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null,
+                        e -> log.warn("写入 Redis 缓存失败: cache={}, key={}, error={}", name, localKey, e.getMessage()),
+                        () -> cacheManager.publishInvalidation(name, localKey));
+        return toEntry(stored);
+    }
+
+    private void recordRedisLookup(ValueWrapper wrapper) {
+        if (wrapper != null && wrapper.get() != null) {
+            redisHitCounter.increment();
+        } else {
+            redisMissCounter.increment();
+        }
+    }
+
+    private boolean isNegative(CacheEntry entry) {
+        return policy != null && !cacheable.test(entry.getValue());
+    }
+
+    private static CacheEntry toEntry(Object value) {
+        return value instanceof CacheEntry entry ? entry : CacheEntry.of(value);
+    }
+
+    private static String toLocalKey(Object key) {
+        return String.valueOf(key);
+    }
+}
@@ -0,0 +1,199 @@
+package app.weather.cache;
+
+import app.weather.config.WeatherCacheProperties;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * 两级缓存管理器, 为 {@link RedisCacheManager} 中的每个缓存包装一层进程内 L1.
+ * 关闭 L1 时仍使用 {@link TwoLevelCache} 包装, 以便应用 {@link CachePolicy} 中的刷新策略.
+ * <p>
+ * 各节点通过 Redis Pub/Sub 广播写入/删除事件, 收到其他节点的消息后丢弃本地对应的 L1 条目,
+ * 下次读取时回源 Redis, 保证多副本之间不会长期返回不一致的数据.
+ * 消息格式: {@code nodeId:cacheName[:key]}, 不带 key 表示清空整个缓存.
+ * <p>
+ * 本节点的写入/删除与其他节点的失效消息都会通知 {@link CacheChangeListener}, 供依赖缓存内容的上层缓存失效.
+ * 关闭 L1 时不收发失效消息, 监听器只能收到本节点的变更.
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, InitializingBean, DisposableBean {
+
+    private final RedisCacheManager redisCacheManager;
+
+    private final WeatherCacheProperties.L1 properties;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 各缓存的过期与刷新策略, 未配置的缓存直接保存原始值
+     */
+    private final Map<String, CachePolicy> policies;
+
+    /**
+     * 是否允许写入缓存
+     */
+    private final Predicate<Object> cacheable;
+
+    /**
+     * 当前节点标识, 用于忽略自己发出的失效消息
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    private final List<CacheChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private Disposable subscription;
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager, WeatherCacheProperties.L1 properties,
+                                ReactiveStringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+                                Map<String, CachePolicy> policies, Predicate<Object> cacheable) {
+        this.redisCacheManager = redisCacheManager;
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.policies = policies;
+        this.cacheable = cacheable;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    private TwoLevelCache createCache(String name) {
+        Cache cache = redisCacheManager.getCache(name);
+        if (!(cache instanceof RedisCache redisCache)) {
+            return null;
+        }
+        WeatherCacheProperties.Spec spec = properties.specFor(name);
+        // L1 的过期时间不能超过 Redis 中配置的 TTL
+        Duration ttl = spec.getTtl();
+        Duration redisTtl = redisCache.getCacheConfiguration().getTtlFunction().getTimeToLive(name, null);
+        if (redisTtl != null && !redisTtl.isZero() && !redisTtl.isNegative() && redisTtl.compareTo(ttl) < 0) {
+            ttl = redisTtl;
+        }
+        // 关闭 L1 时容量为 0, 写入即淘汰, 只保留过期/刷新策略
+        long maxSize = properties.isEnabled() ? spec.getMaxSize() : 0;
+        com.google.common.cache.Cache<String, Object> localCache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, localCache, name, Tags.of("tier", "l1"));
+        CachePolicy policy = policies.get(name);
+        log.info("初始化两级缓存: name={}, l1MaxSize={}, l1Ttl={}, redisTtl={}, policy={}", name, maxSize, ttl, redisTtl, policy);
+        return new TwoLevelCache(name, redisCache, localCache, this, policy, cacheable, meterRegistry);
+    }
+
+    /**
+     * 注册缓存变更监听器
+     *
+     * @param listener 监听器
+     */
+    public void addListener(CacheChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 通知缓存变更监听器
+     *
+     * @param cacheName 缓存名称
+     * @param key       缓存 key, 为 null 时表示清空整个缓存
+     */
+    void notifyChange(String cacheName, String key) {
+        for (CacheChangeListener listener : listeners) {
+            try {
+                listener.onChange(cacheName, key);
+            } catch (RuntimeException e) {
+                log.warn("缓存变更监听器执行失败: cache={}, key={}, error={}", cacheName, key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 广播失效消息, 通知其他节点丢弃对应的 L1 条目
+     *
+     * @param cacheName 缓存名称
+     * @param key       缓存 key, 为 null 时表示清空整个缓存
+     */
+    void publishInvalidation(String cacheName, String key) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        String message = key == null ? nodeId + ":" + cacheName : nodeId + ":" + cacheName + ":" + key;
+        redisTemplate.convertAndSend(properties.getInvalidationChannel(), message)
+                .subscribe(null, e -> log.warn("发送 L1 缓存失效消息失败: cache={}, key={}, error={}",
+                        cacheName, key, e.getMessage()));
+    }
+
+    /**
+     * 处理其他节点发出的失效消息
+     *
+     * @param message 消息内容
+     */
+    private void onInvalidation(String message) {
+        String[] parts = message.split(":", 3);
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[1]);
+        if (cache != null) {
+            cache.evictLocal(parts.length == 3 ? parts[2] : null);
+        }
+        notifyChange(parts[1], parts.length == 3 ? parts[2] : null);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        redisCacheManager.getCacheNames().forEach(this::getCache);
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // listenToChannel 会立即建立连接, 用 defer 包装使 Redis 不可用时也能在后台重试而不阻塞启动
+        subscription = Flux.defer(() -> redisTemplate.listenToChannel(properties.getInvalidationChannel()))
+                .doOnSubscribe(s -> log.info("订阅 L1 缓存失效频道: {}", properties.getInvalidationChannel()))
+                .doOnError(e -> log.warn("L1 缓存失效频道订阅异常, 稍后重试: {}", e.getMessage()))
+                // 订阅中断期间无法收到其他节点的失效消息, 清空 L1 以免返回过期数据
+                .doOnError(e -> caches.values().forEach(cache -> cache.evictLocal(null)))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(message -> onInvalidation(message.getMessage()));
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
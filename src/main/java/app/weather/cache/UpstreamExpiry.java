@@ -0,0 +1,74 @@
+package app.weather.cache;
+
+import app.weather.model.qweather.QWeatherApiResponseBase;
+import app.weather.model.qweather.RealTimeWeatherResponse;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按上游发布时间计算缓存条目的过期时间.
+ * <p>
+ * 和风天气的数据按固定节奏发布, 下一次发布时间约为 updateTime (实时天气取 updateTime 与 obsTime 中较晚者) + cadence.
+ * 条目在此之前保持新鲜, 结果限制在 [minTtl, maxTtl] 内: 上游发布延迟时按 minTtl 重试, 时间异常时不超过 maxTtl.
+ * 最后随机缩短最多 jitter 比例, 避免同时写入的大量 key 同时过期. 无法解析发布时间时使用固定 TTL (同样加抖动).
+ *
+ * @param cadence 上游发布间隔
+ * @param minTtl  最短 TTL
+ * @param maxTtl  最长 TTL
+ * @param jitter  随机缩短的最大比例, 0 表示不抖动
+ */
+public record UpstreamExpiry(Duration cadence, Duration minTtl, Duration maxTtl, double jitter) {
+
+    private static final long MIN_TTL_MILLIS = 1000L;
+
+    /**
+     * 计算 TTL
+     *
+     * @param value    写入的值
+     * @param now      当前时间 (毫秒时间戳)
+     * @param fallback 无法获取发布时间时使用的固定 TTL
+     * @return TTL
+     */
+    public Duration ttlFor(Object value, long now, Duration fallback) {
+        Long publishedAt = publishedAt(value);
+        long ttl = publishedAt == null
+                ? fallback.toMillis()
+                : Math.min(Math.max(publishedAt + cadence.toMillis() - now, minTtl.toMillis()), maxTtl.toMillis());
+        if (jitter > 0) {
+            ttl -= (long) (ttl * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+        return Duration.ofMillis(Math.max(ttl, MIN_TTL_MILLIS));
+    }
+
+    /**
+     * 上游数据的发布时间 (毫秒时间戳), 无法获取时返回 null
+     */
+    static Long publishedAt(Object value) {
+        if (!(value instanceof QWeatherApiResponseBase response)) {
+            return null;
+        }
+        Long updateTime = parse(response.getUpdateTime());
+        if (response instanceof RealTimeWeatherResponse realTime && realTime.getNow() != null) {
+            Long obsTime = parse(realTime.getNow().getObsTime());
+            if (obsTime != null && (updateTime == null || obsTime > updateTime)) {
+                return obsTime;
+            }
+        }
+        return updateTime;
+    }
+
+    private static Long parse(String time) {
+        if (time == null || time.isEmpty()) {
+            return null;
+        }
+        try {
+            // 和风天气的时间格式为 2021-02-16T16:35+08:00
+            return OffsetDateTime.parse(time).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package app.weather.cache;
+
+import app.weather.config.WeatherCacheProperties;
+import app.weather.model.qweather.QWeatherApiResponseBase;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 按位置聚合存储的天气数据 (qweather.cache.storage-mode=bundle).
+ * <p>
+ * 同一位置的实时/逐小时/每日/指数数据存放在一个 Redis Hash 中 (key = 前缀 + 经纬度, 每个数据一个 field),
+ * 每个 field 是带时间戳的 {@link CacheEntry}, 新鲜度按各自缓存的 {@link CachePolicy} 独立判断.
+ * 一次请求只需一次 HGETALL, 过期或缺失的 field 单独请求上游后 HSET 回写, 不影响其他 field.
+ * 截止时间由调用方按数据项设置 (见 {@link #loadSections(String, List)}), 不作用于共享的上游请求.
+ * <p>
+ * 指标: qweather.bundle.sections{section, state=fresh|ahead|stale|miss}.
+ */
+@Component
+@Slf4j
+public class WeatherBundleCache {
+
+    private final WeatherCacheProperties.Bundle properties;
+
+    private final Map<String, CachePolicy> policies;
+
+    private final ReactiveHashOperations<String, String, Object> hashOperations;
+
+    private final ReactiveRedisTemplate<String, Object> redisTemplate;
+
+    private final SingleFlight singleFlight;
+
+    private final DistributedSingleFlight distributedSingleFlight;
+
+    private final NegativeCache negativeCache;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Hash 整体的过期时间, 取所有数据最长 TTL + 宽限期的最大值
+     */
+    private final Duration bundleTtl;
+
+    @Autowired
+    public WeatherBundleCache(WeatherCacheProperties weatherCacheProperties,
+                              @Qualifier("weatherCachePolicies") Map<String, CachePolicy> policies,
+                              @Qualifier("weatherCacheValueSerializer") RedisSerializer<Object> valueSerializer,
+                              ReactiveRedisConnectionFactory connectionFactory,
+                              SingleFlight singleFlight,
+                              DistributedSingleFlight distributedSingleFlight,
+                              NegativeCache negativeCache,
+                              MeterRegistry meterRegistry) {
+        this.properties = weatherCacheProperties.getBundle();
+        this.policies = policies;
+        StringRedisSerializer stringSerializer = new StringRedisSerializer();
+        this.redisTemplate = new ReactiveRedisTemplate<>(connectionFactory,
+                RedisSerializationContext.<String, Object>newSerializationContext(stringSerializer)
+                        .hashKey(stringSerializer)
+                        .hashValue(valueSerializer)
+                        .build());
+        this.hashOperations = redisTemplate.opsForHash();
+        this.singleFlight = singleFlight;
+        this.distributedSingleFlight = distributedSingleFlight;
+        this.negativeCache = negativeCache;
+        this.meterRegistry = meterRegistry;
+        this.bundleTtl = policies.values().stream()
+                .map(policy -> policy.maxTtl().plus(policy.staleGrace()))
+                .max(Duration::compareTo)
+                .orElse(Duration.ofHours(1));
+    }
+
+    /**
+     * 读取某个位置的多项天气数据, 一次 HGETALL 取回全部 field, 缺失或过期的单独请求上游
+     *
+     * @param location 经纬度 (已规范化)
+     * @param sections 需要的数据项
+     * @return field -> 数据, 请求失败的数据项不包含在结果中
+     */
+    public Mono<Map<String, Object>> load(String location, List<Section<?>> sections) {
+        return loadEntries(location, sections)
+                .map(entries -> entries.entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getValue())));
+    }
+
+    /**
+     * 与 {@link #load(String, List)} 相同, 但返回带时间戳的条目, 以便调用方判断数据是否为过期旧值
+     *
+     * @param location 经纬度 (已规范化)
+     * @param sections 需要的数据项
+     * @return field -> 缓存条目, 请求失败的数据项不包含在结果中
+     */
+    public Mono<Map<String, CacheEntry>> loadEntries(String location, List<Section<?>> sections) {
+        return Flux.fromIterable(loadSections(location, sections).entrySet())
+                .flatMap(section -> section.getValue()
+                        .map(entry -> Map.entry(section.getKey(), entry))
+                        .onErrorResume(e -> {
+                            log.warn("获取天气数据失败: location={}, field={}, error={}",
+                                    location, section.getKey(), e.getMessage());
+                            return Mono.empty();
+                        }))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * 与 {@link #loadEntries(String, List)} 相同, 但每个数据项单独返回, 调用方可以为每个数据项设置各自的截止时间.
+     * 全部数据项共用一次 HGETALL; 调用方超时取消时不会取消共享的上游请求, 请求完成后仍会回写 Hash.
+     *
+     * @param location 经纬度 (已规范化)
+     * @param sections 需要的数据项
+     * @return field -> 缓存条目 (请求失败时为错误, 没有数据时为空), 按 sections 的顺序排列
+     */
+    public Map<String, Mono<CacheEntry>> loadSections(String location, List<Section<?>> sections) {
+        String key = properties.getKeyPrefix() + location;
+        Mono<Map<String, Object>> stored = hashOperations.entries(key)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .onErrorResume(e -> {
+                    log.warn("读取天气数据 Hash 失败, 全部请求上游: key={}, error={}", key, e.getMessage());
+                    return Mono.just(Map.of());
+                })
+                .cache();
+        Map<String, Mono<CacheEntry>> result = new LinkedHashMap<>();
+        for (Section<?> section : sections) {
+            result.put(section.field(), stored.flatMap(map -> resolve(key, location, section, map.get(section.field()))));
+        }
+        return result;
+    }
+
+    /**
+     * 读取 Hash 中保存的条目 (不请求上游), 包括已过期的条目, 用于截止时间到达后的降级
+     *
+     * @param location 经纬度 (已规范化)
+     * @param section  数据项
+     * @return 缓存条目, 不存在时为空
+     */
+    public Mono<CacheEntry> readEntry(String location, Section<?> section) {
+        return hashOperations.get(properties.getKeyPrefix() + location, section.field())
+                .filter(stored -> stored instanceof CacheEntry entry && section.type().isInstance(entry.getValue()))
+                .cast(CacheEntry.class);
+    }
+
+    private <T> Mono<CacheEntry> resolve(String key, String location, Section<T> section, Object stored) {
+        CachePolicy policy = policies.get(section.cacheName());
+        if (stored instanceof CacheEntry entry && section.type().isInstance(entry.getValue())) {
+            long now = System.currentTimeMillis();
+            if (!entry.isExpired(now)) {
+                if (policy != null && entry.shouldRefresh(now, policy.refreshAheadFraction())) {
+                    record(section, "ahead");
+                    refreshInBackground(key, location, section);
+                } else {
+                    record(section, "fresh");
+                }
+                return Mono.just(entry);
+            }
+            // 负缓存条目过期后不作为旧值返回
+            if (policy != null && policy.serveStale() && !isNegative(entry.getValue())) {
+                record(section, "stale");
+                refreshInBackground(key, location, section);
+                return Mono.just(entry);
+            }
+        }
+        record(section, "miss");
+        // 共享的上游请求 (SingleFlight 缓存的 Mono) 不随单个调用方的取消 (如截止时间到达) 而取消, 完成后仍会回写
+        return fetch(key, location, section).map(value -> newEntry(section, value));
+    }
+
+    /**
+     * 请求上游并回写对应 field. 并发请求在进程内 (以及启用租约时在集群内) 合并
+     */
+    private <T> Mono<T> fetch(String key, String location, Section<T> section) {
+        String group = "bundle:" + section.field();
+        return negativeCache.guard(group, location, () -> singleFlight.execute(group, location,
+                () -> distributedSingleFlight.execute(group, location,
+                        () -> section.loader().get().doOnNext(value -> write(key, section, value)),
+                        () -> readFresh(key, section))));
+    }
+
+    private <T> void refreshInBackground(String key, String location, Section<T> section) {
+        fetch(key, location, section).subscribe(null,
+                e -> log.warn("后台刷新天气数据失败: key={}, field={}, error={}", key, section.field(), e.getMessage()));
+    }
+
+    private <T> Mono<T> readFresh(String key, Section<T> section) {
+        return hashOperations.get(key, section.field())
+                .filter(stored -> stored instanceof CacheEntry entry
+                        && !entry.isExpired(System.currentTimeMillis())
+                        && section.type().isInstance(entry.getValue()))
+                .map(stored -> section.type().cast(((CacheEntry) stored).getValue()));
+    }
+
+    private void write(String key, Section<?> section, Object value) {
+        // 和风天气返回 code 非 200 时按负缓存短期保存
+        boolean negative = isNegative(value);
+        CachePolicy policy = policies.get(section.cacheName());
+        if (negative && (policy == null || !policy.cachesNegative())) {
+            return;
+        }
+        hashOperations.put(key, section.field(), newEntry(section, value))
+                .then(redisTemplate.expire(key, bundleTtl))
+                .subscribe(null, e -> log.warn("写入天气数据 Hash 失败: key={}, field={}, error={}",
+                        key, section.field(), e.getMessage()));
+    }
+
+    private CacheEntry newEntry(Section<?> section, Object value) {
+        CachePolicy policy = policies.get(section.cacheName());
+        long now = System.currentTimeMillis();
+        long expiresAt = policy == null ? now + bundleTtl.toMillis() : policy.expiresAt(value, now, isNegative(value));
+        return new CacheEntry(value, now, expiresAt);
+    }
+
+    private static boolean isNegative(Object value) {
+        return value instanceof QWeatherApiResponseBase response && !"200".equals(response.getCode());
+    }
+
+    private void record(Section<?> section, String state) {
+        Counter.builder("qweather.bundle.sections")
+                .description("聚合存储中各数据项的读取状态")
+                .tags("section", section.cacheName(), "state", state)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 聚合存储中的一项数据
+     *
+     * @param cacheName 对应的缓存名称, 用于查找 {@link CachePolicy}
+     * @param field     Hash field
+     * @param type      数据类型
+     * @param loader    上游请求 (不经过缓存)
+     */
+    public record Section<T>(String cacheName, String field, Class<T> type, Supplier<Mono<T>> loader) {
+    }
+}
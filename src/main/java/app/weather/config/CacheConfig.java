@@ -1,88 +1,178 @@
 package app.weather.config;
 
+import app.weather.cache.CacheEntry;
+import app.weather.cache.CachePolicy;
+import app.weather.cache.CompactCacheSerializer;
+import app.weather.cache.TwoLevelCacheManager;
+import app.weather.cache.UpstreamExpiry;
+import app.weather.model.qweather.QWeatherApiResponseBase;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.cache.RedisCacheManagerBuilderCustomizer;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 
 @Configuration
 public class CacheConfig {
+    /**
+     * 天气相关缓存 (含城市搜索) 的新鲜期 (TTL)
+     */
+    private static final Map<String, Duration> WEATHER_CACHE_TTLS = Map.of(
+            // 天气指数缓存 6 小时
+            "weatherIndices", Duration.ofHours(6),
+            // 逐小时天气缓存 30 分钟 (符合文档建议 30-60 min)
+            "hourlyWeatherCache", Duration.ofMinutes(30),
+            // 实时数据缓存 10 分钟 (符合文档建议 10-30 min)
+            "realtimeWeatherCache", Duration.ofMinutes(10),
+            // 每日天气缓存 1小时
+            "dailyWeatherCache", Duration.ofHours(1),
+            // 城市搜索缓存 7 天 (城市数据基本不变)
+            "geoLookupCache", Duration.ofDays(7)
+    );
+
+    private final WeatherCacheProperties weatherCacheProperties;
+
+    @Autowired
+    public CacheConfig(WeatherCacheProperties weatherCacheProperties) {
+        this.weatherCacheProperties = weatherCacheProperties;
+    }
+
+    /**
+     * 缓存管理器.
+     * 基于 {@link #redisCacheManagerBuilderCustomizer()} 中的配置创建 Redis 缓存,
+     * 在每个 Redis 缓存前包装一层进程内缓存, 并按 {@link #weatherCachePolicies()} 应用提前刷新/旧值返回策略.
+     * 和风天气返回 code 非 200 的结果按 qweather.cache.negative.ttl 短期缓存 (负缓存).
+     *
+     * @return CacheManager
+     */
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+                                     RedisCacheManagerBuilderCustomizer redisCacheManagerBuilderCustomizer,
+                                     ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+                                     MeterRegistry meterRegistry) {
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.builder(redisConnectionFactory);
+        redisCacheManagerBuilderCustomizer.customize(builder);
+        RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.initializeCaches();
+        return new TwoLevelCacheManager(redisCacheManager, weatherCacheProperties.getL1(),
+                reactiveStringRedisTemplate, meterRegistry, weatherCachePolicies(), CacheConfig::isCacheable);
+    }
+
+    /**
+     * 是否为可正常缓存的结果: 和风天气返回 code 非 200 的结果只作为负缓存短期保存
+     *
+     * @param value 缓存值
+     * @return boolean
+     */
+    public static boolean isCacheable(Object value) {
+        return !(value instanceof QWeatherApiResponseBase response) || "200".equals(response.getCode());
+    }
+
     /**
      * 配置 Redis 缓存管理器.
      * 设置默认的缓存过期时间 (TTL) 和序列化方式 (String for key, Jackson JSON for value).
-     * 为 'weatherIndices', 'jwtTokenCache', 'hourlyWeatherCache' 设置特定的 TTL.
+     * 天气相关缓存的 TTL 见 {@link #WEATHER_CACHE_TTLS}, 配置了宽限期的缓存在 Redis 中会额外保留宽限期时长.
      * @return RedisCacheManagerBuilderCustomizer
      */
     @Bean
     public RedisCacheManagerBuilderCustomizer redisCacheManagerBuilderCustomizer() {
         // Jackson 序列化器配置
-        GenericJackson2JsonRedisSerializer jacksonSerializer = createGenericJackson2JsonRedisSerializer();
+        RedisSerializer<Object> jacksonSerializer = weatherCacheValueSerializer();
         // String 序列化器
         StringRedisSerializer stringSerializer = new StringRedisSerializer();
+        Map<String, CachePolicy> cachePolicies = weatherCachePolicies();
 
-        return (builder) -> builder
-                // 天气指数缓存 (6 小时)
-                .withCacheConfiguration("weatherIndices",
-                        RedisCacheConfiguration.defaultCacheConfig()
-                                .entryTtl(Duration.ofHours(6)) // 天气指数缓存 6 小时
-                                .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(stringSerializer))
-                                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jacksonSerializer))
-                                .disableCachingNullValues()
-                )
-                // JWT Token 缓存 (24 小时)
-                .withCacheConfiguration("jwtTokenCache",
-                        RedisCacheConfiguration.defaultCacheConfig()
-                                .entryTtl(Duration.ofHours(24)) // JWT 缓存 24 小时
-                                .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(stringSerializer))
-                                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(stringSerializer))
-                                .disableCachingNullValues()
-                )
-                // 逐小时天气缓存 (30 分钟)
-                .withCacheConfiguration("hourlyWeatherCache",
-                        RedisCacheConfiguration.defaultCacheConfig()
-                                .entryTtl(Duration.ofMinutes(30)) // 逐小时天气缓存 30 分钟 (符合文档建议 30-60 min)
-                                .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(stringSerializer))
-                                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jacksonSerializer))
-                                .disableCachingNullValues()
-                )
-                // 实时天气缓存 (10 分钟)
-                .withCacheConfiguration("realtimeWeatherCache",
-                        RedisCacheConfiguration.defaultCacheConfig()
-                                .entryTtl(Duration.ofMinutes(10)) // 实时数据缓存 10 分钟 (符合文档建议 10-30 min)
-                                .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(stringSerializer))
-                                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jacksonSerializer))
-                                .disableCachingNullValues()
-                )
-                // 每日天气缓存 (1 小时)
-                .withCacheConfiguration("dailyWeatherCache",
-                        RedisCacheConfiguration.defaultCacheConfig()
-                                .entryTtl(Duration.ofHours(1)) // 每日天气缓存 1小时
-                                .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(stringSerializer))
-                                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jacksonSerializer))
-                                .disableCachingNullValues()
-                )
-                // 其他缓存默认设置 (1 小时)
-                .cacheDefaults(
-                        RedisCacheConfiguration.defaultCacheConfig()
-                                .entryTtl(Duration.ofHours(1)) // 其他缓存默认 TTL 为 1 小时
-                                .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(stringSerializer))
-                                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jacksonSerializer))
-                                .disableCachingNullValues()
-                );
+        return (builder) -> {
+            cachePolicies.forEach((cacheName, policy) -> builder.withCacheConfiguration(cacheName,
+                    RedisCacheConfiguration.defaultCacheConfig()
+                            .entryTtl((key, value) -> policy.redisTtl(value,
+                                    value instanceof CacheEntry entry && !isCacheable(entry.getValue())))
+                            .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(stringSerializer))
+                            .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jacksonSerializer))
+                            .disableCachingNullValues()
+            ));
+            builder
+                    // 其他缓存默认设置 (1 小时)
+                    .cacheDefaults(
+                            RedisCacheConfiguration.defaultCacheConfig()
+                                    .entryTtl(Duration.ofHours(1)) // 其他缓存默认 TTL 为 1 小时
+                                    .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(stringSerializer))
+                                    .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jacksonSerializer))
+                                    .disableCachingNullValues()
+                    );
+        };
     }
+
+    /**
+     * 天气相关缓存的过期与刷新策略, TTL 取自 {@link #WEATHER_CACHE_TTLS},
+     * 提前刷新比例和宽限期取自 qweather.cache.refresh.&lt;缓存名称&gt;, 未配置时不提前刷新也不保留旧值.
+     * 负缓存时间取自 qweather.cache.negative.ttl. 配置了 qweather.cache.expiry.&lt;缓存名称&gt; 的缓存
+     * 按上游发布时间计算新鲜期 (见 {@link UpstreamExpiry}), 此时 {@link #WEATHER_CACHE_TTLS} 只在无法解析发布时间时使用.
+     *
+     * @return 缓存名称 -> 策略
+     */
+    @Bean
+    public Map<String, CachePolicy> weatherCachePolicies() {
+        Map<String, CachePolicy> policies = new HashMap<>();
+        WeatherCacheProperties.Negative negative = weatherCacheProperties.getNegative();
+        Duration negativeTtl = negative.isEnabled() ? negative.getTtl() : Duration.ZERO;
+        WEATHER_CACHE_TTLS.forEach((cacheName, ttl) -> {
+            WeatherCacheProperties.Refresh refresh = weatherCacheProperties.getRefresh().get(cacheName);
+            UpstreamExpiry expiry = upstreamExpiry(weatherCacheProperties.getExpiry().get(cacheName), ttl);
+            policies.put(cacheName, refresh == null
+                    ? new CachePolicy(ttl, 0, Duration.ZERO, false, negativeTtl, expiry)
+                    : new CachePolicy(ttl, refresh.getRefreshAheadFraction(), refresh.getStaleGrace(),
+                    refresh.isServeStale(), negativeTtl, expiry));
+        });
+        return policies;
+    }
+
+    /**
+     * 按 qweather.cache.expiry.&lt;缓存名称&gt; 创建上游对齐的过期策略, 未配置发布间隔时返回 null (固定 TTL)
+     */
+    private static UpstreamExpiry upstreamExpiry(WeatherCacheProperties.Expiry expiry, Duration ttl) {
+        if (expiry == null || expiry.getCadence() == null) {
+            return null;
+        }
+        return new UpstreamExpiry(expiry.getCadence(), expiry.getMinTtl(),
+                expiry.getMaxTtl() != null ? expiry.getMaxTtl() : ttl, expiry.getJitter());
+    }
+
+    /**
+     * 天气缓存值的序列化器, Redis 缓存和天气数据 Hash 共用.
+     * 始终使用 {@link CompactCacheSerializer} 读取 (兼容两种格式), qweather.cache.codec.format 只决定写入格式,
+     * 切回 json 后仍能读取已写入的 Smile 数据.
+     * @return RedisSerializer
+     */
+    @Bean
+    public RedisSerializer<Object> weatherCacheValueSerializer() {
+        WeatherCacheProperties.Codec codec = weatherCacheProperties.getCodec();
+        return new CompactCacheSerializer(createGenericJackson2JsonRedisSerializer(),
+                (int) codec.getCompressionThreshold().toBytes(),
+                codec.getFormat() != WeatherCacheProperties.Codec.Format.JSON);
+    }
+
     /**
      * 创建并配置 Jackson 序列化器.
      * @return GenericJackson2JsonRedisSerializer
      */
-    private GenericJackson2JsonRedisSerializer createGenericJackson2JsonRedisSerializer() {
+    public static GenericJackson2JsonRedisSerializer createGenericJackson2JsonRedisSerializer() {
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.activateDefaultTyping(
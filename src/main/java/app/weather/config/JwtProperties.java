@@ -0,0 +1,31 @@
+package app.weather.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 和风天气 JWT 配置 (qweather.jwt.*)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qweather.jwt")
+@Data
+public class JwtProperties {
+
+    /**
+     * Token 有效期 (exp - iat), 和风天气最长支持 24 小时
+     */
+    private Duration ttl = Duration.ofHours(24);
+
+    /**
+     * 剩余有效期小于该值时在后台签发新 Token
+     */
+    private Duration refreshBefore = Duration.ofHours(12);
+
+    /**
+     * 后台检查 Token 剩余有效期的间隔
+     */
+    private Duration checkInterval = Duration.ofMinutes(1);
+}
@@ -0,0 +1,74 @@
+package app.weather.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 聚合天气接口的延迟预算配置 (qweather.latency.*)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qweather.latency")
+@Data
+public class LatencyBudgetProperties {
+
+    /**
+     * 默认预算: 聚合接口等待各数据项的最长时间
+     */
+    private Duration budget = Duration.ofMillis(1500);
+
+    /**
+     * 客户端通过请求头指定预算 (毫秒) 时的下限
+     */
+    private Duration minBudget = Duration.ofMillis(200);
+
+    /**
+     * 客户端通过请求头指定预算 (毫秒) 时的上限
+     */
+    private Duration maxBudget = Duration.ofSeconds(5);
+
+    /**
+     * 客户端指定预算的请求头, 值为毫秒数
+     */
+    private String header = "X-Latency-Budget";
+
+    /**
+     * 各数据项 (realtime/daily/hourly/indices) 的截止时间上限, 未配置的数据项使用整个预算
+     */
+    private Map<String, Duration> sections = new HashMap<>();
+
+    private Hedge hedge = new Hedge();
+
+    /**
+     * 对冲请求: 数据项耗时超过上游请求耗时的 P95 时再发一次上游请求, 取先返回的结果
+     */
+    @Data
+    public static class Hedge {
+
+        private boolean enabled = true;
+
+        /**
+         * 触发对冲的耗时分位数
+         */
+        private double percentile = 0.95;
+
+        /**
+         * 样本数不足 {@link #minSamples} 时的对冲延迟
+         */
+        private Duration initialDelay = Duration.ofMillis(300);
+
+        /**
+         * 对冲延迟下限, 避免缓存命中率很高时分位数过低导致每次未命中都重复请求上游
+         */
+        private Duration minDelay = Duration.ofMillis(100);
+
+        /**
+         * 使用分位数前需要的最少样本数
+         */
+        private long minSamples = 20;
+    }
+}
@@ -0,0 +1,22 @@
+package app.weather.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.math.BigDecimal;
+
+/**
+ * 经纬度规范化配置 (qweather.location.*)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qweather.location")
+@Data
+public class LocationProperties {
+
+    /**
+     * 网格大小 (度), 经纬度会对齐到该网格后再作为缓存 key 和上游请求参数.
+     * 和风天气的经纬度参数最多支持两位小数, 因此不应小于 0.01
+     */
+    private BigDecimal grid = new BigDecimal("0.01");
+}
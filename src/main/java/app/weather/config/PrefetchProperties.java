@@ -0,0 +1,63 @@
+package app.weather.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 热点位置预取配置 (qweather.prefetch.*)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qweather.prefetch")
+@Data
+public class PrefetchProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * 两次预取之间的间隔, 同时也是请求频率的统计窗口
+     */
+    private Duration interval = Duration.ofSeconds(30);
+
+    /**
+     * 每个窗口结束时历史热度的保留比例 (指数衰减), 热度 = 上一窗口热度 * decay + 本窗口请求数
+     */
+    private double decay = 0.5;
+
+    /**
+     * 热度达到该值的位置才会预取
+     */
+    private double minScore = 3;
+
+    /**
+     * 最多预取的热点位置数
+     */
+    private int hotLocations = 200;
+
+    /**
+     * 最多统计的位置数, 超出后淘汰最久未请求的位置
+     */
+    private long trackedLocations = 10_000;
+
+    /**
+     * 缓存条目在过期前该时长内 (或已过期/不存在) 时预取
+     */
+    private Duration refreshAhead = Duration.ofMinutes(1);
+
+    /**
+     * 预取请求的速率上限 (每秒), 一轮间隔内拿不到许可的条目留到下一轮
+     */
+    private double permitsPerSecond = 2;
+
+    /**
+     * 预取请求的并发上限
+     */
+    private int concurrency = 4;
+
+    /**
+     * 预取后该时长内有用户请求该位置计为命中, 否则计为浪费
+     */
+    private Duration usageWindow = Duration.ofMinutes(10);
+}
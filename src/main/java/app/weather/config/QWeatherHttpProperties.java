@@ -0,0 +1,87 @@
+package app.weather.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 和风天气 HTTP 客户端配置 (qweather.http.*)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qweather.http")
+@Data
+public class QWeatherHttpProperties {
+
+    /**
+     * 连接池最大连接数
+     */
+    private int maxConnections = 100;
+
+    /**
+     * 等待获取连接的最大请求数, 超过后直接失败
+     */
+    private int pendingAcquireMaxCount = 500;
+
+    /**
+     * 等待获取连接的超时时间
+     */
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+
+    /**
+     * 连接最大空闲时间, 应小于服务端的 keep-alive 超时
+     */
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+
+    /**
+     * 连接最长存活时间, 定期重建连接以便跟随 DNS 变化
+     */
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+
+    /**
+     * 后台清理空闲/过期连接的间隔, 0 表示只在获取连接时清理
+     */
+    private Duration evictInterval = Duration.ofSeconds(30);
+
+    /**
+     * 是否开启 TCP keep-alive
+     */
+    private boolean keepAlive = true;
+
+    /**
+     * 建立连接超时
+     */
+    private Duration connectTimeout = Duration.ofSeconds(2);
+
+    /**
+     * 读超时 (两次读取之间的最长间隔)
+     */
+    private Duration readTimeout = Duration.ofSeconds(5);
+
+    /**
+     * 写超时
+     */
+    private Duration writeTimeout = Duration.ofSeconds(5);
+
+    /**
+     * 从发出请求到收到完整响应头的超时
+     */
+    private Duration responseTimeout = Duration.ofSeconds(5);
+
+    /**
+     * 是否启用 HTTP/2 (通过 TLS ALPN 协商, 不支持时回退 HTTP/1.1)
+     */
+    private boolean http2 = false;
+
+    /**
+     * 是否请求 gzip 压缩的响应 (Accept-Encoding: gzip)
+     */
+    private boolean compression = true;
+
+    /**
+     * 单个响应解码时最多缓冲的字节数 (解压后), 超过时请求失败而不是继续占用内存
+     */
+    private DataSize maxInMemorySize = DataSize.ofKilobytes(256);
+}
@@ -0,0 +1,63 @@
+package app.weather.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 和风天气调用额度配置 (qweather.quota.*)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qweather.quota")
+@Data
+public class QWeatherQuotaProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 每日调用额度 (所有接口合计), 0 表示不限制
+     */
+    private long dailyLimit = 0;
+
+    /**
+     * 每分钟调用额度 (所有接口合计), 0 表示不限制
+     */
+    private long minuteLimit = 0;
+
+    /**
+     * 按该时区的自然日统计每日额度
+     */
+    private ZoneId zone = ZoneId.of("Asia/Shanghai");
+
+    /**
+     * Redis 计数 key 前缀, 带 hash tag 使日/分钟计数位于同一个 slot (Lua 脚本同时操作两个 key)
+     */
+    private String keyPrefix = "{qweather:quota}:";
+
+    /**
+     * 各接口 (now/daily/hourly/indices/lookup) 的优先级, 未配置的接口为 LOW
+     */
+    private Map<String, Priority> priorities = new HashMap<>(Map.of(
+            "now", Priority.HIGH,
+            "daily", Priority.MEDIUM,
+            "hourly", Priority.MEDIUM,
+            "indices", Priority.LOW,
+            "lookup", Priority.LOW));
+
+    /**
+     * 为更高优先级保留的额度比例: 剩余额度低于该比例时, 该优先级的调用被拒绝
+     */
+    private Map<Priority, Double> reserve = new EnumMap<>(Map.of(
+            Priority.HIGH, 0.0,
+            Priority.MEDIUM, 0.05,
+            Priority.LOW, 0.2));
+
+    public enum Priority {
+        HIGH, MEDIUM, LOW
+    }
+}
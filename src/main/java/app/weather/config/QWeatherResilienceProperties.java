@@ -0,0 +1,77 @@
+package app.weather.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 和风天气各接口的熔断与并发隔离配置 (qweather.resilience.*), 每个接口使用独立的熔断器与隔离舱
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qweather.resilience")
+@Data
+public class QWeatherResilienceProperties {
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    private Bulkhead bulkhead = new Bulkhead();
+
+    @Data
+    public static class CircuitBreaker {
+
+        private boolean enabled = true;
+
+        /**
+         * 失败率 (%) 达到该值时打开熔断器
+         */
+        private float failureRateThreshold = 50;
+
+        /**
+         * 慢调用率 (%) 达到该值时打开熔断器
+         */
+        private float slowCallRateThreshold = 80;
+
+        /**
+         * 超过该耗时的调用视为慢调用
+         */
+        private Duration slowCallDurationThreshold = Duration.ofSeconds(2);
+
+        /**
+         * 统计窗口 (最近 N 次调用)
+         */
+        private int slidingWindowSize = 20;
+
+        /**
+         * 计算失败率前需要的最少调用数
+         */
+        private int minimumNumberOfCalls = 10;
+
+        /**
+         * 熔断器打开后等待多久进入半开状态
+         */
+        private Duration waitDurationInOpenState = Duration.ofSeconds(30);
+
+        /**
+         * 半开状态允许的试探调用数
+         */
+        private int permittedNumberOfCallsInHalfOpenState = 3;
+    }
+
+    @Data
+    public static class Bulkhead {
+
+        private boolean enabled = true;
+
+        /**
+         * 单个接口同时进行的最大请求数
+         */
+        private int maxConcurrentCalls = 20;
+
+        /**
+         * 达到并发上限后等待的最长时间, 0 表示立即拒绝
+         */
+        private Duration maxWaitDuration = Duration.ZERO;
+    }
+}
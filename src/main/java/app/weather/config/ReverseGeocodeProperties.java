@@ -0,0 +1,27 @@
+package app.weather.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 离线逆地理编码配置 (qweather.reverse-geocode.*)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qweather.reverse-geocode")
+@Data
+public class ReverseGeocodeProperties {
+
+    /**
+     * 区县中心点数据集 (Spring 资源路径, 如 classpath:district-centroids.csv 或 file:/data/centroids.csv),
+     * 每行 "一级行政区,城市,区县,经度,纬度", 城市/区县名称需与 pca.json 规范化后的层级一致 (见 CityDataService).
+     * 区县为空时表示城市本身的中心点. 以 # 开头的行和表头忽略.
+     * 项目不附带数据集, 未配置或资源不存在时不启用逆地理编码 (启动时输出警告), /api/weather/get 的 region 参数无效
+     */
+    private String dataset;
+
+    /**
+     * 与最近中心点的距离超过该值 (公里) 时视为不在任何已知区县内 (如境外或海上)
+     */
+    private double maxDistanceKm = 50;
+}
@@ -0,0 +1,279 @@
+package app.weather.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 天气缓存相关配置 (qweather.cache.*)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "qweather.cache")
+@Data
+public class WeatherCacheProperties {
+
+    /**
+     * 进程内一级缓存 (L1) 配置
+     */
+    private L1 l1 = new L1();
+
+    /**
+     * 集群级请求合并 (Redis 租约) 配置
+     */
+    private Lease lease = new Lease();
+
+    /**
+     * 按缓存名称配置的提前刷新/旧值返回策略, 未配置的缓存到期后直接失效
+     */
+    private Map<String, Refresh> refresh = new HashMap<>();
+
+    /**
+     * 按缓存名称配置的上游发布节奏, 配置后新鲜期按上游 updateTime 计算, 未配置的缓存使用固定 TTL
+     */
+    private Map<String, Expiry> expiry = new HashMap<>();
+
+    /**
+     * 负缓存: 和风天气返回 code 非 200 或请求失败时的短期缓存
+     */
+    private Negative negative = new Negative();
+
+    /**
+     * 聚合天气数据的存储方式
+     */
+    private StorageMode storageMode = StorageMode.SECTIONS;
+
+    /**
+     * storage-mode=bundle 时的 Redis Hash 配置
+     */
+    private Bundle bundle = new Bundle();
+
+    /**
+     * 缓存值序列化配置
+     */
+    private Codec codec = new Codec();
+
+    /**
+     * 聚合接口响应 (序列化后的字节) 缓存配置
+     */
+    private Response response = new Response();
+
+    public enum StorageMode {
+        /**
+         * 实时/逐小时/每日/指数分别存入各自的缓存 (两级缓存)
+         */
+        SECTIONS,
+        /**
+         * 同一位置的所有天气数据存入一个 Redis Hash, 一次 HGETALL 读取
+         */
+        BUNDLE
+    }
+
+    @Data
+    public static class L1 {
+        /**
+         * 是否启用 L1 缓存, 关闭后直接使用 Redis 缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 跨节点失效通知使用的 Redis 频道
+         */
+        private String invalidationChannel = "weather:cache:l1:invalidate";
+
+        /**
+         * 默认每个缓存的最大条目数
+         */
+        private long defaultMaxSize = 1000;
+
+        /**
+         * 默认 L1 过期时间 (不会超过对应 Redis 缓存的 TTL)
+         */
+        private Duration defaultTtl = Duration.ofMinutes(1);
+
+        /**
+         * 按缓存名称单独配置, key 为缓存名称
+         */
+        private Map<String, Spec> caches = new HashMap<>();
+
+        /**
+         * 获取指定缓存的 L1 配置, 未单独配置的项使用默认值
+         *
+         * @param cacheName 缓存名称
+         * @return L1 配置
+         */
+        public Spec specFor(String cacheName) {
+            Spec spec = caches.get(cacheName);
+            Spec result = new Spec();
+            result.setMaxSize(spec != null && spec.getMaxSize() != null ? spec.getMaxSize() : defaultMaxSize);
+            result.setTtl(spec != null && spec.getTtl() != null ? spec.getTtl() : defaultTtl);
+            return result;
+        }
+    }
+
+    @Data
+    public static class Lease {
+        /**
+         * 是否启用. 启用后缓存未命中时只有拿到租约的节点请求上游, 其他节点等待缓存回填
+         */
+        private boolean enabled = false;
+
+        /**
+         * 租约 key 前缀
+         */
+        private String keyPrefix = "weather:lease:";
+
+        /**
+         * 租约有效期, 应略大于一次上游请求的耗时
+         */
+        private Duration ttl = Duration.ofSeconds(5);
+
+        /**
+         * 未拿到租约时等待缓存回填的最长时间, 超时后自行请求上游
+         */
+        private Duration waitTimeout = Duration.ofSeconds(2);
+
+        /**
+         * 等待期间轮询缓存的间隔
+         */
+        private Duration pollInterval = Duration.ofMillis(50);
+    }
+
+    @Data
+    public static class Refresh {
+        /**
+         * 提前刷新比例, TTL 过去该比例后命中时先返回当前值再异步刷新, 0 表示关闭
+         */
+        private double refreshAheadFraction = 0.8;
+
+        /**
+         * 过期后的宽限期, 条目在 Redis 中额外保留该时长
+         */
+        private Duration staleGrace = Duration.ZERO;
+
+        /**
+         * 宽限期内是否直接返回旧值并异步刷新
+         */
+        private boolean serveStale = true;
+    }
+
+    @Data
+    public static class Expiry {
+        /**
+         * 上游发布间隔, 条目在 updateTime + cadence 之前保持新鲜
+         */
+        private Duration cadence;
+
+        /**
+         * 最短 TTL, 上游发布延迟时按该间隔重新请求
+         */
+        private Duration minTtl = Duration.ofMinutes(1);
+
+        /**
+         * 最长 TTL, 未配置时使用该缓存的固定 TTL
+         */
+        private Duration maxTtl;
+
+        /**
+         * 随机缩短 TTL 的最大比例, 避免同时写入的 key 同时过期
+         */
+        private double jitter = 0.1;
+    }
+
+    @Data
+    public static class Negative {
+        private boolean enabled = true;
+
+        /**
+         * code 非 200 (如 204/400/404) 的响应在缓存中的保留时间, 与正常结果使用相同的 key, 过期后不作为旧值返回
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+
+        /**
+         * 上游返回 4xx (401/403/429 除外) 时在本节点记住该错误的时间, 0 表示不缓存
+         */
+        private Duration clientErrorTtl = Duration.ofMinutes(1);
+
+        /**
+         * 上游返回 5xx 时在本节点记住该错误的时间, 0 表示不缓存
+         */
+        private Duration serverErrorTtl = Duration.ofSeconds(5);
+
+        /**
+         * 本节点记住的错误条目数上限
+         */
+        private long maxSize = 10_000;
+    }
+
+    @Data
+    public static class Codec {
+        /**
+         * 写入格式, 读取时两种格式都支持. 与旧版本节点混合部署期间应保持 json
+         */
+        private Format format = Format.SMILE;
+
+        /**
+         * 超过该大小时 gzip 压缩 (仅 smile 格式), 0 表示不压缩
+         */
+        private DataSize compressionThreshold = DataSize.ofKilobytes(1);
+
+        public enum Format {
+            /**
+             * 带 default typing 的 JSON (旧格式)
+             */
+            JSON,
+            /**
+             * {@link app.weather.cache.CompactCacheSerializer}
+             */
+            SMILE
+        }
+    }
+
+    @Data
+    public static class Response {
+        /**
+         * 是否启用, 仅 storage-mode=sections 时生效
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最长保留时间. 依赖的数据项写入时立即失效, 该时间只限制错过失效通知时的不一致时长
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+
+        /**
+         * 最大条目数
+         */
+        private long maxSize = 10_000;
+
+        /**
+         * 超过该大小时额外保存 gzip 压缩后的字节, 供 Accept-Encoding 包含 gzip 的请求直接返回
+         */
+        private DataSize gzipThreshold = DataSize.ofKilobytes(1);
+    }
+
+    @Data
+    public static class Bundle {
+        /**
+         * Hash key 前缀, 完整 key 为 前缀 + 经纬度
+         */
+        private String keyPrefix = "weather:bundle:";
+    }
+
+    @Data
+    public static class Spec {
+        /**
+         * 最大条目数
+         */
+        private Long maxSize;
+
+        /**
+         * 过期时间
+         */
+        private Duration ttl;
+    }
+}
@@ -1,26 +1,102 @@
 package app.weather.config;
 
+import app.weather.model.qweather.QWeatherResponseMixins;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class WebClientConfig {
 
     private final QWeatherApiConfig qWeatherApiConfig;
 
+    private final QWeatherHttpProperties httpProperties;
+
     @Autowired
-    public WebClientConfig(QWeatherApiConfig qWeatherApiConfig) {
+    public WebClientConfig(QWeatherApiConfig qWeatherApiConfig, QWeatherHttpProperties httpProperties) {
         this.qWeatherApiConfig = qWeatherApiConfig;
+        this.httpProperties = httpProperties;
+    }
+
+    /**
+     * 和风天气专用连接池.
+     * 开启 metrics 后通过 Micrometer 全局注册表发布 reactor.netty.connection.provider.*
+     * (total/active/idle/pending.connections 等) 指标, name 标签为 qweather.
+     *
+     * @return ConnectionProvider
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider qWeatherConnectionProvider() {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("qweather")
+                .maxConnections(httpProperties.getMaxConnections())
+                .pendingAcquireMaxCount(httpProperties.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(httpProperties.getPendingAcquireTimeout())
+                .maxIdleTime(httpProperties.getMaxIdleTime())
+                .maxLifeTime(httpProperties.getMaxLifeTime())
+                .metrics(true);
+        if (!httpProperties.getEvictInterval().isZero()) {
+            builder.evictInBackground(httpProperties.getEvictInterval());
+        }
+        return builder.build();
     }
 
+    /**
+     * 和风天气 WebClient.
+     * 响应以 gzip 传输 (qweather.http.compression), 解码时最多缓冲 qweather.http.max-in-memory-size 字节,
+     * 并使用 {@link QWeatherResponseMixins} 跳过未使用的字段.
+     *
+     * @return WebClient
+     */
     @Bean
-    public WebClient qWeatherWebClient() {
+    public WebClient qWeatherWebClient(ConnectionProvider qWeatherConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(qWeatherConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) httpProperties.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, httpProperties.isKeepAlive())
+                .responseTimeout(httpProperties.getResponseTimeout())
+                .compress(httpProperties.isCompression())
+                .doOnConnected(connection -> connection
+                        .addHandlerLast(new ReadTimeoutHandler(httpProperties.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                        .addHandlerLast(new WriteTimeoutHandler(httpProperties.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS)));
+        if (httpProperties.isHttp2()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        Jackson2JsonDecoder decoder = new Jackson2JsonDecoder(createResponseObjectMapper());
+        decoder.setMaxInMemorySize((int) httpProperties.getMaxInMemorySize().toBytes());
         return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(configurer -> {
+                    configurer.defaultCodecs().maxInMemorySize((int) httpProperties.getMaxInMemorySize().toBytes());
+                    configurer.defaultCodecs().jackson2JsonDecoder(decoder);
+                })
                 .baseUrl(qWeatherApiConfig.getApiHost())
                 .defaultHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
                 .build();
     }
+
+    /**
+     * 解析和风天气响应的 ObjectMapper, 忽略未知字段
+     *
+     * @return ObjectMapper
+     */
+    public static ObjectMapper createResponseObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return QWeatherResponseMixins.register(objectMapper);
+    }
 }
@@ -1,17 +1,29 @@
 package app.weather.controller;
 
+import app.weather.config.LatencyBudgetProperties;
 import app.weather.model.qweather.DailyWeatherResponse;
 import app.weather.model.qweather.RealTimeWeatherResponse;
 import app.weather.model.qweather.WeatherIndicesResponse;
 import app.weather.model.response.ResultResponse;
 import app.weather.model.response.StatusEnum;
+import app.weather.model.vo.CitySearchVO;
 import app.weather.model.vo.GeoLookupVO;
 import app.weather.model.vo.GetWeatherVO;
+import app.weather.service.CityAutocomplete;
 import app.weather.service.CityDataService;
+import app.weather.service.CitySearchIndex;
+import app.weather.service.GeoLookupService;
+import app.weather.service.HotLocationPrefetcher;
+import app.weather.service.LocationCanonicalizer;
 import app.weather.service.QWeatherApi;
+import app.weather.service.ReverseGeocoder;
+import app.weather.service.SectionDeadlineExecutor;
+import app.weather.service.WeatherResponseCache;
 import app.weather.service.WeatherService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -19,6 +31,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -28,17 +42,49 @@ import java.util.stream.Collectors;
 @Slf4j
 public class WeatherController {
 
+    /**
+     * 城市/区县名称搜索每页最多条目数
+     */
+    private static final int MAX_CITY_SEARCH_SIZE = 50;
+
     private final QWeatherApi qWeatherApi;
 
     private final CityDataService cityDataService;
 
     private final WeatherService weatherService;
 
+    private final LocationCanonicalizer locationCanonicalizer;
+
+    private final GeoLookupService geoLookupService;
+
+    private final SectionDeadlineExecutor sectionDeadlineExecutor;
+
+    private final LatencyBudgetProperties latencyBudgetProperties;
+
+    private final HotLocationPrefetcher hotLocationPrefetcher;
+
+    private final WeatherResponseCache weatherResponseCache;
+
+    private final ReverseGeocoder reverseGeocoder;
+
     @Autowired
-    public WeatherController(QWeatherApi qWeatherApi, CityDataService cityDataService, WeatherService weatherService) {
+    public WeatherController(QWeatherApi qWeatherApi, CityDataService cityDataService, WeatherService weatherService,
+                             LocationCanonicalizer locationCanonicalizer, GeoLookupService geoLookupService,
+                             SectionDeadlineExecutor sectionDeadlineExecutor,
+                             LatencyBudgetProperties latencyBudgetProperties,
+                             HotLocationPrefetcher hotLocationPrefetcher,
+                             WeatherResponseCache weatherResponseCache,
+                             ReverseGeocoder reverseGeocoder) {
         this.qWeatherApi = qWeatherApi;
         this.cityDataService = cityDataService;
         this.weatherService = weatherService;
+        this.locationCanonicalizer = locationCanonicalizer;
+        this.geoLookupService = geoLookupService;
+        this.sectionDeadlineExecutor = sectionDeadlineExecutor;
+        this.latencyBudgetProperties = latencyBudgetProperties;
+        this.hotLocationPrefetcher = hotLocationPrefetcher;
+        this.weatherResponseCache = weatherResponseCache;
+        this.reverseGeocoder = reverseGeocoder;
     }
 
     /**
@@ -52,7 +98,7 @@ public class WeatherController {
         if (StringUtils.isEmpty(location)) {
             return Mono.just(ResultResponse.error(StatusEnum.PARAM_ERROR));
         }
-        return qWeatherApi.lookup(location)
+        return geoLookupService.lookup(location)
                 .map(data -> {
                     List<GeoLookupVO> collect = data.getLocation().stream()
                             .map(e -> {
@@ -89,18 +135,109 @@ public class WeatherController {
                 });
     }
 
+    /**
+     * 城市/区县名称搜索 (本地省市区数据, 不请求上游)
+     *
+     * @param keyword 关键词
+     * @param cursor  游标, 首页为 0, 之后取上一页返回的 nextCursor
+     * @param size    每页条目数, 1-50
+     * @return 一页结果, 完全匹配与前缀匹配在前
+     */
+    @GetMapping("/city/search")
+    public Mono<ResultResponse<CitySearchVO>> searchCity(@RequestParam String keyword,
+                                                         @RequestParam(defaultValue = "0") int cursor,
+                                                         @RequestParam(defaultValue = "20") int size) {
+        if (!StringUtils.hasText(keyword) || cursor < 0 || size < 1 || size > MAX_CITY_SEARCH_SIZE) {
+            return Mono.just(ResultResponse.error(StatusEnum.PARAM_ERROR));
+        }
+        CitySearchIndex.Page page = cityDataService.search(keyword, cursor, size);
+        CitySearchVO vo = new CitySearchVO();
+        vo.setList(page.items().stream().map(WeatherController::toCitySearchItem).toList());
+        vo.setTotal(page.total());
+        vo.setNextCursor(page.nextCursor());
+        return Mono.just(ResultResponse.success(vo));
+    }
+
+    /**
+     * 城市/区县名称自动补全 (本地省市区数据, 不请求上游), 支持中文、全拼与首字母前缀, 例如 bj、beij、北京
+     *
+     * @param query 输入
+     * @param size  返回条目数, 1-10
+     * @return 按热度降序排列的城市/区县
+     */
+    @GetMapping("/city/suggest")
+    public Mono<ResultResponse<List<CitySearchVO.Item>>> suggestCity(@RequestParam String query,
+                                                                     @RequestParam(defaultValue = "10") int size) {
+        if (!StringUtils.hasText(query) || size < 1 || size > CityAutocomplete.TOP_K) {
+            return Mono.just(ResultResponse.error(StatusEnum.PARAM_ERROR));
+        }
+        return Mono.just(ResultResponse.success(cityDataService.suggest(query, size).stream()
+                .map(WeatherController::toCitySearchItem)
+                .toList()));
+    }
+
     /**
      * 获取天气数据(聚合请求天气API)
+     * 各数据项独立返回, 状态见 sections 字段; 客户端可通过 fields 参数只请求需要的数据项, 或只重试状态为 missing 的数据项.
      *
-     * @param location 经纬度
-     * @return
+     * @param location    经纬度, 会对齐到 qweather.location.grid 网格后再查询
+     * @param fields      需要的数据项 (now,daily,hourly,indices; now 也可写作 realtime), 逗号分隔, 默认全部.
+     *                    未请求的数据项不会请求上游或缓存
+     * @param indicesType 需要的生活指数类型 (1,2,3,5,14 的子集), 逗号分隔, 默认全部
+     * @param region      是否在 region 字段返回坐标所在的区县 (离线逆地理编码, 见 {@link ReverseGeocoder}),
+     *                    客户端不必再调用 /geo/lookup. 需要配置区县中心点数据集 (qweather.reverse-geocode.dataset,
+     *                    项目不附带), 未配置时忽略该参数 (响应不含 region 字段, 与不带该参数的请求共用响应缓存);
+     *                    坐标离最近的区县过远时同样不含
+     * @param request     可通过 qweather.latency.header (默认 X-Latency-Budget) 请求头指定延迟预算 (毫秒)
+     * @return 全部数据项都获取失败时返回失败. 全部数据项正常的响应以序列化后的字节缓存 (见 {@link WeatherResponseCache}),
+     * 命中时直接返回, 请求头 Accept-Encoding 包含 gzip 时返回预先压缩的字节
      */
     @GetMapping("/get")
-    public Mono<ResultResponse<GetWeatherVO>> getWeather(@RequestParam String location) {
-        if (StringUtils.isEmpty(location)) {
-            return Mono.just(ResultResponse.error(StatusEnum.PARAM_ERROR));
+    public Mono<ResponseEntity<?>> getWeather(@RequestParam String location,
+                                              @RequestParam(required = false) String fields,
+                                              @RequestParam(required = false) String indicesType,
+                                              @RequestParam(defaultValue = "false") boolean region,
+                                              ServerHttpRequest request) {
+        List<String> sections = StringUtils.hasText(fields)
+                ? splitParam(fields).stream().map(field -> "now".equals(field) ? WeatherService.REALTIME : field).distinct().toList()
+                : WeatherService.SECTIONS;
+        List<String> indicesTypes = StringUtils.hasText(indicesType) ? splitParam(indicesType) : WeatherService.INDICES_TYPES;
+        if (sections.isEmpty() || !WeatherService.SECTIONS.containsAll(sections)
+                || indicesTypes.isEmpty() || !WeatherService.INDICES_TYPES.containsAll(indicesTypes)) {
+            return Mono.just(ResponseEntity.ok(ResultResponse.error(StatusEnum.PARAM_ERROR)));
         }
-        return weatherService.getWeather(location).map(ResultResponse::success);
+        Duration budget = sectionDeadlineExecutor.resolveBudget(
+                request.getHeaders().getFirst(latencyBudgetProperties.getHeader()));
+        return locationCanonicalizer.canonicalize(location)
+                .<Mono<ResponseEntity<?>>>map(canonical -> {
+                    hotLocationPrefetcher.record(canonical);
+                    // 未加载数据集时 region 无效, 不区分响应缓存
+                    boolean withRegion = region && reverseGeocoder.isAvailable();
+                    String key = weatherResponseCache.key(canonical, sections, indicesTypes, withRegion);
+                    WeatherResponseCache.Encoded cached = weatherResponseCache.get(key);
+                    if (cached != null) {
+                        return Mono.just(weatherResponseCache.toResponse(cached, request.getHeaders()));
+                    }
+                    long generation = weatherResponseCache.generation();
+                    return weatherService.getWeather(canonical, budget, sections, indicesTypes)
+                            .map(vo -> {
+                                if (vo.getSections().values().stream()
+                                        .allMatch(status -> GetWeatherVO.SectionStatus.MISSING.equals(status.getStatus()))) {
+                                    return ResponseEntity.ok(ResultResponse.<GetWeatherVO>error(StatusEnum.FAIL));
+                                }
+                                if (withRegion) {
+                                    reverseGeocoder.resolve(canonical)
+                                            .ifPresent(entry -> vo.setRegion(toRegion(entry, canonical)));
+                                }
+                                WeatherResponseCache.Encoded encoded = weatherResponseCache.encode(ResultResponse.success(vo));
+                                if (WeatherResponseCache.isCacheable(vo)) {
+                                    encoded = weatherResponseCache.put(key, canonical, sections, encoded, generation,
+                                            WeatherResponseCache.expiresAt(vo));
+                                }
+                                return weatherResponseCache.toResponse(encoded, request.getHeaders());
+                            });
+                })
+                .orElseGet(() -> Mono.just(ResponseEntity.ok(ResultResponse.error(StatusEnum.PARAM_ERROR))));
     }
 
     /**
@@ -113,10 +250,35 @@ public class WeatherController {
     @GetMapping("/indices/daily")
     public Mono<ResultResponse<WeatherIndicesResponse>> getDailyIndices(@RequestParam String location,
                                                                         @RequestParam String type) {
-        if (StringUtils.isEmpty(location) || StringUtils.isEmpty(type)) {
+        if (StringUtils.isEmpty(type)) {
             return Mono.just(ResultResponse.error(StatusEnum.PARAM_ERROR));
         }
-        return qWeatherApi.getWeatherIndices(location, type)
-                .map(ResultResponse::success);
+        return locationCanonicalizer.canonicalize(location)
+                .map(canonical -> qWeatherApi.getWeatherIndices(canonical, type).map(ResultResponse::success))
+                .orElseGet(() -> Mono.just(ResultResponse.error(StatusEnum.PARAM_ERROR)));
+    }
+
+    private static GeoLookupVO toRegion(CitySearchIndex.Entry entry, String canonical) {
+        String[] parts = canonical.split(",");
+        GeoLookupVO vo = new GeoLookupVO();
+        vo.setName(entry.name());
+        vo.setAdm1(entry.province());
+        vo.setAdm2(entry.city() != null ? entry.city() : entry.name());
+        vo.setLon(Float.parseFloat(parts[0]));
+        vo.setLat(Float.parseFloat(parts[1]));
+        return vo;
+    }
+
+    private static CitySearchVO.Item toCitySearchItem(CitySearchIndex.Entry entry) {
+        CitySearchVO.Item item = new CitySearchVO.Item();
+        item.setName(entry.name());
+        item.setAdm1(entry.province());
+        item.setAdm2(entry.city());
+        item.setLabel(entry.label());
+        return item;
+    }
+
+    private static List<String> splitParam(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(StringUtils::hasText).distinct().toList();
     }
 }
@@ -1,6 +1,8 @@
 package app.weather.exception;
 
 import app.weather.model.response.ResultResponse;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -12,15 +14,38 @@ import reactor.core.publisher.Mono;
 @RestControllerAdvice
 @Slf4j
 public class GlobalExceptionHandler {
+    /**
+     * 外部 API 返回错误状态码. 响应内容已在 QWeatherApi 中记录, 这里不再输出堆栈, 避免上游故障时日志量放大
+     */
     @ExceptionHandler(WebClientResponseException.class)
     public Mono<ResponseEntity<ResultResponse<Object>>> handleWebClientResponseException(WebClientResponseException ex) {
-        log.error("调用外部 API 失败: Status={}, Body={}", ex.getStatusCode(), ex.getResponseBodyAsString(), ex);
+        log.warn("调用外部 API 失败: Status={}, Body={}", ex.getStatusCode(), ex.getResponseBodyAsString());
         int statusCode = ex.getStatusCode().value();
         String message = String.format("外部 API 调用失败: %d - %s", statusCode, ex.getStatusText());
         ResultResponse<Object> errorResponse = ResultResponse.error(statusCode, message);
         return Mono.just(ResponseEntity.status(ex.getStatusCode()).body(errorResponse));
     }
 
+    /**
+     * 熔断器打开或并发已满时快速失败, 属于预期内的降级, 只记录一行日志
+     */
+    @ExceptionHandler({CallNotPermittedException.class, BulkheadFullException.class})
+    public Mono<ResponseEntity<ResultResponse<Object>>> handleRejectedException(RuntimeException ex) {
+        log.warn("外部 API 暂不可用 (熔断/限流): {}", ex.getMessage());
+        ResultResponse<Object> errorResponse = ResultResponse.error(HttpStatus.SERVICE_UNAVAILABLE.value(), "外部 API 暂不可用, 请稍后重试");
+        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse));
+    }
+
+    /**
+     * 调用额度不足, 低优先级调用被拒绝
+     */
+    @ExceptionHandler(QuotaExceededException.class)
+    public Mono<ResponseEntity<ResultResponse<Object>>> handleQuotaExceededException(QuotaExceededException ex) {
+        log.warn("{}", ex.getMessage());
+        ResultResponse<Object> errorResponse = ResultResponse.error(HttpStatus.TOO_MANY_REQUESTS.value(), "请求过多, 请稍后重试");
+        return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(errorResponse));
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public Mono<ResponseEntity<ResultResponse<Object>>> handleRuntimeException(RuntimeException ex) {
         log.error("发生运行时异常: {}", ex.getMessage(), ex);
@@ -0,0 +1,20 @@
+package app.weather.exception;
+
+import lombok.Getter;
+
+/**
+ * 和风天气调用额度不足, 该优先级的调用被拒绝 (未请求上游)
+ */
+@Getter
+public class QuotaExceededException extends RuntimeException {
+
+    /**
+     * 接口名称
+     */
+    private final String endpoint;
+
+    public QuotaExceededException(String endpoint, String window) {
+        super("和风天气" + window + "调用额度不足, 拒绝低优先级调用: " + endpoint);
+        this.endpoint = endpoint;
+    }
+}
@@ -0,0 +1,59 @@
+package app.weather.model.qweather;
+
+import com.fasterxml.jackson.annotation.JsonIncludeProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 解析和风天气响应时只保留用到的字段 (Jackson mix-in).
+ * <p>
+ * 实时/每日/逐小时天气只用于构建 {@link app.weather.model.vo.GetWeatherVO}, 解析时跳过 refer、fxLink
+ * 以及月相、夜间风向等从未使用的字段, 减少解析时的对象分配和缓存体积.
+ * 天气指数与城市搜索会原样返回给前端, 不做裁剪.
+ * <p>
+ * 注意: GetWeatherVO 需要新字段时, 要同步加入对应的白名单.
+ */
+public final class QWeatherResponseMixins {
+
+    private QWeatherResponseMixins() {
+    }
+
+    /**
+     * 注册到指定 ObjectMapper
+     *
+     * @param objectMapper 解析和风天气响应的 ObjectMapper
+     * @return objectMapper
+     */
+    public static ObjectMapper register(ObjectMapper objectMapper) {
+        return objectMapper
+                .addMixIn(RealTimeWeatherResponse.class, RealTimeWeatherMixin.class)
+                .addMixIn(RealTimeWeatherResponse.NowData.class, NowDataMixin.class)
+                .addMixIn(DailyWeatherResponse.class, DailyWeatherMixin.class)
+                .addMixIn(DailyWeatherResponse.Daily.class, DailyMixin.class)
+                .addMixIn(HourlyWeatherResponse.class, HourlyWeatherMixin.class)
+                .addMixIn(HourlyWeatherResponse.HourlyData.class, HourlyDataMixin.class);
+    }
+
+    @JsonIncludeProperties({"code", "updateTime", "now"})
+    private abstract static class RealTimeWeatherMixin {
+    }
+
+    @JsonIncludeProperties({"obsTime", "temp", "feelsLike", "icon", "text", "windDir", "windScale", "windSpeed", "humidity"})
+    private abstract static class NowDataMixin {
+    }
+
+    @JsonIncludeProperties({"code", "updateTime", "daily"})
+    private abstract static class DailyWeatherMixin {
+    }
+
+    @JsonIncludeProperties({"fxDate", "tempMax", "tempMin", "iconDay", "textDay"})
+    private abstract static class DailyMixin {
+    }
+
+    @JsonIncludeProperties({"code", "updateTime", "hourly"})
+    private abstract static class HourlyWeatherMixin {
+    }
+
+    @JsonIncludeProperties({"fxTime", "temp", "icon", "text", "windSpeed"})
+    private abstract static class HourlyDataMixin {
+    }
+}
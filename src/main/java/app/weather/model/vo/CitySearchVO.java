@@ -0,0 +1,51 @@
+package app.weather.model.vo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 城市/区县名称搜索 返回对象
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CitySearchVO {
+    /**
+     * 本页结果, 完全匹配与前缀匹配在前
+     */
+    private List<Item> list;
+
+    /**
+     * 匹配总数
+     */
+    private Integer total;
+
+    /**
+     * 下一页的游标, 没有更多结果时不返回
+     */
+    private Integer nextCursor;
+
+    @Data
+    public static class Item {
+        /**
+         * 城市/区县名称
+         */
+        private String name;
+
+        /**
+         * 所属一级行政区域
+         */
+        private String adm1;
+
+        /**
+         * 区县所属城市, 城市本身不返回
+         */
+        private String adm2;
+
+        /**
+         * 展示文本, 格式为"区县-城市-一级行政区"或"城市-一级行政区"
+         */
+        private String label;
+    }
+}
@@ -5,22 +5,53 @@ import app.weather.model.qweather.DailyWeatherResponse;
 import app.weather.model.qweather.HourlyWeatherResponse;
 import app.weather.model.qweather.RealTimeWeatherResponse;
 import app.weather.model.qweather.WeatherIndicesResponse;
-import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
-import org.joda.time.DateTime;
-import org.joda.time.LocalDate;
-import org.joda.time.format.DateTimeFormat;
 
-import java.util.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 /**
  * 天气预报API
+ * 未请求或获取失败的数据项对应字段为空, 不输出
  */
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class GetWeatherVO {
+    /**
+     * 展示时间所在的时区 (北京时间)
+     */
+    private static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+
+    private static final ZoneOffset OFFSET = ZoneOffset.ofHours(8);
+
+    private static final DateTimeFormatter DAILY_DATE = DateTimeFormatter.ofPattern("MM月dd日");
+
+    private static final DateTimeFormatter HOURLY_TIME = DateTimeFormatter.ofPattern("HH:mm");
+
+    /**
+     * 周一 ~ 周日的简称, 下标为 {@link DayOfWeek#ordinal()}
+     */
+    private static final String[] DAY_OF_WEEK_NAMES = new String[7];
+
+    static {
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            DAY_OF_WEEK_NAMES[dayOfWeek.ordinal()] = dayOfWeek.getDisplayName(TextStyle.SHORT, Locale.CHINA);
+        }
+    }
+
     /**
      * 实时温度
      */
@@ -76,13 +107,63 @@ public class GetWeatherVO {
      */
     private List<WeatherIndices> indicesList;
 
+    /**
+     * 坐标所在的区县 (离线逆地理编码), 请求参数 region=true 且能解析时返回
+     */
+    private GeoLookupVO region;
+
+    /**
+     * 各数据项 (realtime/daily/hourly/indices) 的状态, 客户端可只重试状态为 missing 的数据项
+     */
+    private Map<String, SectionStatus> sections = new LinkedHashMap<>();
+
+    @Data
+    public static class SectionStatus {
+        /**
+         * 数据正常
+         */
+        public static final String OK = "ok";
+
+        /**
+         * 已过期的缓存数据 (上游超时或失败时返回)
+         */
+        public static final String STALE = "stale";
+
+        /**
+         * 获取失败, 对应字段为空
+         */
+        public static final String MISSING = "missing";
+
+        /**
+         * ok / stale / missing
+         */
+        private String status;
+
+        /**
+         * 和风天气数据的更新时间, missing 时为空
+         */
+        private String updateTime;
+
+        /**
+         * 数据所在缓存条目的过期时间 (毫秒时间戳), 不输出; 用于限制响应缓存的有效期, missing 时为 0
+         */
+        @JsonIgnore
+        private long expiresAt;
+
+        public static SectionStatus of(String status, String updateTime) {
+            SectionStatus sectionStatus = new SectionStatus();
+            sectionStatus.setStatus(status);
+            sectionStatus.setUpdateTime(updateTime);
+            return sectionStatus;
+        }
+    }
+
     @Data
     public static class DailyWeather {
         /**
-         * 预报日期
+         * 预报日期, 格式 MM月dd日
          */
-        @JsonFormat(pattern = "MM月dd日", timezone = "GMT+8")
-        private Date fxDate;
+        private String fxDate;
 
         /**
          * 周几
@@ -114,10 +195,9 @@ public class GetWeatherVO {
     @Data
     public static class HourlyWeather {
         /**
-         * 预报时间
+         * 预报时间 (北京时间), 格式 HH:mm
          */
-        @JsonFormat(pattern = "HH:mm", timezone = "GMT+8")
-        private Date fxDate;
+        private String fxDate;
 
         /**
          * 温度
@@ -182,62 +262,118 @@ public class GetWeatherVO {
         return this;
     }
 
+    /**
+     * 构建未来天气, 日期在构建时格式化为展示字符串, 当天显示为"今天"
+     *
+     * @param dailyWeatherResponse 每日天气响应
+     * @return GetWeatherVO
+     */
     public GetWeatherVO buildDailyWeather(DailyWeatherResponse dailyWeatherResponse) {
-        List<DailyWeather> collect = dailyWeatherResponse.getDaily().stream()
-                .map(data -> {
-                    DailyWeather dailyWeather = new DailyWeather();
-                    Date fxDate = DateTimeFormat.forPattern("yyyy-MM-dd")
-                            .parseDateTime(data.getFxDate())
-                            .toDate();
-                    // 设置日期格式为"MM月dd日"
-                    dailyWeather.setFxDate(fxDate);
-                    if (LocalDate.fromDateFields(fxDate).equals(LocalDate.now())) {
-                        dailyWeather.setDayOfWeek("今天");
-                    } else {
-                        String dayOfWeek = LocalDate.fromDateFields(fxDate).dayOfWeek().getAsShortText(Locale.CHINA);
-                        dailyWeather.setDayOfWeek(dayOfWeek);
-                    }
-                    dailyWeather.setTempMax(data.getTempMax());
-                    dailyWeather.setTempMin(data.getTempMin());
-                    dailyWeather.setIcon(data.getIconDay());
-                    dailyWeather.setText(data.getTextDay());
-                    return dailyWeather;
-                })
-                .collect(Collectors.toList());
+        List<DailyWeatherResponse.Daily> daily = dailyWeatherResponse.getDaily();
+        LocalDate today = LocalDate.now(ZONE);
+        List<DailyWeather> collect = new ArrayList<>(daily.size());
+        for (DailyWeatherResponse.Daily data : daily) {
+            LocalDate fxDate = parseDate(data.getFxDate());
+            DailyWeather dailyWeather = new DailyWeather();
+            dailyWeather.setFxDate(formatDailyDate(data.getFxDate(), fxDate));
+            dailyWeather.setDayOfWeek(fxDate.equals(today) ? "今天" : DAY_OF_WEEK_NAMES[fxDate.getDayOfWeek().ordinal()]);
+            dailyWeather.setTempMax(data.getTempMax());
+            dailyWeather.setTempMin(data.getTempMin());
+            dailyWeather.setIcon(data.getIconDay());
+            dailyWeather.setText(data.getTextDay());
+            collect.add(dailyWeather);
+        }
         this.setDailyWeatherList(collect);
         return this;
     }
 
+    /**
+     * 构建逐小时天气, 预报时间在构建时转换为北京时间的 HH:mm
+     *
+     * @param hourlyWeatherResponse 逐小时天气响应
+     * @return GetWeatherVO
+     */
     public GetWeatherVO buildHourlyWeather(HourlyWeatherResponse hourlyWeatherResponse) {
-        List<HourlyWeather> collect = hourlyWeatherResponse.getHourly().stream()
-                .map(data -> {
-                    DateTime parseDateTime = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mmZ")
-                            .parseDateTime(data.getFxTime());
-                    HourlyWeather hourlyWeather = new HourlyWeather();
-                    hourlyWeather.setFxDate(parseDateTime.toDate());
-                    hourlyWeather.setTemp(data.getTemp());
-                    hourlyWeather.setIcon(data.getIcon());
-                    hourlyWeather.setText(data.getText());
-                    hourlyWeather.setWindSpeed(data.getWindSpeed());
-                    return hourlyWeather;
-                })
-                .collect(Collectors.toList());
+        List<HourlyWeatherResponse.HourlyData> hourly = hourlyWeatherResponse.getHourly();
+        List<HourlyWeather> collect = new ArrayList<>(hourly.size());
+        for (HourlyWeatherResponse.HourlyData data : hourly) {
+            HourlyWeather hourlyWeather = new HourlyWeather();
+            hourlyWeather.setFxDate(formatHourlyTime(data.getFxTime()));
+            hourlyWeather.setTemp(data.getTemp());
+            hourlyWeather.setIcon(data.getIcon());
+            hourlyWeather.setText(data.getText());
+            hourlyWeather.setWindSpeed(data.getWindSpeed());
+            collect.add(hourlyWeather);
+        }
         this.setHourlyWeatherList(collect);
         return this;
     }
 
     public GetWeatherVO buildWeatherIndices(WeatherIndicesResponse weatherIndicesResponse) {
-        List<WeatherIndices> collect = weatherIndicesResponse.getDaily().stream()
-                .map(data -> {
-                    WeatherIndices weatherIndices = new WeatherIndices();
-                    weatherIndices.setName(data.getName());
-                    weatherIndices.setType(data.getType());
-                    weatherIndices.setCategory(data.getCategory());
-                    weatherIndices.setText(data.getText());
-                    return weatherIndices;
-                })
-                .collect(Collectors.toList());
+        return buildWeatherIndices(weatherIndicesResponse, null);
+    }
+
+    /**
+     * 构建生活指数, 只保留指定类型
+     *
+     * @param weatherIndicesResponse 生活指数响应
+     * @param types                  需要的指数类型, 为 null 时保留全部
+     * @return GetWeatherVO
+     */
+    public GetWeatherVO buildWeatherIndices(WeatherIndicesResponse weatherIndicesResponse, Collection<String> types) {
+        List<WeatherIndicesResponse.DailyIndex> daily = weatherIndicesResponse.getDaily();
+        List<WeatherIndices> collect = new ArrayList<>(daily.size());
+        for (WeatherIndicesResponse.DailyIndex data : daily) {
+            if (types != null && !types.contains(data.getType())) {
+                continue;
+            }
+            WeatherIndices weatherIndices = new WeatherIndices();
+            weatherIndices.setName(data.getName());
+            weatherIndices.setType(data.getType());
+            weatherIndices.setCategory(data.getCategory());
+            weatherIndices.setText(data.getText());
+            collect.add(weatherIndices);
+        }
         this.setIndicesList(collect);
         return this;
     }
+
+    /**
+     * 解析和风天气的日期 (yyyy-MM-dd), 按固定位置读取, 避免 DateTimeFormatter 解析的开销
+     */
+    private static LocalDate parseDate(String date) {
+        if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+            try {
+                return LocalDate.of(Integer.parseInt(date, 0, 4, 10),
+                        Integer.parseInt(date, 5, 7, 10),
+                        Integer.parseInt(date, 8, 10, 10));
+            } catch (RuntimeException ignored) {
+                // 交由 LocalDate.parse 处理
+            }
+        }
+        return LocalDate.parse(date);
+    }
+
+    /**
+     * 日期格式化为 MM月dd日, yyyy-MM-dd 格式时直接截取原字符串
+     */
+    private static String formatDailyDate(String date, LocalDate parsed) {
+        if (date.length() == 10) {
+            return date.substring(5, 7) + "月" + date.substring(8, 10) + "日";
+        }
+        return DAILY_DATE.format(parsed);
+    }
+
+    /**
+     * 预报时间格式化为北京时间的 HH:mm. 和风天气的时间格式为 2021-02-16T16:00+08:00,
+     * 偏移量为 +08:00 时直接截取原字符串, 其余情况解析后换算
+     */
+    private static String formatHourlyTime(String fxTime) {
+        if (fxTime.length() == 22 && fxTime.charAt(10) == 'T' && fxTime.charAt(13) == ':'
+                && fxTime.endsWith("+08:00")) {
+            return fxTime.substring(11, 16);
+        }
+        OffsetDateTime parsed = OffsetDateTime.parse(fxTime);
+        return HOURLY_TIME.format(OFFSET.equals(parsed.getOffset()) ? parsed : parsed.withOffsetSameInstant(OFFSET));
+    }
 }
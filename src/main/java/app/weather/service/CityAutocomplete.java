@@ -0,0 +1,283 @@
+package app.weather.service;
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinVCharType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 城市/区县名称自动补全 (只读).
+ * <p>
+ * 以每个城市/区县的 中文名称、全拼 (beijingshi)、首字母 (bjs) 为 key 建立前缀树, 多音字按全部读音组合建立 key
+ * (如 重庆市 chongqingshi/zhongqingshi), 每个名称最多 {@link #MAX_READINGS} 种组合.
+ * 构建完成后前缀树压缩为数组 (子节点按字符排序, 二分查找), 每个节点预先保存子树中热度最高的 {@link #TOP_K} 个条目,
+ * 查询只需沿输入走到对应节点后直接返回, 耗时与匹配的条目数无关.
+ * <p>
+ * 热度: 城市高于区县, 城市按下辖区县数 (规模的近似) 排列; 相同时名称短的、在 pca.json 中靠前的在前.
+ */
+public class CityAutocomplete {
+
+    /**
+     * 每个节点保存的候选数, 即单次查询最多返回的条目数
+     */
+    public static final int TOP_K = 10;
+
+    private static final int MAX_READINGS = 8;
+
+    private static final HanyuPinyinOutputFormat PINYIN_FORMAT = new HanyuPinyinOutputFormat();
+
+    static {
+        PINYIN_FORMAT.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        PINYIN_FORMAT.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        PINYIN_FORMAT.setVCharType(HanyuPinyinVCharType.WITH_V);
+    }
+
+    private final CitySearchIndex.Entry[] entries;
+
+    /**
+     * 节点 i 的子节点为 edgeChars/edgeTargets 的 [childStart[i], childStart[i + 1]), 按字符升序
+     */
+    private final int[] childStart;
+
+    private final char[] edgeChars;
+
+    private final int[] edgeTargets;
+
+    /**
+     * 节点 i 的候选条目为 topIds 的 [topStart[i], topStart[i + 1]), 按热度降序
+     */
+    private final int[] topStart;
+
+    private final int[] topIds;
+
+    /**
+     * @param provinceIndex 一级行政区 -> 城市 -> 区县 (已规范化, 见 {@link CityDataService})
+     */
+    public CityAutocomplete(Map<String, Map<String, List<String>>> provinceIndex) {
+        List<CitySearchIndex.Entry> list = CitySearchIndex.entries(provinceIndex);
+        this.entries = list.toArray(new CitySearchIndex.Entry[0]);
+        int[] order = popularityOrder(provinceIndex);
+
+        Node root = new Node();
+        for (int id = 0; id < entries.length; id++) {
+            for (String key : keys(entries[id].name())) {
+                Node node = root;
+                for (int i = 0; i < key.length(); i++) {
+                    node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+                }
+                node.terminals.add(id);
+            }
+        }
+        collectTop(root, order);
+
+        // 按广度优先编号并压缩为数组
+        List<Node> nodes = new ArrayList<>();
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            node.index = nodes.size();
+            nodes.add(node);
+            queue.addAll(node.children.values());
+        }
+        int edges = nodes.size() - 1;
+        int tops = nodes.stream().mapToInt(node -> node.top.length).sum();
+        this.childStart = new int[nodes.size() + 1];
+        this.edgeChars = new char[edges];
+        this.edgeTargets = new int[edges];
+        this.topStart = new int[nodes.size() + 1];
+        this.topIds = new int[tops];
+        int edge = 0;
+        int top = 0;
+        for (Node node : nodes) {
+            childStart[node.index] = edge;
+            for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                edgeChars[edge] = child.getKey();
+                edgeTargets[edge++] = child.getValue().index;
+            }
+            topStart[node.index] = top;
+            System.arraycopy(node.top, 0, topIds, top, node.top.length);
+            top += node.top.length;
+        }
+        childStart[nodes.size()] = edge;
+        topStart[nodes.size()] = top;
+    }
+
+    /**
+     * 条目下标 -> 热度名次 (0 为最高)
+     */
+    private int[] popularityOrder(Map<String, Map<String, List<String>>> provinceIndex) {
+        Integer[] ids = new Integer[entries.length];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, Comparator.<Integer>comparingInt(id -> -weight(entries[id], provinceIndex))
+                .thenComparingInt(id -> entries[id].name().length())
+                .thenComparingInt(id -> id));
+        int[] order = new int[ids.length];
+        for (int rank = 0; rank < ids.length; rank++) {
+            order[ids[rank]] = rank;
+        }
+        return order;
+    }
+
+    private static int weight(CitySearchIndex.Entry entry, Map<String, Map<String, List<String>>> provinceIndex) {
+        if (entry.city() != null) {
+            return 0;
+        }
+        return 1 + provinceIndex.get(entry.province()).get(entry.name()).size();
+    }
+
+    /**
+     * 自底向上计算每个节点子树中热度最高的 TOP_K 个条目 (去重)
+     */
+    private static void collectTop(Node node, int[] order) {
+        Set<Integer> candidates = new LinkedHashSet<>(node.terminals);
+        for (Node child : node.children.values()) {
+            collectTop(child, order);
+            for (int id : child.top) {
+                candidates.add(id);
+            }
+        }
+        node.top = candidates.stream()
+                .sorted(Comparator.comparingInt(id -> order[id]))
+                .limit(TOP_K)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        node.terminals = null;
+    }
+
+    /**
+     * 名称的全部 key: 中文名称、各读音组合的全拼与首字母
+     */
+    static Set<String> keys(String name) {
+        List<List<String>> readings = new ArrayList<>();
+        readings.add(List.of());
+        for (int i = 0; i < name.length(); i++) {
+            List<String> syllables = syllables(name.charAt(i));
+            List<List<String>> next = new ArrayList<>();
+            for (List<String> reading : readings) {
+                for (String syllable : syllables) {
+                    if (next.size() == MAX_READINGS) {
+                        break;
+                    }
+                    List<String> extended = new ArrayList<>(reading);
+                    extended.add(syllable);
+                    next.add(extended);
+                }
+            }
+            readings = next;
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(name);
+        for (List<String> reading : readings) {
+            StringBuilder full = new StringBuilder();
+            StringBuilder initials = new StringBuilder();
+            for (String syllable : reading) {
+                full.append(syllable);
+                initials.append(syllable.charAt(0));
+            }
+            keys.add(full.toString());
+            keys.add(initials.toString());
+        }
+        return keys;
+    }
+
+    private static List<String> syllables(char c) {
+        String[] pinyin;
+        try {
+            pinyin = PinyinHelper.toHanyuPinyinStringArray(c, PINYIN_FORMAT);
+        } catch (BadHanyuPinyinOutputFormatCombination e) {
+            throw new IllegalStateException(e);
+        }
+        if (pinyin == null || pinyin.length == 0) {
+            return List.of(String.valueOf(Character.toLowerCase(c)));
+        }
+        // 去掉声调后可能重复
+        return List.copyOf(new LinkedHashSet<>(Arrays.asList(pinyin)));
+    }
+
+    /**
+     * 节点数
+     */
+    public int size() {
+        return childStart.length - 1;
+    }
+
+    /**
+     * 按中文、全拼或首字母前缀补全城市/区县名称
+     *
+     * @param query 输入, 忽略大小写、空格与隔音符 (')
+     * @param limit 最多返回的条目数, 不超过 {@link #TOP_K}
+     * @return 按热度降序排列的条目
+     */
+    public List<CitySearchIndex.Entry> suggest(String query, int limit) {
+        if (query == null || limit <= 0) {
+            return List.of();
+        }
+        int node = 0;
+        int length = 0;
+        for (int i = 0; i < query.length(); i++) {
+            char c = normalize(query.charAt(i));
+            if (c == 0) {
+                continue;
+            }
+            node = child(node, c);
+            if (node < 0) {
+                return List.of();
+            }
+            length++;
+        }
+        if (length == 0) {
+            return List.of();
+        }
+        int from = topStart[node];
+        int to = Math.min(topStart[node + 1], from + limit);
+        List<CitySearchIndex.Entry> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(entries[topIds[i]]);
+        }
+        return result;
+    }
+
+    private int child(int node, char c) {
+        int index = Arrays.binarySearch(edgeChars, childStart[node], childStart[node + 1], c);
+        return index < 0 ? -1 : edgeTargets[index];
+    }
+
+    /**
+     * 输入字符规范化, 需要忽略的字符返回 0
+     */
+    private static char normalize(char c) {
+        if (Character.isWhitespace(c) || c == '\'') {
+            return 0;
+        }
+        if (c == 'ü' || c == 'Ü') {
+            return 'v';
+        }
+        return c < 128 ? Character.toLowerCase(c) : c;
+    }
+
+    private static final class Node {
+        private final TreeMap<Character, Node> children = new TreeMap<>();
+
+        private List<Integer> terminals = new ArrayList<>(1);
+
+        private int[] top;
+
+        private int index;
+    }
+}
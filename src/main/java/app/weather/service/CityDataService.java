@@ -7,21 +7,39 @@ import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * 省市区数据 (pca.json).
+ * <p>
+ * 加载时把原始层级规范化为只读索引: 一级行政区 -> 城市 -> 区县. "市辖区"/"县" 合并为一级行政区本身,
+ * "省直辖县级行政区划" 下的每个县级市作为独立城市. 名称在加载时去重共享,
+ * 读取直接返回索引中的只读集合, 不再在每次请求时重新合并. 名称搜索见 {@link CitySearchIndex}, 拼音/首字母自动补全见 {@link CityAutocomplete}.
+ */
 @Service
 @Slf4j
 public class CityDataService {
-    private Map<String, Map<String, List<String>>> cityDistrictMap;
-
     public static final String CITY_DISTRICT_JSON_FILE = "pca.json";
 
+    /**
+     * 一级行政区 -> 城市 -> 区县, 全部为只读集合
+     */
+    private Map<String, Map<String, List<String>>> provinceIndex = Map.of();
+
+    /**
+     * 城市/区县名称的倒排索引
+     */
+    private CitySearchIndex searchIndex = new CitySearchIndex(Map.of());
+
+    /**
+     * 城市/区县名称自动补全
+     */
+    private CityAutocomplete autocomplete = new CityAutocomplete(Map.of());
+
     @PostConstruct
     public void init() {
         loadCityData();
@@ -36,98 +54,117 @@ public class CityDataService {
             ObjectMapper mapper = new ObjectMapper();
 
             try (InputStream inputStream = resource.getInputStream()) {
-                cityDistrictMap = mapper.readValue(inputStream, new TypeReference<>() {
+                Map<String, Map<String, List<String>>> cityDistrictMap = mapper.readValue(inputStream, new TypeReference<>() {
                 });
-                log.info("加载城市区数据完成，数据量: {}", cityDistrictMap.size());
+                buildIndex(cityDistrictMap);
+                log.info("加载城市区数据完成，数据量: {}, 搜索条目: {}, 自动补全节点: {}",
+                        provinceIndex.size(), searchIndex.size(), autocomplete.size());
             }
         } catch (IOException e) {
             log.error("Failed to load city data. e: {}", Throwables.getStackTraceAsString(e));
-            cityDistrictMap = new HashMap<>();
         }
     }
 
+    /**
+     * 规范化原始层级并构建只读索引、名称搜索索引与自动补全
+     *
+     * @param cityDistrictMap pca.json 的原始数据
+     */
+    private void buildIndex(Map<String, Map<String, List<String>>> cityDistrictMap) {
+        Map<String, String> names = new HashMap<>();
+        Map<String, Map<String, List<String>>> index = new LinkedHashMap<>(cityDistrictMap.size() * 2);
+        cityDistrictMap.forEach((rawProvince, cities) -> {
+            String province = intern(names, rawProvince);
+            Map<String, List<String>> merged = new LinkedHashMap<>();
+            if (cities != null) {
+                cities.forEach((rawCity, districts) -> {
+                    List<String> districtList = districts == null ? List.of() : districts;
+                    // 处理市辖区和县的情况
+                    if (rawCity.equals("市辖区") || rawCity.equals("县")) {
+                        addDistricts(merged, province, districtList, names);
+                    } else if (rawCity.equals("省直辖县级行政区划")) {
+                        for (String district : districtList) {
+                            addDistricts(merged, intern(names, district), List.of(district), names);
+                        }
+                    } else {
+                        addDistricts(merged, intern(names, rawCity), districtList, names);
+                    }
+                });
+            }
+            Map<String, List<String>> provinceCities = new LinkedHashMap<>(merged.size() * 2);
+            merged.forEach((city, districts) -> provinceCities.put(city, List.copyOf(districts)));
+            index.put(province, Collections.unmodifiableMap(provinceCities));
+        });
+        this.provinceIndex = Collections.unmodifiableMap(index);
+        this.searchIndex = new CitySearchIndex(provinceIndex);
+        this.autocomplete = new CityAutocomplete(provinceIndex);
+    }
+
+    private static void addDistricts(Map<String, List<String>> merged, String city, List<String> districts,
+                                     Map<String, String> names) {
+        List<String> target = merged.computeIfAbsent(city, k -> new ArrayList<>());
+        for (String district : districts) {
+            target.add(intern(names, district));
+        }
+    }
+
+    private static String intern(Map<String, String> names, String name) {
+        return names.computeIfAbsent(name, k -> k);
+    }
+
     // 获取所有城市名称
     public Set<String> getAllCities() {
-        return cityDistrictMap.keySet();
+        return provinceIndex.keySet();
     }
 
     /**
      * 根据一级名称获取所有城市的区县列表
      *
      * @param province 一级名称
-     * @return
+     * @return 城市 -> 区县列表 (只读)
      */
     public Map<String, List<String>> getCityDistrictMap(String province) {
         if (StringUtils.isEmpty(province)) {
             return Collections.emptyMap();
         }
-        Map<String, List<String>> map = cityDistrictMap.get(province);
-        if (CollectionUtils.isEmpty(map)) {
-            return Collections.emptyMap();
-        }
-        Map<String, List<String>> result = new HashMap<>(map.size());
-
-        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
-            String cityName = entry.getKey();
-            List<String> districts = entry.getValue();
-
-            // 处理市辖区和县的情况
-            if (cityName.equals("市辖区") || cityName.equals("县")) {
-                cityName = province;
-            }
-            if (cityName.equals("省直辖县级行政区划")) {
-                for (String district : districts) {
-                    result.put(district, Collections.singletonList(district));
-                }
-                continue;
-            }
-
-            // 将城市名称和区县列表添加到结果中
-            if (result.containsKey(cityName)) {
-                result.get(cityName).addAll(districts);
-            } else {
-                result.put(cityName, districts);
-            }
-        }
-
-        return result;
+        return provinceIndex.getOrDefault(province, Collections.emptyMap());
     }
 
     /**
      * 根据关键词模糊搜索区县，返回"区县-城市"格式的结果
      *
      * @param keyword 搜索关键词
-     * @return 匹配的区县列表，格式为"区县-城市"
+     * @return 匹配的区县列表，格式为"区县-城市"，完全匹配与前缀匹配在前
      */
     public List<String> searchDistrictWithCity(String keyword) {
         if (!StringUtils.hasText(keyword)) {
             return Collections.emptyList();
         }
+        return searchIndex.search(keyword, 0, Integer.MAX_VALUE).items().stream()
+                .map(CitySearchIndex.Entry::label)
+                .toList();
+    }
 
-        List<String> results = new ArrayList<>();
-
-        // 遍历每个城市/省
-        for (Map.Entry<String, Map<String, List<String>>> cityEntry : cityDistrictMap.entrySet()) {
-            String province = cityEntry.getKey(); // 一级行政区、省、直辖市
-            Map<String, List<String>> regionTypes = getCityDistrictMap(province);
-
-            // 遍历每种区域类型
-            for (Map.Entry<String, List<String>> regionTypeEntry : regionTypes.entrySet()) {
-                String cityName = regionTypeEntry.getKey();
-                List<String> districts = regionTypeEntry.getValue(); // 具体区县列表
-                if (cityName.contains(keyword)) {
-                    results.add(cityName + "-" + province);
-                }
-                // 遍历每个区县
-                for (String district : districts) {
-                    // 检查区县名称是否包含搜索关键词
-                    if (district.contains(keyword)) {
-                        results.add(district + "-" + cityName + "-" + province);
-                    }
-                }
-            }
-        }
+    /**
+     * 分页搜索名称包含关键词的城市/区县
+     *
+     * @param keyword 搜索关键词
+     * @param cursor  游标, 首页为 0
+     * @param limit   每页条目数
+     * @return 一页结果
+     */
+    public CitySearchIndex.Page search(String keyword, int cursor, int limit) {
+        return searchIndex.search(StringUtils.hasText(keyword) ? keyword.trim() : null, cursor, limit);
+    }
 
-        return results;
+    /**
+     * 按中文、全拼或首字母前缀补全城市/区县名称, 例如 "bj", "beij", "北京"
+     *
+     * @param query 输入
+     * @param limit 最多返回的条目数, 不超过 {@link CityAutocomplete#TOP_K}
+     * @return 按热度降序排列的条目
+     */
+    public List<CitySearchIndex.Entry> suggest(String query, int limit) {
+        return autocomplete.suggest(query, limit);
     }
 }
@@ -0,0 +1,220 @@
+package app.weather.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 行政区划名称的 n-gram 倒排索引 (只读).
+ * <p>
+ * 每个城市/区县是一个条目, 按名称中的单字与相邻两字 (bigram) 建立倒排表 (条目下标升序).
+ * 单字关键字直接取单字倒排表; 两字及以上的关键字对其全部 bigram 的倒排表求交集 (从最短的开始),
+ * 再用 {@link String#contains} 排除 bigram 不连续的误匹配. 结果按 完全匹配 > 前缀匹配 > 包含,
+ * 同级按名称长度、条目顺序排列 (倒排表已按条目顺序排列, 按 匹配级别 + 名称长度 计数排序即可, 不需要比较排序),
+ * 排序稳定, 因此可以用偏移量作为分页游标.
+ */
+public class CitySearchIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private static final int EXACT = 0;
+
+    private static final int PREFIX = 1;
+
+    private static final int CONTAINS = 2;
+
+    private final Entry[] entries;
+
+    /**
+     * 最长的名称长度, 决定计数排序的桶数
+     */
+    private final int maxNameLength;
+
+    /**
+     * 单字/bigram -> 条目下标 (升序)
+     */
+    private final Map<String, int[]> postings;
+
+    /**
+     * @param provinceIndex 一级行政区 -> 城市 -> 区县 (已规范化, 见 {@link CityDataService})
+     */
+    public CitySearchIndex(Map<String, Map<String, List<String>>> provinceIndex) {
+        List<Entry> list = entries(provinceIndex);
+        this.entries = list.toArray(new Entry[0]);
+        this.maxNameLength = list.stream().mapToInt(entry -> entry.name().length()).max().orElse(0);
+
+        Map<String, List<Integer>> building = new HashMap<>();
+        for (int id = 0; id < entries.length; id++) {
+            String name = entries[id].name();
+            for (int i = 0; i < name.length(); i++) {
+                addPosting(building, name.substring(i, i + 1), id);
+                if (i + 1 < name.length()) {
+                    addPosting(building, name.substring(i, i + 2), id);
+                }
+            }
+        }
+        Map<String, int[]> compact = new HashMap<>(building.size() * 2);
+        building.forEach((gram, ids) -> compact.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+        this.postings = Map.copyOf(compact);
+    }
+
+    /**
+     * 按 一级行政区 -> 城市 -> 区县 的顺序列出全部城市/区县条目
+     *
+     * @param provinceIndex 一级行政区 -> 城市 -> 区县
+     * @return 条目列表
+     */
+    static List<Entry> entries(Map<String, Map<String, List<String>>> provinceIndex) {
+        List<Entry> list = new ArrayList<>();
+        provinceIndex.forEach((province, cities) -> cities.forEach((city, districts) -> {
+            list.add(new Entry(city, null, province, city + "-" + province));
+            for (String district : districts) {
+                list.add(new Entry(district, city, province, district + "-" + city + "-" + province));
+            }
+        }));
+        return list;
+    }
+
+    private static void addPosting(Map<String, List<Integer>> building, String gram, int id) {
+        List<Integer> ids = building.computeIfAbsent(gram, k -> new ArrayList<>());
+        // 同一名称中重复的 gram 只登记一次, 下标递增加入保证有序
+        if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+            ids.add(id);
+        }
+    }
+
+    /**
+     * 条目数
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * 搜索名称包含关键字的城市/区县
+     *
+     * @param keyword 关键字
+     * @param offset  游标 (已返回的条目数)
+     * @param limit   最多返回的条目数
+     * @return 一页结果
+     */
+    public Page search(String keyword, int offset, int limit) {
+        if (keyword == null || keyword.isEmpty() || offset < 0 || limit <= 0) {
+            return new Page(List.of(), 0, null);
+        }
+        int[] matches = match(keyword);
+        if (offset >= matches.length) {
+            return new Page(List.of(), matches.length, null);
+        }
+        int[] ranked = rank(matches, keyword);
+        int end = (int) Math.min((long) offset + limit, matches.length);
+        List<Entry> items = new ArrayList<>(end - offset);
+        for (int i = offset; i < end; i++) {
+            items.add(entries[ranked[i]]);
+        }
+        return new Page(items, matches.length, end < matches.length ? end : null);
+    }
+
+    /**
+     * 名称包含关键字的条目下标 (升序)
+     */
+    private int[] match(String keyword) {
+        if (keyword.length() == 1) {
+            return postings.getOrDefault(keyword, EMPTY);
+        }
+        int[][] lists = new int[keyword.length() - 1][];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(keyword.substring(i, i + 2));
+            if (lists[i] == null) {
+                return EMPTY;
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+        int[] candidates = lists[0];
+        for (int i = 1; i < lists.length && candidates.length > 0; i++) {
+            candidates = intersect(candidates, lists[i]);
+        }
+        if (keyword.length() == 2) {
+            return candidates;
+        }
+        int count = 0;
+        int[] verified = new int[candidates.length];
+        for (int id : candidates) {
+            if (entries[id].name().contains(keyword)) {
+                verified[count++] = id;
+            }
+        }
+        return count == verified.length ? verified : Arrays.copyOf(verified, count);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                result[count++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 按 匹配级别 + 名称长度 计数排序, 同一桶内保持条目顺序
+     */
+    private int[] rank(int[] matches, String keyword) {
+        int[] buckets = new int[matches.length];
+        int[] starts = new int[(CONTAINS + 1) * (maxNameLength + 1) + 1];
+        for (int i = 0; i < matches.length; i++) {
+            String name = entries[matches[i]].name();
+            buckets[i] = rank(name, keyword) * (maxNameLength + 1) + name.length();
+            starts[buckets[i] + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] ranked = new int[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            ranked[starts[buckets[i]]++] = matches[i];
+        }
+        return ranked;
+    }
+
+    private static int rank(String name, String keyword) {
+        if (name.equals(keyword)) {
+            return EXACT;
+        }
+        return name.startsWith(keyword) ? PREFIX : CONTAINS;
+    }
+
+    /**
+     * 索引中的一个城市或区县
+     *
+     * @param name     名称
+     * @param city     所属城市, 城市条目为 null
+     * @param province 所属一级行政区
+     * @param label    "城市-一级行政区" 或 "区县-城市-一级行政区"
+     */
+    public record Entry(String name, String city, String province, String label) {
+    }
+
+    /**
+     * 一页搜索结果
+     *
+     * @param items      本页条目
+     * @param total      匹配的条目总数
+     * @param nextCursor 下一页的游标, 没有更多结果时为 null
+     */
+    public record Page(List<Entry> items, int total, Integer nextCursor) {
+    }
+}
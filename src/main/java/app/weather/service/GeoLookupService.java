@@ -0,0 +1,156 @@
+package app.weather.service;
+
+import app.weather.cache.NegativeCache;
+import app.weather.cache.SingleFlight;
+import app.weather.model.qweather.GeoLookupResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * 城市搜索 (带缓存).
+ * <p>
+ * 结果按规范化后的关键字缓存 ('geoLookupCache'). 对中文关键字, 如果某个更短前缀的缓存结果未被截断
+ * (结果数小于 {@link QWeatherApi#LOOKUP_LIMIT}), 说明它已包含所有候选城市, 直接在本地筛选出
+ * 名称/所属城市/省份包含当前关键字的城市返回, 不再请求上游. 搜索框逐字输入时
+ * "北" → "北京" → "北京朝" → "北京朝阳" 通常只需一次上游请求.
+ * <p>
+ * 拼音等非中文关键字由和风天气做模糊匹配, 无法在本地复现, 只按完整关键字缓存.
+ * 无结果 (code 非 200) 与上游错误按负缓存短期保存, 见 {@link NegativeCache}.
+ * <p>
+ * 指标: qweather.geo.lookups{result=hit|prefix|miss}.
+ */
+@Service
+@Slf4j
+public class GeoLookupService {
+
+    public static final String CACHE_NAME = "geoLookupCache";
+
+    private static final Pattern HAN = Pattern.compile("\\p{IsHan}+");
+
+    private final QWeatherApi qWeatherApi;
+
+    private final CacheManager cacheManager;
+
+    private final SingleFlight singleFlight;
+
+    private final NegativeCache negativeCache;
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public GeoLookupService(QWeatherApi qWeatherApi, CacheManager cacheManager, SingleFlight singleFlight,
+                            NegativeCache negativeCache, MeterRegistry meterRegistry) {
+        this.qWeatherApi = qWeatherApi;
+        this.cacheManager = cacheManager;
+        this.singleFlight = singleFlight;
+        this.negativeCache = negativeCache;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 城市搜索
+     *
+     * @param location 城市名称或经纬度坐标
+     * @return 和风天气城市搜索结果
+     */
+    public Mono<GeoLookupResponse> lookup(String location) {
+        String key = location.trim().toLowerCase(Locale.ROOT);
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache == null) {
+            return qWeatherApi.lookup(key);
+        }
+        return this.<GeoLookupResponse>read(cache, key)
+                .doOnNext(response -> record("hit"))
+                .switchIfEmpty(Mono.defer(() -> fromPrefix(cache, key)))
+                .switchIfEmpty(Mono.defer(() -> {
+                    record("miss");
+                    return negativeCache.guard(CACHE_NAME, key, () -> singleFlight.execute(CACHE_NAME, key,
+                            () -> qWeatherApi.lookup(key).doOnNext(response -> cache.put(key, response))));
+                }));
+    }
+
+    /**
+     * 从最长的已缓存前缀中筛选结果
+     */
+    private Mono<GeoLookupResponse> fromPrefix(Cache cache, String key) {
+        if (!HAN.matcher(key).matches() || key.length() < 2) {
+            return Mono.empty();
+        }
+        return Flux.range(1, key.length() - 1)
+                .map(i -> key.substring(0, key.length() - i))
+                .concatMap(prefix -> this.<GeoLookupResponse>read(cache, prefix))
+                .filter(GeoLookupService::isComplete)
+                .next()
+                .mapNotNull(response -> narrow(response, key))
+                .doOnNext(response -> {
+                    record("prefix");
+                    cache.put(key, response);
+                });
+    }
+
+    /**
+     * 结果数小于上限的成功响应包含了该关键字的全部候选城市
+     */
+    private static boolean isComplete(GeoLookupResponse response) {
+        return "200".equals(response.getCode())
+                && response.getLocation() != null
+                && response.getLocation().size() < QWeatherApi.LOOKUP_LIMIT;
+    }
+
+    /**
+     * 在前缀的结果中筛选匹配当前关键字的城市, 没有匹配时返回 null 交由上游判断
+     */
+    private static GeoLookupResponse narrow(GeoLookupResponse prefixResponse, String key) {
+        List<GeoLookupResponse.City> cities = prefixResponse.getLocation().stream()
+                .filter(city -> contains(city.getName(), key) || contains(city.getAdm2(), key)
+                        || contains(city.getAdm1(), key))
+                .toList();
+        if (cities.isEmpty()) {
+            return null;
+        }
+        GeoLookupResponse response = new GeoLookupResponse();
+        response.setCode(prefixResponse.getCode());
+        response.setUpdateTime(prefixResponse.getUpdateTime());
+        response.setFxLink(prefixResponse.getFxLink());
+        response.setRefer(prefixResponse.getRefer());
+        response.setLocation(cities);
+        return response;
+    }
+
+    private static boolean contains(String value, String key) {
+        return value != null && value.contains(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> read(Cache cache, String key) {
+        return Mono.defer(() -> {
+                    CompletableFuture<?> future = cache.retrieve(key);
+                    return future == null ? Mono.empty() : Mono.fromFuture(future);
+                })
+                .mapNotNull(value -> (T) (value instanceof Cache.ValueWrapper wrapper ? wrapper.get() : value))
+                .onErrorResume(e -> {
+                    log.warn("读取城市搜索缓存失败: key={}, error={}", key, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private void record(String result) {
+        Counter.builder("qweather.geo.lookups")
+                .description("城市搜索结果来源: hit 为完整关键字命中, prefix 为由前缀结果筛选, miss 为请求上游")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
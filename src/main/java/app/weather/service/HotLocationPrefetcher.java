@@ -0,0 +1,280 @@
+package app.weather.service;
+
+import app.weather.cache.CacheEntry;
+import app.weather.cache.TwoLevelCache;
+import app.weather.config.PrefetchProperties;
+import app.weather.config.QWeatherQuotaProperties;
+import app.weather.config.WeatherCacheProperties;
+import app.weather.model.qweather.QWeatherApiResponseBase;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 热点位置预取.
+ * <p>
+ * 按聚合接口的请求频率统计热点位置 (规范化后的经纬度): 每个统计窗口 (qweather.prefetch.interval) 结束时
+ * 热度 = 上一窗口热度 * decay + 本窗口请求数, 取热度最高的 hot-locations 个位置, 在它们的缓存条目过期前
+ * (refresh-ahead) 请求上游并写入缓存, 用户请求不再等待上游. 预取与用户请求共用请求合并
+ * (见 {@link QWeatherApi#coalesce(String, String, Supplier)}: 单飞、集群租约与负缓存), 不会重复请求正在加载或刚失败的数据项.
+ * <p>
+ * 预取请求受速率 (Guava RateLimiter, 一轮间隔内拿不到许可的条目留到下一轮) 与并发限制, 并以最低优先级计入调用额度
+ * (见 {@link QWeatherQuota#withPriority(Mono, QWeatherQuotaProperties.Priority)}), 额度紧张时最先被拒绝.
+ * 只作用于 storage-mode=sections.
+ * <p>
+ * 指标: qweather.prefetch.refreshes{section, result=success|failure|throttled},
+ * qweather.prefetch.outcomes{result=hit|wasted} (预取后 usage-window 内该位置是否被请求),
+ * qweather.prefetch.hot.locations.
+ */
+@Component
+@Slf4j
+public class HotLocationPrefetcher {
+
+    private final PrefetchProperties properties;
+
+    private final WeatherCacheProperties weatherCacheProperties;
+
+    private final QWeatherApi qWeatherApi;
+
+    private final CacheManager cacheManager;
+
+    private final MeterRegistry meterRegistry;
+
+    private final RateLimiter rateLimiter;
+
+    /**
+     * 位置 -> 请求计数与热度
+     */
+    private final com.google.common.cache.Cache<String, Heat> heats;
+
+    /**
+     * 位置 -> 预取后尚未被请求的数据项数
+     */
+    private final com.google.common.cache.Cache<String, AtomicInteger> pending;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Counter hitCounter;
+
+    private final Counter wastedCounter;
+
+    private volatile List<String> hotLocations = List.of();
+
+    @Autowired
+    public HotLocationPrefetcher(PrefetchProperties properties, WeatherCacheProperties weatherCacheProperties,
+                                 QWeatherApi qWeatherApi, CacheManager cacheManager, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.weatherCacheProperties = weatherCacheProperties;
+        this.qWeatherApi = qWeatherApi;
+        this.cacheManager = cacheManager;
+        this.meterRegistry = meterRegistry;
+        this.rateLimiter = RateLimiter.create(properties.getPermitsPerSecond());
+        this.heats = CacheBuilder.newBuilder()
+                .maximumSize(properties.getTrackedLocations())
+                .build();
+        this.hitCounter = outcomeCounter("hit", meterRegistry);
+        this.wastedCounter = outcomeCounter("wasted", meterRegistry);
+        this.pending = CacheBuilder.newBuilder()
+                .maximumSize(properties.getTrackedLocations())
+                .expireAfterWrite(properties.getUsageWindow())
+                .<String, AtomicInteger>removalListener(notification -> {
+                    // 用户请求时主动移除 (EXPLICIT) 计为命中, 其余 (过期/淘汰) 计为浪费
+                    if (notification.getCause() != RemovalCause.EXPLICIT && notification.getValue() != null) {
+                        wastedCounter.increment(notification.getValue().get());
+                    }
+                })
+                .build();
+        Gauge.builder("qweather.prefetch.hot.locations", this, prefetcher -> prefetcher.hotLocations.size())
+                .description("当前预取的热点位置数")
+                .register(meterRegistry);
+    }
+
+    private static Counter outcomeCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("qweather.prefetch.outcomes")
+                .description("预取的数据项在 usage-window 内是否被用户请求")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次聚合接口请求
+     *
+     * @param location 规范化后的经纬度
+     */
+    public void record(String location) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        heats.asMap().computeIfAbsent(location, key -> new Heat()).requests.increment();
+        AtomicInteger prefetched = pending.asMap().remove(location);
+        if (prefetched != null) {
+            hitCounter.increment(prefetched.get());
+        }
+    }
+
+    /**
+     * 当前的热点位置, 按热度从高到低排列
+     */
+    public List<String> getHotLocations() {
+        return hotLocations;
+    }
+
+    @Scheduled(fixedDelayString = "${qweather.prefetch.interval:PT30S}",
+            initialDelayString = "${qweather.prefetch.interval:PT30S}")
+    public void prefetch() {
+        if (!properties.isEnabled()
+                || weatherCacheProperties.getStorageMode() != WeatherCacheProperties.StorageMode.SECTIONS
+                || !running.compareAndSet(false, true)) {
+            return;
+        }
+        prefetchHotLocations()
+                .doFinally(signal -> running.set(false))
+                .subscribe(null, e -> log.warn("热点位置预取失败: {}", e.getMessage()));
+    }
+
+    /**
+     * 结束当前统计窗口并预取热点位置中即将过期的数据项
+     */
+    Mono<Void> prefetchHotLocations() {
+        pending.cleanUp();
+        hotLocations = rankHotLocations();
+        return Flux.fromIterable(hotLocations)
+                .flatMapIterable(this::targets)
+                .filterWhen(this::isDue)
+                // 按速率逐个放行 (在弹性线程池中等待许可), 本轮间隔内拿不到许可的条目留到下一轮
+                .publishOn(Schedulers.boundedElastic())
+                .filter(this::acquirePermit)
+                .flatMap(this::refresh, Math.max(1, properties.getConcurrency()))
+                .then();
+    }
+
+    private List<String> rankHotLocations() {
+        Map<String, Heat> snapshot = heats.asMap();
+        snapshot.forEach((location, heat) -> {
+            heat.score = heat.score * properties.getDecay() + heat.requests.sumThenReset();
+            if (heat.score < 0.01) {
+                snapshot.remove(location, heat);
+            }
+        });
+        return snapshot.entrySet().stream()
+                .filter(entry -> entry.getValue().score >= properties.getMinScore())
+                .sorted(Comparator.comparingDouble((Map.Entry<String, Heat> entry) -> entry.getValue().score).reversed())
+                .limit(properties.getHotLocations())
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private List<Target> targets(String location) {
+        String indicesType = String.join(",", WeatherService.INDICES_TYPES);
+        return List.of(
+                target(WeatherService.REALTIME, location, () -> qWeatherApi.fetchRealtimeWeather(location)),
+                target(WeatherService.DAILY, location, () -> qWeatherApi.fetchDailyWeather(location)),
+                target(WeatherService.HOURLY, location, () -> qWeatherApi.fetchHourlyWeatherForecast24h(location)),
+                target(WeatherService.INDICES, location, () -> qWeatherApi.fetchWeatherIndices(location, indicesType)));
+    }
+
+    private static Target target(String section, String location, Supplier<Mono<?>> fetch) {
+        return new Target(section, WeatherService.CACHE_NAMES.get(section), location,
+                WeatherService.cacheKey(section, location), fetch);
+    }
+
+    /**
+     * 条目不存在、已过期或将在 refresh-ahead 内过期时需要预取. 负缓存条目交由负缓存处理, 不预取
+     */
+    private Mono<Boolean> isDue(Target target) {
+        Cache cache = cacheManager.getCache(target.cacheName());
+        if (cache == null) {
+            return Mono.just(false);
+        }
+        Mono<CacheEntry> entry = cache instanceof TwoLevelCache twoLevelCache
+                ? Mono.fromFuture(() -> twoLevelCache.retrieveEntry(target.key()))
+                : Mono.fromSupplier(() -> {
+                    Cache.ValueWrapper wrapper = cache.get(target.key());
+                    return wrapper == null || wrapper.get() == null ? null : CacheEntry.of(wrapper.get());
+                });
+        long deadline = System.currentTimeMillis() + properties.getRefreshAhead().toMillis();
+        return entry
+                .map(existing -> existing.getValue() instanceof QWeatherApiResponseBase response
+                        && "200".equals(response.getCode())
+                        && existing.getExpiresAt() <= deadline)
+                .defaultIfEmpty(true)
+                .onErrorReturn(false);
+    }
+
+    private boolean acquirePermit(Target target) {
+        if (rateLimiter.tryAcquire(properties.getInterval())) {
+            return true;
+        }
+        recordRefresh(target, "throttled");
+        return false;
+    }
+
+    private Mono<Void> refresh(Target target) {
+        Cache cache = cacheManager.getCache(target.cacheName());
+        Mono<Object> fetch = QWeatherQuota.withPriority(qWeatherApi.coalesce(target.cacheName(), target.key(),
+                () -> target.fetch().get().cast(Object.class)), QWeatherQuotaProperties.Priority.LOW);
+        // 两级缓存经过缓存层的加载合并写入, 其他节点已回填的值不重复写入
+        Mono<?> stored = cache instanceof TwoLevelCache twoLevelCache
+                ? Mono.fromFuture(() -> twoLevelCache.reload(target.key(), fetch::toFuture))
+                : fetch.doOnNext(value -> {
+                    if (cache != null) {
+                        cache.put(target.key(), value);
+                    }
+                });
+        return stored
+                .doOnNext(value -> {
+                    recordRefresh(target, "success");
+                    pending.asMap().computeIfAbsent(target.location(), key -> new AtomicInteger()).incrementAndGet();
+                })
+                .onErrorResume(e -> {
+                    log.debug("预取失败: cache={}, key={}, error={}", target.cacheName(), target.key(), e.getMessage());
+                    recordRefresh(target, "failure");
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void recordRefresh(Target target, String result) {
+        Counter.builder("qweather.prefetch.refreshes")
+                .description("热点位置预取次数, throttled 为本轮内超出速率上限, 留到下一轮")
+                .tags("section", target.section(), "result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 一个位置的请求计数 (本窗口) 与热度
+     */
+    private static final class Heat {
+        private final LongAdder requests = new LongAdder();
+
+        private volatile double score;
+    }
+
+    /**
+     * 一个待预取的数据项
+     */
+    private record Target(String section, String cacheName, String location, String key,
+                          Supplier<Mono<?>> fetch) {
+    }
+}
@@ -1,16 +1,19 @@
 package app.weather.service;
 
+import app.weather.config.JwtProperties;
 import app.weather.config.QWeatherApiConfig;
 import com.google.common.base.Throwables;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import net.i2p.crypto.eddsa.EdDSAEngine;
 import net.i2p.crypto.eddsa.EdDSAPrivateKey;
 import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
 import net.i2p.crypto.eddsa.spec.EdDSAParameterSpec;
-import org.joda.time.DateTime;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
@@ -18,58 +21,130 @@ import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Duration;
 import java.util.Base64;
 
+/**
+ * 和风天气 JWT 签发.
+ * <p>
+ * 私钥在启动时解析一次, 当前 Token 保存在内存中, {@link #getToken()} 只读取内存, 不涉及 IO,
+ * 可以直接在事件循环线程中调用. 后台定时检查剩余有效期, 小于 qweather.jwt.refresh-before 时重新签发.
+ * <p>
+ * 指标: qweather.jwt.token.age (当前 Token 已签发秒数), qweather.jwt.sign (签名耗时).
+ */
 @Service
 @Slf4j
 public class JwtService {
+
+    /**
+     * 调用时剩余有效期小于该值则直接同步重新签发, 避免后台任务未及时执行时使用过期 Token
+     */
+    private static final Duration MIN_REMAINING = Duration.ofMinutes(5);
+
     private final QWeatherApiConfig qWeatherApiConfig;
 
-    private static final String JWT_CACHE_KEY = "'qweather_jwt_token'";
+    private final JwtProperties jwtProperties;
+
+    private final EdDSAParameterSpec spec = EdDSANamedCurveTable.getByName(EdDSANamedCurveTable.ED_25519);
+
+    private final PrivateKey signingKey;
+
+    private final Timer signTimer;
+
+    private volatile Token token;
 
     @Autowired
-    public JwtService(QWeatherApiConfig qWeatherApiConfig) {
+    public JwtService(QWeatherApiConfig qWeatherApiConfig, JwtProperties jwtProperties, MeterRegistry meterRegistry) {
         this.qWeatherApiConfig = qWeatherApiConfig;
+        this.jwtProperties = jwtProperties;
+        this.signingKey = parsePrivateKey(qWeatherApiConfig.getPrivateKey());
+        this.signTimer = Timer.builder("qweather.jwt.sign")
+                .description("JWT 签名耗时")
+                .register(meterRegistry);
+        Gauge.builder("qweather.jwt.token.age", this, service -> {
+                    Token current = service.token;
+                    return current == null ? 0 : (System.currentTimeMillis() / 1000 - current.issuedAt());
+                })
+                .description("当前 JWT 已签发的时长")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        if (signingKey != null) {
+            try {
+                rotate();
+            } catch (RuntimeException e) {
+                log.error("启动时签发 JWT 失败, 将在首次调用时重试: {}", e.getMessage());
+            }
+        }
     }
 
-    @Cacheable(key = JWT_CACHE_KEY, value = "jwtTokenCache")
-    public String generateJwtToken() {
-        log.info("Generating JWT token");
+    /**
+     * 获取当前有效的 JWT
+     *
+     * @return JWT
+     */
+    public String getToken() {
+        Token current = token;
+        if (current == null || current.remainingSeconds() < MIN_REMAINING.toSeconds()) {
+            current = rotateIfNeeded(MIN_REMAINING);
+        }
+        return current.value();
+    }
 
+    /**
+     * 后台检查并轮换 Token
+     */
+    @Scheduled(fixedDelayString = "${qweather.jwt.check-interval:PT1M}", initialDelayString = "${qweather.jwt.check-interval:PT1M}")
+    public void refresh() {
         try {
-            JSONObject header = new JSONObject();
-            header.put("alg", "EdDSA");
-            header.put("kid", qWeatherApiConfig.getKeyId());
-            // payload
-            JSONObject payload = null;
-            payload = new JSONObject();
-            payload.put("sub", qWeatherApiConfig.getProjectId());
-            payload.put("iat", DateTime.now().getMillis() / 1000);
-            // 过期时间 一天
-            payload.put("exp", DateTime.now().plusDays(1).getMillis() / 1000);
-
-            // Base64url header+payload
-            String headerEncoded = base64UrlEncode(header.toString().getBytes(StandardCharsets.UTF_8));
-            String payloadEncoded = base64UrlEncode(payload.toString().getBytes(StandardCharsets.UTF_8));
-
-            // Create signing input
-            String data = headerEncoded + "." + payloadEncoded;
-
-            // sign
-            byte[] signature = null;
-            try {
-                signature = sign(data.getBytes(StandardCharsets.UTF_8));
-            } catch (Exception e) {
-                log.error("Failed to sign data, error: {}", Throwables.getStackTraceAsString(e));
-                throw new RuntimeException(e);
-            }
-            String signatureEncoded = base64UrlEncode(signature);
-
-            return data + "." + signatureEncoded;
+            rotateIfNeeded(jwtProperties.getRefreshBefore());
         } catch (RuntimeException e) {
-            log.error("Failed to generate JWT token, error: {}", Throwables.getStackTraceAsString(e));
+            log.error("后台轮换 JWT 失败: {}", e.getMessage());
+        }
+    }
+
+    private synchronized Token rotateIfNeeded(Duration minRemaining) {
+        Token current = token;
+        if (current == null || current.remainingSeconds() < minRemaining.toSeconds()) {
+            current = rotate();
+        }
+        return current;
+    }
+
+    private synchronized Token rotate() {
+        log.info("Generating JWT token");
+        if (signingKey == null) {
+            throw new IllegalStateException("和风天气私钥未正确配置, 无法签发 JWT");
+        }
+        long issuedAt = System.currentTimeMillis() / 1000;
+        long expiresAt = issuedAt + jwtProperties.getTtl().toSeconds();
+
+        JSONObject header = new JSONObject();
+        header.put("alg", "EdDSA");
+        header.put("kid", qWeatherApiConfig.getKeyId());
+        // payload
+        JSONObject payload = new JSONObject();
+        payload.put("sub", qWeatherApiConfig.getProjectId());
+        payload.put("iat", issuedAt);
+        payload.put("exp", expiresAt);
+
+        // Base64url header+payload
+        String headerEncoded = base64UrlEncode(header.toString().getBytes(StandardCharsets.UTF_8));
+        String payloadEncoded = base64UrlEncode(payload.toString().getBytes(StandardCharsets.UTF_8));
+
+        // Create signing input
+        String data = headerEncoded + "." + payloadEncoded;
+
+        // sign
+        byte[] signature;
+        try {
+            signature = signTimer.recordCallable(() -> sign(data.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            log.error("Failed to sign data, error: {}", Throwables.getStackTraceAsString(e));
             throw new RuntimeException(e);
         }
+        Token rotated = new Token(data + "." + base64UrlEncode(signature), issuedAt, expiresAt);
+        token = rotated;
+        return rotated;
     }
 
     private String base64UrlEncode(byte[] data) {
@@ -77,18 +152,37 @@ public class JwtService {
     }
 
     private byte[] sign(byte[] data) throws Exception {
-        // Decode private key from Base64
-        byte[] privateKeyBytes = Base64.getDecoder().decode(qWeatherApiConfig.getPrivateKey());
-
-        // Create EdDSA private key
-        PKCS8EncodedKeySpec encodedKeySpec = new PKCS8EncodedKeySpec(privateKeyBytes);
-        PrivateKey signingKey = new EdDSAPrivateKey(encodedKeySpec);
-
-        // Sign
-        EdDSAParameterSpec spec = EdDSANamedCurveTable.getByName(EdDSANamedCurveTable.ED_25519);
+        // EdDSAEngine 不是线程安全的, 每次签名新建 (签名只在轮换时发生)
         final Signature s = new EdDSAEngine(MessageDigest.getInstance(spec.getHashAlgorithm()));
         s.initSign(signingKey);
         s.update(data);
         return s.sign();
     }
+
+    /**
+     * 解析 Base64 编码的 PKCS8 私钥, 失败时返回 null (不影响启动, 调用 {@link #getToken()} 时报错)
+     */
+    private static PrivateKey parsePrivateKey(String privateKey) {
+        try {
+            byte[] privateKeyBytes = Base64.getDecoder().decode(privateKey);
+            return new EdDSAPrivateKey(new PKCS8EncodedKeySpec(privateKeyBytes));
+        } catch (Exception e) {
+            log.error("解析和风天气私钥失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 已签发的 Token
+     *
+     * @param value     JWT
+     * @param issuedAt  签发时间 (秒)
+     * @param expiresAt 过期时间 (秒)
+     */
+    private record Token(String value, long issuedAt, long expiresAt) {
+
+        long remainingSeconds() {
+            return expiresAt - System.currentTimeMillis() / 1000;
+        }
+    }
 }
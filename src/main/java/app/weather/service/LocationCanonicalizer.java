@@ -0,0 +1,70 @@
+package app.weather.service;
+
+import app.weather.config.LocationProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Optional;
+
+/**
+ * 经纬度规范化.
+ * <p>
+ * 将 "经度,纬度" 解析并对齐到配置的网格 (默认 0.01°, 约 1 km), 例如 "116.4074,39.9042" 和
+ * "116.41,39.90" 都会得到 "116.41,39.90". 对齐后的值同时作为缓存 key 和上游请求参数,
+ * 这样 GPS 抖动产生的相邻坐标可以共享同一份缓存.
+ */
+@Component
+public class LocationCanonicalizer {
+
+    private static final BigDecimal MAX_LONGITUDE = BigDecimal.valueOf(180);
+
+    private static final BigDecimal MAX_LATITUDE = BigDecimal.valueOf(90);
+
+    private final BigDecimal grid;
+
+    @Autowired
+    public LocationCanonicalizer(LocationProperties locationProperties) {
+        this.grid = locationProperties.getGrid();
+        if (grid == null || grid.signum() <= 0) {
+            throw new IllegalArgumentException("qweather.location.grid 必须大于 0: " + grid);
+        }
+    }
+
+    /**
+     * 解析并规范化经纬度
+     *
+     * @param location 经纬度坐标 (经度,纬度)
+     * @return 对齐到网格后的 "经度,纬度", 格式不正确或超出范围时为空
+     */
+    public Optional<String> canonicalize(String location) {
+        if (!StringUtils.hasText(location)) {
+            return Optional.empty();
+        }
+        String[] parts = location.split(",");
+        if (parts.length != 2) {
+            return Optional.empty();
+        }
+        BigDecimal longitude;
+        BigDecimal latitude;
+        try {
+            longitude = new BigDecimal(parts[0].trim());
+            latitude = new BigDecimal(parts[1].trim());
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        if (longitude.abs().compareTo(MAX_LONGITUDE) > 0 || latitude.abs().compareTo(MAX_LATITUDE) > 0) {
+            return Optional.empty();
+        }
+        return Optional.of(snap(longitude) + "," + snap(latitude));
+    }
+
+    private String snap(BigDecimal value) {
+        return value.divide(grid, 0, RoundingMode.HALF_UP)
+                .multiply(grid)
+                .setScale(Math.max(grid.scale(), 0), RoundingMode.HALF_UP)
+                .toPlainString();
+    }
+}
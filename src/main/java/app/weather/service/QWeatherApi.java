@@ -1,5 +1,8 @@
 package app.weather.service;
 
+import app.weather.cache.DistributedSingleFlight;
+import app.weather.cache.NegativeCache;
+import app.weather.cache.SingleFlight;
 import app.weather.model.qweather.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,17 +14,45 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
+import java.util.function.Supplier;
+
 @Service
 @Slf4j
 public class QWeatherApi {
 
     private final JwtService jwtService;
     private final WebClient webClient;
+    private final SingleFlight singleFlight;
+    private final DistributedSingleFlight distributedSingleFlight;
+    private final QWeatherResilience resilience;
+    private final QWeatherQuota quota;
+    private final NegativeCache negativeCache;
 
     @Autowired
-    public QWeatherApi(JwtService jwtService, WebClient webClient) {
+    public QWeatherApi(JwtService jwtService, WebClient webClient, SingleFlight singleFlight,
+                       DistributedSingleFlight distributedSingleFlight, QWeatherResilience resilience,
+                       QWeatherQuota quota, NegativeCache negativeCache) {
         this.jwtService = jwtService;
         this.webClient = webClient;
+        this.singleFlight = singleFlight;
+        this.distributedSingleFlight = distributedSingleFlight;
+        this.resilience = resilience;
+        this.quota = quota;
+        this.negativeCache = negativeCache;
+    }
+
+    /**
+     * 合并缓存未命中时的上游请求: 先在进程内合并, 再 (可选) 通过 Redis 租约在集群内合并.
+     * 最近失败过的 key 直接返回缓存的错误 (见 {@link NegativeCache}).
+     *
+     * @param cacheName 缓存名称
+     * @param key       缓存 key
+     * @param loader    上游请求
+     * @return 共享的上游结果
+     */
+    <T> Mono<T> coalesce(String cacheName, String key, Supplier<Mono<T>> loader) {
+        return negativeCache.guard(cacheName, key,
+                () -> singleFlight.execute(cacheName, key, () -> distributedSingleFlight.execute(cacheName, key, loader)));
     }
 
     /**
@@ -54,7 +85,7 @@ public class QWeatherApi {
         if ("200".equals(responseCode)) {
             log.info("成功从 API 获取{}数据: params:{}", apiName, params);
         } else {
-            log.warn("从 API 获取的{}数据 code 非 200 (不会缓存): responseCode={}, location={}",
+            log.warn("从 API 获取的{}数据 code 非 200 (按负缓存短期保存): responseCode={}, location={}",
                     apiName, responseCode, params);
         }
     }
@@ -63,12 +94,19 @@ public class QWeatherApi {
      * 获取指定地点的【天气生活指数】 (当天).
      * 使用 @Cacheable 注解启用 Redis 缓存 ('weatherIndices').
      */
-    @Cacheable(value = "weatherIndices", key = "#location + '-' + #type", unless = "#result == null || !'200'.equals(#result.code)")
+    @Cacheable(value = "weatherIndices", key = "#location + '-' + #type", sync = true)
     public Mono<WeatherIndicesResponse> getWeatherIndices(String location, String type) {
+        return coalesce("weatherIndices", location + "-" + type, () -> fetchWeatherIndices(location, type));
+    }
+
+    /**
+     * 直接请求和风天气【天气生活指数】, 不经过缓存
+     */
+    public Mono<WeatherIndicesResponse> fetchWeatherIndices(String location, String type) {
         log.info("getWeatherIndices location: {}, type: {}", location, type);
-        String jwtToken = jwtService.generateJwtToken();
+        String jwtToken = jwtService.getToken();
 
-        return webClient.get()
+        return resilience.protect("indices", quota.guard("indices", webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/v7/indices/1d")
                         .queryParam("location", location)
@@ -81,21 +119,27 @@ public class QWeatherApi {
                 .doOnSuccess(response -> logApiResponse("天气指数", response != null ? response.getCode() : null,
                         "location=" + location + ", type=" + type))
                 .doOnError(error -> !(error instanceof WebClientResponseException),
-                        error -> log.error("调用天气指数 API 或处理响应时发生非 API 错误: location={}, type={}", location, type, error));
+                        error -> log.error("调用天气指数 API 或处理响应时发生非 API 错误: location={}, type={}", location, type, error))));
     }
 
     /**
-     * 城市搜索 API (用于定位). 不进行缓存
+     * 城市搜索每次返回的最大结果数 (和风天气默认值), 结果数小于该值说明已返回全部匹配的城市
+     */
+    public static final int LOOKUP_LIMIT = 10;
+
+    /**
+     * 城市搜索 API (用于定位). 不进行缓存, 缓存见 {@link GeoLookupService}
      */
     public Mono<GeoLookupResponse> lookup(String location) {
         log.info("lookup location: {}", location);
-        String jwtToken = jwtService.generateJwtToken();
+        String jwtToken = jwtService.getToken();
 
-        return webClient.get()
+        return resilience.protect("lookup", quota.guard("lookup", webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/geo/v2/city/lookup")
                         .queryParam("location", location)
                         .queryParam("range", "cn")
+                        .queryParam("number", LOOKUP_LIMIT)
                         .build())
                 .header("Authorization", "Bearer " + jwtToken)
                 .retrieve()
@@ -104,7 +148,7 @@ public class QWeatherApi {
                 .doOnSuccess(response -> logApiResponse("城市搜索", response != null ? response.getCode() : null,
                         "location=" + location))
                 .doOnError(error -> !(error instanceof WebClientResponseException),
-                        error -> log.error("调用城市搜索 API 或处理响应时发生非 API 错误: location={}", location, error));
+                        error -> log.error("调用城市搜索 API 或处理响应时发生非 API 错误: location={}", location, error))));
     }
 
     /**
@@ -113,12 +157,19 @@ public class QWeatherApi {
      * @param location 经纬度
      * @return
      */
-    @Cacheable(value = "realtimeWeatherCache", key = "#location", unless = "#result == null || !'200'.equals(#result.code)")
+    @Cacheable(value = "realtimeWeatherCache", key = "#location", sync = true)
     public Mono<RealTimeWeatherResponse> getRealtimeWeather(String location) {
+        return coalesce("realtimeWeatherCache", location, () -> fetchRealtimeWeather(location));
+    }
+
+    /**
+     * 直接请求和风天气【实时天气】, 不经过缓存
+     */
+    public Mono<RealTimeWeatherResponse> fetchRealtimeWeather(String location) {
         log.info("getRealtimeWeather location: {}", location);
-        String jwtToken = jwtService.generateJwtToken();
+        String jwtToken = jwtService.getToken();
 
-        return webClient.get()
+        return resilience.protect("now", quota.guard("now", webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/v7/weather/now")
                         .queryParam("location", location)
@@ -130,7 +181,7 @@ public class QWeatherApi {
                 .doOnSuccess(response -> logApiResponse("实时天气", response != null ? response.getCode() : null,
                         "location=" + location))
                 .doOnError(error -> !(error instanceof WebClientResponseException),
-                        error -> log.error("调用实时天气 API 或处理响应时发生非 API 错误: location={}", location, error));
+                        error -> log.error("调用实时天气 API 或处理响应时发生非 API 错误: location={}", location, error))));
     }
 
     /**
@@ -139,12 +190,19 @@ public class QWeatherApi {
      * @param location 经纬度
      * @return
      */
-    @Cacheable(value = "dailyWeatherCache", key = "#location", unless = "#result == null || !'200'.equals(#result.code)")
+    @Cacheable(value = "dailyWeatherCache", key = "#location", sync = true)
     public Mono<DailyWeatherResponse> getDailyWeather(String location) {
+        return coalesce("dailyWeatherCache", location, () -> fetchDailyWeather(location));
+    }
+
+    /**
+     * 直接请求和风天气【每日天气预报】, 不经过缓存
+     */
+    public Mono<DailyWeatherResponse> fetchDailyWeather(String location) {
         log.info("getDailyWeather location: {}", location);
-        String jwtToken = jwtService.generateJwtToken();
+        String jwtToken = jwtService.getToken();
 
-        return webClient.get()
+        return resilience.protect("daily", quota.guard("daily", webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/v7/weather/7d")
                         .queryParam("location", location)
@@ -156,18 +214,25 @@ public class QWeatherApi {
                 .doOnSuccess(response -> logApiResponse("每日天气", response != null ? response.getCode() : null,
                         "location=" + location))
                 .doOnError(error -> !(error instanceof WebClientResponseException),
-                        error -> log.error("调用每日天气 API 或处理响应时发生非 API 错误: location={}", location, error));
+                        error -> log.error("调用每日天气 API 或处理响应时发生非 API 错误: location={}", location, error))));
     }
 
     /**
      * 获取指定地点的【逐小时天气预报】 (未来 24 小时).
      */
-    @Cacheable(value = "hourlyWeatherCache", key = "#location", unless = "#result == null || !'200'.equals(#result.code)")
+    @Cacheable(value = "hourlyWeatherCache", key = "#location", sync = true)
     public Mono<HourlyWeatherResponse> getHourlyWeatherForecast24h(String location) {
+        return coalesce("hourlyWeatherCache", location, () -> fetchHourlyWeatherForecast24h(location));
+    }
+
+    /**
+     * 直接请求和风天气【逐小时天气预报】, 不经过缓存
+     */
+    public Mono<HourlyWeatherResponse> fetchHourlyWeatherForecast24h(String location) {
         log.info("逐小时天气预报缓存未命中或已过期: location={}", location);
-        String jwtToken = jwtService.generateJwtToken();
+        String jwtToken = jwtService.getToken();
 
-        return webClient.get()
+        return resilience.protect("hourly", quota.guard("hourly", webClient.get()
                 .uri(uriBuilder -> uriBuilder.path("/v7/weather/24h").queryParam("location", location).build())
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtToken)
                 .retrieve()
@@ -175,7 +240,7 @@ public class QWeatherApi {
                 .bodyToMono(HourlyWeatherResponse.class)
                 .doOnSuccess(response -> logApiResponse("逐小时天气预报", response != null ? response.getCode() : null, "location=" + location))
                 .doOnError(error -> !(error instanceof WebClientResponseException),
-                        error -> log.error("调用逐小时天气预报 API 或处理响应时发生非 API 错误: location={}", location, error));
+                        error -> log.error("调用逐小时天气预报 API 或处理响应时发生非 API 错误: location={}", location, error))));
     }
 
 
@@ -0,0 +1,177 @@
+package app.weather.service;
+
+import app.weather.config.QWeatherQuotaProperties;
+import app.weather.exception.QuotaExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 和风天气调用额度 (所有实例共享, 基于 Redis 计数).
+ * <p>
+ * 每次请求上游前按自然日/分钟窗口计数 (Redis Hash, 按接口分别计数并记录合计). 每个接口有一个优先级
+ * (qweather.quota.priorities), 每个优先级为更高优先级保留一部分额度 (qweather.quota.reserve):
+ * 例如 LOW 保留 20%, 则当日已用额度达到 80% 后城市搜索与生活指数的调用被拒绝 ({@link QuotaExceededException}),
+ * 由聚合接口降级为过期缓存, 剩余额度留给实时天气 (HIGH) 与每日/逐小时天气 (MEDIUM).
+ * 后台调用 (如热点预取) 可通过 {@link #withPriority(Mono, QWeatherQuotaProperties.Priority)} 降低优先级.
+ * 检查与计数在同一个 Lua 脚本中完成, 被拒绝的调用不计数. Redis 不可用时放行.
+ * <p>
+ * 指标: qweather.quota.calls{endpoint, result=allowed|rejected|unchecked}, qweather.quota.used{window=day|minute}.
+ */
+@Component
+@Slf4j
+public class QWeatherQuota {
+
+    /**
+     * KEYS: 日计数 key, 分钟计数 key; ARGV: 接口, 日上限, 分钟上限, 日 key 过期秒数, 分钟 key 过期秒数.
+     * 上限为 -1 表示不限制. 返回 {结果, 当日已用, 本分钟已用}, 结果 0 为放行, 1/2 为超出日/分钟额度
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ACQUIRE_SCRIPT = RedisScript.of("""
+            local day = tonumber(redis.call('HGET', KEYS[1], 'total') or '0')
+            local minute = tonumber(redis.call('HGET', KEYS[2], 'total') or '0')
+            if tonumber(ARGV[2]) >= 0 and day >= tonumber(ARGV[2]) then return {1, day, minute} end
+            if tonumber(ARGV[3]) >= 0 and minute >= tonumber(ARGV[3]) then return {2, day, minute} end
+            redis.call('HINCRBY', KEYS[1], 'total', 1)
+            redis.call('HINCRBY', KEYS[1], ARGV[1], 1)
+            redis.call('EXPIRE', KEYS[1], ARGV[4])
+            redis.call('HINCRBY', KEYS[2], 'total', 1)
+            redis.call('HINCRBY', KEYS[2], ARGV[1], 1)
+            redis.call('EXPIRE', KEYS[2], ARGV[5])
+            return {0, day + 1, minute + 1}
+            """, List.class);
+
+    private static final String PRIORITY_CONTEXT_KEY = QWeatherQuota.class.getName() + ".priority";
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final DateTimeFormatter MINUTE = DateTimeFormatter.ofPattern("yyyyMMddHHmm");
+
+    private final QWeatherQuotaProperties properties;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Clock clock;
+
+    private final AtomicLong usedToday = new AtomicLong();
+
+    private final AtomicLong usedThisMinute = new AtomicLong();
+
+    @Autowired
+    public QWeatherQuota(QWeatherQuotaProperties properties, ReactiveStringRedisTemplate redisTemplate,
+                         MeterRegistry meterRegistry) {
+        this(properties, redisTemplate, meterRegistry, Clock.system(properties.getZone()));
+    }
+
+    QWeatherQuota(QWeatherQuotaProperties properties, ReactiveStringRedisTemplate redisTemplate,
+                  MeterRegistry meterRegistry, Clock clock) {
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        Gauge.builder("qweather.quota.used", usedToday, AtomicLong::get)
+                .description("和风天气调用额度已用次数 (最近一次计数时的值)")
+                .tag("window", "day")
+                .register(meterRegistry);
+        Gauge.builder("qweather.quota.used", usedThisMinute, AtomicLong::get)
+                .description("和风天气调用额度已用次数 (最近一次计数时的值)")
+                .tag("window", "minute")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在额度内执行上游调用: 订阅时先计数, 额度不足时以 {@link QuotaExceededException} 失败, 不订阅 call
+     *
+     * @param endpoint 接口名称
+     * @param call     上游请求
+     * @return 受额度限制的请求
+     */
+    public <T> Mono<T> guard(String endpoint, Mono<T> call) {
+        if (!properties.isEnabled() || (properties.getDailyLimit() <= 0 && properties.getMinuteLimit() <= 0)) {
+            return call;
+        }
+        return acquire(endpoint).then(call);
+    }
+
+    /**
+     * 以不高于指定优先级的额度执行 call 中的上游请求
+     *
+     * @param call     包含上游请求的 Mono
+     * @param priority 优先级, 只能降低接口的默认优先级
+     * @return Mono
+     */
+    public static <T> Mono<T> withPriority(Mono<T> call, QWeatherQuotaProperties.Priority priority) {
+        return call.contextWrite(context -> context.put(PRIORITY_CONTEXT_KEY, priority));
+    }
+
+    private Mono<Void> acquire(String endpoint) {
+        return Mono.deferContextual(context -> {
+            QWeatherQuotaProperties.Priority priority = properties.getPriorities()
+                    .getOrDefault(endpoint, QWeatherQuotaProperties.Priority.LOW);
+            QWeatherQuotaProperties.Priority requested = context.getOrDefault(PRIORITY_CONTEXT_KEY, priority);
+            if (requested.compareTo(priority) > 0) {
+                priority = requested;
+            }
+            double reserve = properties.getReserve().getOrDefault(priority, 0.0);
+            ZonedDateTime now = ZonedDateTime.now(clock);
+            ZonedDateTime nextDay = now.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            List<String> keys = List.of(properties.getKeyPrefix() + "day:" + DAY.format(now),
+                    properties.getKeyPrefix() + "minute:" + MINUTE.format(now));
+            List<String> args = List.of(endpoint,
+                    String.valueOf(allowed(properties.getDailyLimit(), reserve)),
+                    String.valueOf(allowed(properties.getMinuteLimit(), reserve)),
+                    // 多保留一小时, 便于排查
+                    String.valueOf(Duration.between(now, nextDay).plusHours(1).toSeconds()),
+                    "120");
+            return redisTemplate.execute(ACQUIRE_SCRIPT, keys, args)
+                    .next()
+                    .flatMap(result -> {
+                        usedToday.set(((Number) result.get(1)).longValue());
+                        usedThisMinute.set(((Number) result.get(2)).longValue());
+                        long code = ((Number) result.get(0)).longValue();
+                        if (code == 0) {
+                            record(endpoint, "allowed");
+                            return Mono.<Void>empty();
+                        }
+                        record(endpoint, "rejected");
+                        return Mono.<Void>error(new QuotaExceededException(endpoint, code == 1 ? "每日" : "每分钟"));
+                    })
+                    .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                        log.warn("调用额度计数失败, 放行: endpoint={}, error={}", endpoint, e.getMessage());
+                        record(endpoint, "unchecked");
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    /**
+     * 该优先级可使用的额度上限, -1 表示不限制
+     */
+    private static long allowed(long limit, double reserve) {
+        return limit <= 0 ? -1 : (long) Math.floor(limit * (1 - reserve));
+    }
+
+    private void record(String endpoint, String result) {
+        Counter.builder("qweather.quota.calls")
+                .description("和风天气调用额度检查结果")
+                .tags("endpoint", endpoint, "result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
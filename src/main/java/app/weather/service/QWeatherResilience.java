@@ -0,0 +1,150 @@
+package app.weather.service;
+
+import app.weather.config.QWeatherResilienceProperties;
+import app.weather.exception.QuotaExceededException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+/**
+ * 和风天气各接口的熔断器与并发隔离舱.
+ * <p>
+ * 每个接口 (now/daily/hourly/indices/lookup) 使用独立的熔断器, 某个接口故障时只有该接口快速失败
+ * ({@link CallNotPermittedException}), 由聚合接口降级为过期缓存或缺失该数据项, 不再占用连接等待超时.
+ * 只有 5xx、429 以及网络/超时等异常计入失败率, 其他 4xx 为请求参数问题, 不影响熔断.
+ * <p>
+ * 指标: resilience4j.circuitbreaker.* 与 resilience4j.bulkhead.* (name 标签为接口),
+ * qweather.circuitbreaker.transitions{name, from, to}, qweather.bulkhead.rejections{name}.
+ */
+@Component
+@Slf4j
+public class QWeatherResilience {
+
+    private final QWeatherResilienceProperties properties;
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+
+    private final BulkheadRegistry bulkheadRegistry;
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public QWeatherResilience(QWeatherResilienceProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        QWeatherResilienceProperties.CircuitBreaker circuitBreaker = properties.getCircuitBreaker();
+        this.circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(circuitBreaker.getFailureRateThreshold())
+                .slowCallRateThreshold(circuitBreaker.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(circuitBreaker.getSlowCallDurationThreshold())
+                .slidingWindowSize(circuitBreaker.getSlidingWindowSize())
+                .minimumNumberOfCalls(circuitBreaker.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(circuitBreaker.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(circuitBreaker.getPermittedNumberOfCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .recordException(QWeatherResilience::isFailure)
+                .build());
+        QWeatherResilienceProperties.Bulkhead bulkhead = properties.getBulkhead();
+        this.bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(bulkhead.getMaxConcurrentCalls())
+                .maxWaitDuration(bulkhead.getMaxWaitDuration())
+                .build());
+        circuitBreakerRegistry.getEventPublisher().onEntryAdded(event -> onCircuitBreakerAdded(event.getAddedEntry()));
+        bulkheadRegistry.getEventPublisher().onEntryAdded(event -> onBulkheadAdded(event.getAddedEntry()));
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+    }
+
+    /**
+     * 为接口调用加上隔离舱 (内层) 与熔断器 (外层), 在订阅时才检查是否允许调用
+     *
+     * @param endpoint 接口名称
+     * @param call     上游请求
+     * @return 受保护的请求
+     */
+    public <T> Mono<T> protect(String endpoint, Mono<T> call) {
+        Mono<T> protectedCall = call;
+        if (properties.getBulkhead().isEnabled()) {
+            protectedCall = protectedCall.transformDeferred(BulkheadOperator.of(bulkhead(endpoint)));
+        }
+        if (properties.getCircuitBreaker().isEnabled()) {
+            protectedCall = protectedCall.transformDeferred(CircuitBreakerOperator.of(circuitBreaker(endpoint)));
+        }
+        return protectedCall;
+    }
+
+    /**
+     * 获取 (或创建) 接口的熔断器
+     *
+     * @param endpoint 接口名称
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker circuitBreaker(String endpoint) {
+        return circuitBreakerRegistry.circuitBreaker(endpoint);
+    }
+
+    private Bulkhead bulkhead(String endpoint) {
+        return bulkheadRegistry.bulkhead(endpoint);
+    }
+
+    private void onCircuitBreakerAdded(CircuitBreaker circuitBreaker) {
+        String endpoint = circuitBreaker.getName();
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            log.warn("和风天气接口熔断器状态变更: endpoint={}, {}", endpoint, event.getStateTransition());
+            Counter.builder("qweather.circuitbreaker.transitions")
+                    .description("和风天气各接口熔断器的状态变更次数")
+                    .tags("name", endpoint,
+                            "from", event.getStateTransition().getFromState().name().toLowerCase(),
+                            "to", event.getStateTransition().getToState().name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+        });
+    }
+
+    private void onBulkheadAdded(Bulkhead bulkhead) {
+        Counter rejections = Counter.builder("qweather.bulkhead.rejections")
+                .description("和风天气各接口因并发已满被拒绝的请求数")
+                .tag("name", bulkhead.getName())
+                .register(meterRegistry);
+        bulkhead.getEventPublisher().onCallRejected(event -> rejections.increment());
+    }
+
+    /**
+     * 是否为熔断器/隔离舱/调用额度快速失败 (未实际请求上游)
+     *
+     * @param e 异常
+     * @return boolean
+     */
+    public static boolean isRejection(Throwable e) {
+        return e instanceof CallNotPermittedException || e instanceof BulkheadFullException
+                || e instanceof QuotaExceededException;
+    }
+
+    private static boolean isFailure(Throwable e) {
+        if (e instanceof BulkheadFullException || e instanceof QuotaExceededException) {
+            return false;
+        }
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError()
+                    || response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,267 @@
+package app.weather.service;
+
+import app.weather.config.ReverseGeocodeProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 离线逆地理编码: 经纬度 -> 一级行政区/城市/区县, 不请求上游.
+ * <p>
+ * 启动时加载 qweather.reverse-geocode.dataset 指定的区县中心点数据集, 只保留能对应到
+ * {@link CityDataService} 层级中的城市/区县的行, 按单位球面上的三维坐标建立 k-d 树.
+ * 球面上两点的弦长与大圆距离单调对应, 因此 k-d 树中的欧氏最近邻就是大圆距离最近的中心点.
+ * 结果为最近的中心点所在区县, 在区县边界附近可能与实际归属不同; 超过 max-distance-km 时不返回结果.
+ * <p>
+ * 项目不附带数据集, 未配置或资源不存在时 {@link #isAvailable()} 为 false.
+ */
+@Service
+@Slf4j
+public class ReverseGeocoder {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final ReverseGeocodeProperties properties;
+
+    private final CityDataService cityDataService;
+
+    private volatile KdTree tree;
+
+    @Autowired
+    public ReverseGeocoder(ReverseGeocodeProperties properties, CityDataService cityDataService) {
+        this.properties = properties;
+        this.cityDataService = cityDataService;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!StringUtils.hasText(properties.getDataset())) {
+            log.warn("未配置区县中心点数据集 (qweather.reverse-geocode.dataset), 不启用离线逆地理编码, "
+                    + "/api/weather/get?region=true 不会返回 region");
+            return;
+        }
+        Resource resource = new DefaultResourceLoader().getResource(properties.getDataset());
+        if (!resource.exists()) {
+            log.warn("未找到区县中心点数据集, 不启用离线逆地理编码, /api/weather/get?region=true 不会返回 region: {}",
+                    properties.getDataset());
+            return;
+        }
+        try {
+            load(resource);
+        } catch (IOException | RuntimeException e) {
+            log.error("加载区县中心点数据集失败, 不启用离线逆地理编码: dataset={}, error={}",
+                    properties.getDataset(), e.getMessage());
+        }
+    }
+
+    private void load(Resource resource) throws IOException {
+        List<CitySearchIndex.Entry> regions = new ArrayList<>();
+        List<double[]> points = new ArrayList<>();
+        int skipped = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] columns = line.split(",", -1);
+                if (columns.length != 5 || !isNumber(columns[3].trim()) || !isNumber(columns[4].trim())) {
+                    // 表头或格式不正确的行
+                    skipped++;
+                    continue;
+                }
+                CitySearchIndex.Entry region = region(columns[0].trim(), columns[1].trim(), columns[2].trim());
+                if (region == null) {
+                    skipped++;
+                    continue;
+                }
+                regions.add(region);
+                points.add(toPoint(Double.parseDouble(columns[3].trim()), Double.parseDouble(columns[4].trim())));
+            }
+        }
+        this.tree = regions.isEmpty() ? null : new KdTree(regions, points);
+        log.info("加载区县中心点完成: {} 条, 忽略 {} 行 (表头、格式错误或不在省市区数据中)", regions.size(), skipped);
+    }
+
+    /**
+     * 数据集中的名称对应到 {@link CityDataService} 的层级, 不存在时返回 null
+     */
+    private CitySearchIndex.Entry region(String province, String city, String district) {
+        Map<String, List<String>> cities = cityDataService.getCityDistrictMap(province);
+        List<String> districts = cities.get(city);
+        if (districts == null) {
+            return null;
+        }
+        if (district.isEmpty()) {
+            return new CitySearchIndex.Entry(city, null, province, city + "-" + province);
+        }
+        return districts.contains(district)
+                ? new CitySearchIndex.Entry(district, city, province, district + "-" + city + "-" + province)
+                : null;
+    }
+
+    private static boolean isNumber(String value) {
+        try {
+            Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 是否已加载数据集
+     */
+    public boolean isAvailable() {
+        return tree != null;
+    }
+
+    /**
+     * 查找离经纬度最近的区县 (或城市) 中心点
+     *
+     * @param longitude 经度
+     * @param latitude  纬度
+     * @return 所在区县, 未加载数据集或超出 max-distance-km 时为空
+     */
+    public Optional<CitySearchIndex.Entry> resolve(double longitude, double latitude) {
+        KdTree current = tree;
+        if (current == null) {
+            return Optional.empty();
+        }
+        // 最大距离对应的弦长
+        double chord = 2 * Math.sin(Math.min(properties.getMaxDistanceKm() / EARTH_RADIUS_KM, Math.PI) / 2);
+        return Optional.ofNullable(current.nearest(toPoint(longitude, latitude), chord * chord));
+    }
+
+    /**
+     * 解析 "经度,纬度" 后查找, 见 {@link #resolve(double, double)}
+     *
+     * @param location 经纬度坐标 (经度,纬度), 一般为 {@link LocationCanonicalizer} 规范化后的值
+     * @return 所在区县, 格式不正确时为空
+     */
+    public Optional<CitySearchIndex.Entry> resolve(String location) {
+        String[] parts = location.split(",");
+        if (parts.length != 2 || !isNumber(parts[0].trim()) || !isNumber(parts[1].trim())) {
+            return Optional.empty();
+        }
+        return resolve(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+    }
+
+    /**
+     * 经纬度 -> 单位球面上的三维坐标
+     */
+    private static double[] toPoint(double longitude, double latitude) {
+        double lon = Math.toRadians(longitude);
+        double lat = Math.toRadians(latitude);
+        return new double[]{Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat)};
+    }
+
+    /**
+     * 三维 k-d 树 (只读). 节点按数组存储: 区间 [from, to) 的中点为该子树的根, 左右子树为两侧的区间,
+     * 第 depth 层按 depth % 3 维切分
+     */
+    static final class KdTree {
+
+        private final CitySearchIndex.Entry[] regions;
+
+        private final double[][] points;
+
+        KdTree(List<CitySearchIndex.Entry> regions, List<double[]> points) {
+            Integer[] order = new Integer[regions.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            build(order, points, 0, order.length, 0);
+            this.regions = new CitySearchIndex.Entry[order.length];
+            this.points = new double[order.length][];
+            for (int i = 0; i < order.length; i++) {
+                this.regions[i] = regions.get(order[i]);
+                this.points[i] = points.get(order[i]);
+            }
+        }
+
+        private static void build(Integer[] order, List<double[]> points, int from, int to, int depth) {
+            if (to - from <= 1) {
+                return;
+            }
+            int axis = depth % 3;
+            Arrays.sort(order, from, to, Comparator.comparingDouble(i -> points.get(i)[axis]));
+            int mid = (from + to) >>> 1;
+            build(order, points, from, mid, depth + 1);
+            build(order, points, mid + 1, to, depth + 1);
+        }
+
+        /**
+         * 最近邻查找
+         *
+         * @param target     目标点
+         * @param maxSquared 最大距离 (弦长) 的平方
+         * @return 最近的区县, 超出最大距离时为 null
+         */
+        CitySearchIndex.Entry nearest(double[] target, double maxSquared) {
+            Nearest best = new Nearest(maxSquared);
+            search(target, 0, points.length, 0, best);
+            return best.index < 0 ? null : regions[best.index];
+        }
+
+        private void search(double[] target, int from, int to, int depth, Nearest best) {
+            if (from >= to) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            double[] point = points[mid];
+            double dx = point[0] - target[0];
+            double dy = point[1] - target[1];
+            double dz = point[2] - target[2];
+            double distance = dx * dx + dy * dy + dz * dz;
+            if (distance <= best.distance) {
+                best.distance = distance;
+                best.index = mid;
+            }
+            int axis = depth % 3;
+            double diff = target[axis] - point[axis];
+            // 先查目标所在一侧, 另一侧只有切分面距离小于当前最优时才可能有更近的点
+            if (diff < 0) {
+                search(target, from, mid, depth + 1, best);
+                if (diff * diff < best.distance) {
+                    search(target, mid + 1, to, depth + 1, best);
+                }
+            } else {
+                search(target, mid + 1, to, depth + 1, best);
+                if (diff * diff < best.distance) {
+                    search(target, from, mid, depth + 1, best);
+                }
+            }
+        }
+
+        /**
+         * 查找过程中的当前最优结果
+         */
+        private static final class Nearest {
+            private double distance;
+
+            private int index = -1;
+
+            private Nearest(double distance) {
+                this.distance = distance;
+            }
+        }
+    }
+}
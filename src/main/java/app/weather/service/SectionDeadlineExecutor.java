@@ -0,0 +1,190 @@
+package app.weather.service;
+
+import app.weather.config.LatencyBudgetProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 聚合接口中单个数据项的截止时间与对冲请求.
+ * <p>
+ * 每个数据项的截止时间为请求预算与 qweather.latency.sections 中上限的较小值.
+ * 数据项耗时超过该数据项上游请求耗时的 P95 (qweather.latency.hedge.percentile) 时再发起一次对冲请求,
+ * 取先返回的结果; 缓存命中不会等到对冲延迟, 约 5% 的上游请求会触发对冲. 主请求失败时不再对冲 (上游正在出错时不加倍请求).
+ * 超过截止时间或请求失败时改用降级结果 (一般为过期缓存).
+ * <p>
+ * 对冲延迟只基于上游请求的耗时 (由调用方通过 {@link #timeUpstream(String, Supplier)} 记录),
+ * 不统计缓存命中: 缓存命中约 1ms, 混入后分位数会被压低到 min-delay, 导致大部分未命中的请求都触发对冲.
+ * <p>
+ * 指标: qweather.section.latency{section} (上游请求耗时, 含分位数),
+ * qweather.section.hedges{section}, qweather.section.fallbacks{section, reason=deadline|error|rejected, result=stale|empty}.
+ */
+@Component
+@Slf4j
+public class SectionDeadlineExecutor {
+
+    private final LatencyBudgetProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SectionDeadlineExecutor(LatencyBudgetProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 解析请求预算: 请求头为毫秒数, 限制在 [min-budget, max-budget] 内; 未指定或无法解析时使用默认预算
+     *
+     * @param headerValue 请求头的值, 可为 null
+     * @return 预算
+     */
+    public Duration resolveBudget(String headerValue) {
+        if (!StringUtils.hasText(headerValue)) {
+            return properties.getBudget();
+        }
+        try {
+            Duration budget = Duration.ofMillis(Long.parseLong(headerValue.trim()));
+            if (budget.compareTo(properties.getMinBudget()) < 0) {
+                return properties.getMinBudget();
+            }
+            return budget.compareTo(properties.getMaxBudget()) > 0 ? properties.getMaxBudget() : budget;
+        } catch (NumberFormatException e) {
+            log.debug("无法解析的延迟预算请求头, 使用默认预算: {}", headerValue);
+            return properties.getBudget();
+        }
+    }
+
+    /**
+     * 数据项的截止时间
+     *
+     * @param section 数据项
+     * @param budget  请求预算
+     * @return 截止时间
+     */
+    public Duration deadline(String section, Duration budget) {
+        Duration cap = properties.getSections().get(section);
+        return cap != null && cap.compareTo(budget) < 0 ? cap : budget;
+    }
+
+    /**
+     * 在截止时间内获取数据项
+     *
+     * @param section  数据项名称
+     * @param deadline 截止时间
+     * @param primary  主请求 (一般经过缓存)
+     * @param hedge    对冲请求 (直接请求上游), 为 null 时不对冲
+     * @param fallback 超时或失败时的降级结果
+     * @return 数据项, 降级结果也为空时为空
+     */
+    public <T> Mono<T> execute(String section, Duration deadline, Supplier<Mono<T>> primary,
+                               Supplier<Mono<T>> hedge, Supplier<Mono<T>> fallback) {
+        Mono<T> attempt = Mono.defer(primary);
+        Duration hedgeDelay = hedge == null ? null : hedgeDelay(timer(section));
+        if (hedgeDelay != null && hedgeDelay.compareTo(deadline) < 0) {
+            // 主请求在对冲前失败 (如命中负缓存、熔断打开) 时直接降级, 不再对冲;
+            // 对冲请求失败或为空时继续等待主请求
+            attempt = Mono.firstWithSignal(attempt, Mono.delay(hedgeDelay)
+                    .then(Mono.defer(() -> {
+                        hedgeCounter(section).increment();
+                        return hedge.get();
+                    }))
+                    .onErrorResume(e -> Mono.never())
+                    .switchIfEmpty(Mono.never()));
+        }
+        return attempt
+                .timeout(deadline, Mono.defer(() -> fallback(section, "deadline", fallback)))
+                .onErrorResume(e -> {
+                    if (QWeatherResilience.isRejection(e)) {
+                        // 熔断/并发已满时每个请求都会失败, 由 resilience4j 指标反映, 不逐条记录
+                        log.debug("{}数据暂不可用, 尝试降级: {}", section, e.getMessage());
+                        return fallback(section, "rejected", fallback);
+                    }
+                    log.warn("获取{}数据失败, 尝试降级: {}", section, e.getMessage());
+                    return fallback(section, "error", fallback);
+                });
+    }
+
+    /**
+     * 记录数据项上游请求的耗时, 作为对冲延迟的依据. 只应包装真正请求上游的调用 (缓存未命中时的加载、对冲请求),
+     * 失败或为空的请求不计入
+     *
+     * @param section 数据项名称
+     * @param fetch   上游请求
+     * @return 计时的上游请求
+     */
+    public <T> Mono<T> timeUpstream(String section, Supplier<Mono<T>> fetch) {
+        Timer timer = timer(section);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return fetch.get().doOnNext(value -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * 对冲延迟: 样本足够时取上游耗时的分位数 (不低于 min-delay), 否则取 initial-delay; 未启用时为 null
+     */
+    private Duration hedgeDelay(Timer timer) {
+        LatencyBudgetProperties.Hedge hedge = properties.getHedge();
+        if (!hedge.isEnabled()) {
+            return null;
+        }
+        if (timer.count() < hedge.getMinSamples()) {
+            return hedge.getInitialDelay();
+        }
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == hedge.getPercentile()) {
+                Duration delay = Duration.ofNanos((long) value.value(TimeUnit.NANOSECONDS));
+                return delay.compareTo(hedge.getMinDelay()) < 0 ? hedge.getMinDelay() : delay;
+            }
+        }
+        return hedge.getInitialDelay();
+    }
+
+    private <T> Mono<T> fallback(String section, String reason, Supplier<Mono<T>> fallback) {
+        return fallback.get()
+                .doOnNext(value -> fallbackCounter(section, reason, "stale").increment())
+                .switchIfEmpty(Mono.fromRunnable(() -> fallbackCounter(section, reason, "empty").increment()))
+                .onErrorResume(e -> {
+                    log.warn("获取{}降级数据失败: {}", section, e.getMessage());
+                    fallbackCounter(section, reason, "empty").increment();
+                    return Mono.empty();
+                });
+    }
+
+    private Timer timer(String section) {
+        return timers.computeIfAbsent(section, name -> Timer.builder("qweather.section.latency")
+                .description("聚合接口各数据项上游请求的耗时 (不含缓存命中与降级)")
+                .tag("section", name)
+                .publishPercentiles(properties.getHedge().getPercentile())
+                .register(meterRegistry));
+    }
+
+    private Counter hedgeCounter(String section) {
+        return Counter.builder("qweather.section.hedges")
+                .description("聚合接口各数据项发起的对冲请求数")
+                .tag("section", section)
+                .register(meterRegistry);
+    }
+
+    private Counter fallbackCounter(String section, String reason, String result) {
+        return Counter.builder("qweather.section.fallbacks")
+                .description("聚合接口各数据项超时或失败后的降级次数")
+                .tags("section", section, "reason", reason, "result", result)
+                .register(meterRegistry);
+    }
+}
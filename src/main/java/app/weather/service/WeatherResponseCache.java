@@ -0,0 +1,342 @@
+package app.weather.service;
+
+import app.weather.cache.TwoLevelCacheManager;
+import app.weather.config.WeatherCacheProperties;
+import app.weather.model.vo.GetWeatherVO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 聚合接口 (/api/weather/get) 的响应缓存, 保存序列化后的 JSON 字节 (以及 gzip 压缩后的字节).
+ * <p>
+ * 按 规范化位置 + 数据项 + 生活指数类型 缓存, 命中时直接写出字节, 不再构建 GetWeatherVO 和序列化.
+ * 只缓存全部数据项状态为 ok 的响应. 任一依赖的数据项缓存条目变更时 (本节点写入或其他节点的失效消息,
+ * 见 {@link TwoLevelCacheManager#addListener}) 立即失效; qweather.cache.response.ttl 只限制错过通知时的不一致时长.
+ * 响应的有效期同时不超过所依赖数据项缓存条目中最早的过期时间, 数据项过期后不会继续返回基于它的响应.
+ * 构建响应期间有数据项变更时不写入, 避免缓存基于旧数据的响应.
+ * <p>
+ * 只在 storage-mode=sections 时启用. 不提供 brotli: 依赖中没有 brotli 编码器.
+ * <p>
+ * 指标: qweather.response.cache{result=hit|miss}, qweather.response.cache.invalidations.
+ */
+@Component
+public class WeatherResponseCache {
+
+    private final WeatherCacheProperties.Response properties;
+
+    private final boolean enabled;
+
+    private final ObjectMapper objectMapper;
+
+    private final com.google.common.cache.Cache<String, Entry> cache;
+
+    /**
+     * 数据项缓存条目 (缓存名称:key) -> 依赖它的响应 key
+     */
+    private final Map<String, Set<String>> dependents = new ConcurrentHashMap<>();
+
+    /**
+     * 数据项缓存条目的变更次数
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    private final Counter invalidationCounter;
+
+    @Autowired
+    public WeatherResponseCache(WeatherCacheProperties weatherCacheProperties, CacheManager cacheManager,
+                                ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = weatherCacheProperties.getResponse();
+        this.enabled = properties.isEnabled()
+                && weatherCacheProperties.getStorageMode() == WeatherCacheProperties.StorageMode.SECTIONS
+                && cacheManager instanceof TwoLevelCacheManager;
+        this.objectMapper = objectMapper;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTtl())
+                .<String, Entry>removalListener(notification -> {
+                    // 同一 key 的新条目依赖相同, 被替换时保留登记
+                    if (notification.getCause() != RemovalCause.REPLACED && notification.getValue() != null) {
+                        notification.getValue().dependencies()
+                                .forEach(dependency -> removeDependent(dependency, notification.getKey()));
+                    }
+                })
+                .build();
+        this.hitCounter = resultCounter("hit", meterRegistry);
+        this.missCounter = resultCounter("miss", meterRegistry);
+        this.invalidationCounter = Counter.builder("qweather.response.cache.invalidations")
+                .description("数据项变更导致的响应缓存失效次数")
+                .register(meterRegistry);
+        if (enabled) {
+            ((TwoLevelCacheManager) cacheManager).addListener(this::onChange);
+        }
+    }
+
+    private static Counter resultCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("qweather.response.cache")
+                .description("聚合接口响应缓存的命中情况")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 响应缓存 key
+     *
+     * @param location     规范化后的经纬度
+     * @param sections     数据项
+     * @param indicesTypes 生活指数类型
+     * @return key
+     */
+    public String key(String location, Collection<String> sections, Collection<String> indicesTypes) {
+        return key(location, sections, indicesTypes, false);
+    }
+
+    /**
+     * 响应缓存 key
+     *
+     * @param location     规范化后的经纬度
+     * @param sections     数据项
+     * @param indicesTypes 生活指数类型
+     * @param region       响应是否包含所在区县
+     * @return key
+     */
+    public String key(String location, Collection<String> sections, Collection<String> indicesTypes, boolean region) {
+        StringBuilder key = new StringBuilder(location).append('|');
+        WeatherService.SECTIONS.stream().filter(sections::contains).forEach(section -> key.append(section).append(','));
+        key.append('|');
+        WeatherService.INDICES_TYPES.stream().filter(indicesTypes::contains).forEach(type -> key.append(type).append(','));
+        if (region) {
+            key.append("|region");
+        }
+        return key.toString();
+    }
+
+    /**
+     * 读取缓存的响应
+     *
+     * @param key 响应缓存 key
+     * @return 序列化后的响应, 未命中时返回 null
+     */
+    public Encoded get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.expiresAt() <= System.currentTimeMillis()) {
+            cache.invalidate(key);
+            entry = null;
+        }
+        (entry != null ? hitCounter : missCounter).increment();
+        return entry != null ? entry.encoded() : null;
+    }
+
+    /**
+     * 当前的变更次数, 在开始构建响应前获取, 写入时传给 {@link #put}
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * 是否可以缓存聚合接口的响应: 只缓存全部数据项都新鲜 (ok) 的响应.
+     * 含旧值 (stale) 或缺失 (missing) 数据项的响应不缓存, 否则在数据刷新前会一直返回降级结果
+     *
+     * @param vo 聚合天气数据
+     * @return 可以缓存时为 true
+     */
+    public static boolean isCacheable(GetWeatherVO vo) {
+        return vo.getSections().values().stream()
+                .allMatch(status -> GetWeatherVO.SectionStatus.OK.equals(status.getStatus()));
+    }
+
+    /**
+     * 响应的过期时间: 各数据项缓存条目中最早的过期时间
+     *
+     * @param vo 聚合天气数据
+     * @return 毫秒时间戳, 没有数据项时为 Long.MAX_VALUE
+     */
+    public static long expiresAt(GetWeatherVO vo) {
+        return vo.getSections().values().stream()
+                .mapToLong(GetWeatherVO.SectionStatus::getExpiresAt)
+                .min()
+                .orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * 序列化响应
+     *
+     * @param body 响应体
+     * @return 序列化后的响应 (不含 gzip)
+     */
+    public Encoded encode(Object body) {
+        try {
+            return new Encoded(objectMapper.writeValueAsBytes(body), null);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("响应序列化失败", e);
+        }
+    }
+
+    /**
+     * 缓存序列化后的响应, 有效期只受 qweather.cache.response.ttl 限制
+     *
+     * @see #put(String, String, Collection, Encoded, long, long)
+     */
+    public Encoded put(String key, String location, Collection<String> sections, Encoded encoded, long generation) {
+        return put(key, location, sections, encoded, generation, Long.MAX_VALUE);
+    }
+
+    /**
+     * 缓存序列化后的响应. generation 之后依赖的数据项有变更时不写入
+     *
+     * @param key        响应缓存 key
+     * @param location   规范化后的经纬度
+     * @param sections   数据项
+     * @param encoded    序列化后的响应
+     * @param generation 构建响应前的 {@link #generation()}
+     * @param expiresAt  响应的过期时间 (毫秒时间戳, 见 {@link #expiresAt(GetWeatherVO)}), 已过期时不写入
+     * @return 写入的响应 (可能包含 gzip 字节)
+     */
+    public Encoded put(String key, String location, Collection<String> sections, Encoded encoded, long generation,
+                       long expiresAt) {
+        if (!enabled || expiresAt <= System.currentTimeMillis()) {
+            return encoded;
+        }
+        Encoded stored = encoded.json().length > properties.getGzipThreshold().toBytes()
+                ? new Encoded(encoded.json(), gzip(encoded.json()))
+                : encoded;
+        List<String> dependencies = sections.stream()
+                .map(section -> dependency(WeatherService.CACHE_NAMES.get(section), WeatherService.cacheKey(section, location)))
+                .toList();
+        dependencies.forEach(dependency -> dependents
+                .computeIfAbsent(dependency, k -> ConcurrentHashMap.newKeySet())
+                .add(key));
+        // 先登记依赖再写入, 写入后再次检查变更次数: 与写入并发的变更也不会留下基于旧数据的响应
+        if (this.generation.get() == generation) {
+            cache.put(key, new Entry(stored, dependencies, expiresAt));
+            if (this.generation.get() == generation) {
+                return stored;
+            }
+        }
+        cache.invalidate(key);
+        dependencies.forEach(dependency -> removeDependent(dependency, key));
+        return stored;
+    }
+
+    /**
+     * 构建响应: 请求接受 gzip 且有压缩后的字节时直接返回压缩后的字节
+     *
+     * @param encoded        序列化后的响应
+     * @param requestHeaders 请求头
+     * @return ResponseEntity
+     */
+    public ResponseEntity<byte[]> toResponse(Encoded encoded, HttpHeaders requestHeaders) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (encoded.gzip() == null) {
+            return builder.body(encoded.json());
+        }
+        builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(requestHeaders)) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(encoded.gzip());
+        }
+        return builder.body(encoded.json());
+    }
+
+    private void onChange(String cacheName, String key) {
+        if (!WeatherService.CACHE_NAMES.containsValue(cacheName)) {
+            return;
+        }
+        generation.incrementAndGet();
+        if (key == null) {
+            cache.invalidateAll();
+            invalidationCounter.increment();
+            return;
+        }
+        Set<String> keys = dependents.remove(dependency(cacheName, key));
+        if (keys != null && !keys.isEmpty()) {
+            cache.invalidateAll(keys);
+            invalidationCounter.increment(keys.size());
+        }
+    }
+
+    private void removeDependent(String dependency, String key) {
+        dependents.computeIfPresent(dependency, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static String dependency(String cacheName, String key) {
+        return cacheName + ":" + key;
+    }
+
+    private static boolean acceptsGzip(HttpHeaders requestHeaders) {
+        String acceptEncoding = requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!"gzip".equalsIgnoreCase(parts[0].trim())) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * 序列化后的响应
+     *
+     * @param json JSON 字节
+     * @param gzip gzip 压缩后的 JSON 字节, 未压缩时为 null
+     */
+    public record Encoded(byte[] json, byte[] gzip) {
+    }
+
+    private record Entry(Encoded encoded, List<String> dependencies, long expiresAt) {
+    }
+}
@@ -1,73 +1,316 @@
 package app.weather.service;
 
+import app.weather.cache.CacheEntry;
+import app.weather.cache.NegativeCache;
+import app.weather.cache.SingleFlight;
+import app.weather.cache.TwoLevelCache;
+import app.weather.cache.WeatherBundleCache;
+import app.weather.config.LatencyBudgetProperties;
+import app.weather.config.QWeatherQuotaProperties;
+import app.weather.config.WeatherCacheProperties;
 import app.weather.model.qweather.DailyWeatherResponse;
 import app.weather.model.qweather.HourlyWeatherResponse;
+import app.weather.model.qweather.QWeatherApiResponseBase;
 import app.weather.model.qweather.RealTimeWeatherResponse;
 import app.weather.model.qweather.WeatherIndicesResponse;
 import app.weather.model.vo.GetWeatherVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Optional;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
 public class WeatherService {
+    /**
+     * 聚合接口请求的生活指数: 运动指数、洗车指数、穿衣指数、紫外线指数、晾晒指数
+     */
+    private static final String INDICES_TYPE = "1,2,3,5,14";
+
+    /**
+     * 聚合接口可选的生活指数类型, 只需部分类型时仍按 {@link #INDICES_TYPE} 请求 (共用缓存), 再在本地筛选
+     */
+    public static final List<String> INDICES_TYPES = List.of(INDICES_TYPE.split(","));
+
+    public static final String REALTIME = "realtime";
+
+    public static final String DAILY = "daily";
+
+    public static final String HOURLY = "hourly";
+
+    public static final String INDICES = "indices";
+
+    /**
+     * 聚合接口的全部数据项
+     */
+    public static final List<String> SECTIONS = List.of(REALTIME, DAILY, HOURLY, INDICES);
+
+    /**
+     * 各数据项对应的缓存名称 (storage-mode=sections)
+     */
+    public static final Map<String, String> CACHE_NAMES = Map.of(
+            REALTIME, "realtimeWeatherCache",
+            DAILY, "dailyWeatherCache",
+            HOURLY, "hourlyWeatherCache",
+            INDICES, "weatherIndices");
+
     private final QWeatherApi qWeatherApi;
 
+    private final WeatherBundleCache weatherBundleCache;
+
+    private final WeatherCacheProperties weatherCacheProperties;
+
+    private final LatencyBudgetProperties latencyBudgetProperties;
+
+    private final SectionDeadlineExecutor sectionDeadlineExecutor;
+
+    private final CacheManager cacheManager;
+
+    private final SingleFlight singleFlight;
+
+    private final NegativeCache negativeCache;
+
     @Autowired
-    public WeatherService(QWeatherApi qWeatherApi) {
+    public WeatherService(QWeatherApi qWeatherApi, WeatherBundleCache weatherBundleCache,
+                          WeatherCacheProperties weatherCacheProperties, LatencyBudgetProperties latencyBudgetProperties,
+                          SectionDeadlineExecutor sectionDeadlineExecutor, CacheManager cacheManager,
+                          SingleFlight singleFlight, NegativeCache negativeCache) {
         this.qWeatherApi = qWeatherApi;
+        this.weatherBundleCache = weatherBundleCache;
+        this.weatherCacheProperties = weatherCacheProperties;
+        this.latencyBudgetProperties = latencyBudgetProperties;
+        this.sectionDeadlineExecutor = sectionDeadlineExecutor;
+        this.cacheManager = cacheManager;
+        this.singleFlight = singleFlight;
+        this.negativeCache = negativeCache;
     }
 
     /**
-     * 获取聚合天气数据
+     * 数据项在对应缓存 ({@link #CACHE_NAMES}) 中的 key
+     *
+     * @param section  数据项
+     * @param location 经纬度
+     * @return 缓存 key
+     */
+    public static String cacheKey(String section, String location) {
+        return INDICES.equals(section) ? location + "-" + INDICES_TYPE : location;
+    }
+
+    /**
+     * 获取聚合天气数据, 使用默认延迟预算, 包含全部数据项
      *
      * @param location 经纬度
      * @return
      */
     public Mono<GetWeatherVO> getWeather(String location) {
+        return getWeather(location, latencyBudgetProperties.getBudget(), SECTIONS, INDICES_TYPES);
+    }
+
+    /**
+     * 获取聚合天气数据.
+     * 每个数据项独立获取, 在各自的截止时间内返回 (见 {@link SectionDeadlineExecutor}), 超时或失败时使用过期缓存,
+     * 仍然没有数据时该数据项标记为 missing, 不影响其他数据项. 各数据项的状态见 {@link GetWeatherVO#getSections()}.
+     *
+     * @param location 经纬度
+     * @param budget   延迟预算
+     * @param sections     需要的数据项, 取值见 {@link #SECTIONS}, 只会请求 (订阅) 需要的数据项
+     * @param indicesTypes 需要的生活指数类型, 取值见 {@link #INDICES_TYPES}
+     * @return
+     */
+    public Mono<GetWeatherVO> getWeather(String location, Duration budget, Collection<String> sections,
+                                         Collection<String> indicesTypes) {
+        if (weatherCacheProperties.getStorageMode() == WeatherCacheProperties.StorageMode.BUNDLE) {
+            return getWeatherFromBundle(location, budget, sections, indicesTypes);
+        }
 
         // 并发调用天气API
-        Mono<RealTimeWeatherResponse> realTimeWeatherMono = qWeatherApi.getRealtimeWeather(location)
-                .onErrorResume(e -> {
-                    log.error("获取实时天气失败: {}", e.getMessage());
-                    return Mono.justOrEmpty(Optional.empty());
-                });
-        Mono<DailyWeatherResponse> dailyWeatherMono = qWeatherApi.getDailyWeather(location)
-                .onErrorResume(e -> {
-                    log.error("获取每日天气失败: {}", e.getMessage());
-                    return Mono.justOrEmpty(Optional.empty());
-                });
-        Mono<HourlyWeatherResponse> hourlyWeatherMono = qWeatherApi.getHourlyWeatherForecast24h(location)
-                .onErrorResume(e -> {
-                    log.error("获取逐小时天气失败: {}", e.getMessage());
-                    return Mono.justOrEmpty(Optional.empty());
-                });
+        Map<String, Mono<CacheEntry>> entries = new LinkedHashMap<>();
+        if (sections.contains(REALTIME)) {
+            entries.put(REALTIME, section(REALTIME, budget, "realtimeWeatherCache", location, RealTimeWeatherResponse.class,
+                    () -> qWeatherApi.getRealtimeWeather(location), () -> qWeatherApi.fetchRealtimeWeather(location)));
+        }
+        if (sections.contains(DAILY)) {
+            entries.put(DAILY, section(DAILY, budget, "dailyWeatherCache", location, DailyWeatherResponse.class,
+                    () -> qWeatherApi.getDailyWeather(location), () -> qWeatherApi.fetchDailyWeather(location)));
+        }
+        if (sections.contains(HOURLY)) {
+            entries.put(HOURLY, section(HOURLY, budget, "hourlyWeatherCache", location, HourlyWeatherResponse.class,
+                    () -> qWeatherApi.getHourlyWeatherForecast24h(location),
+                    () -> qWeatherApi.fetchHourlyWeatherForecast24h(location)));
+        }
         // 获取天气指数 包含运动指数、洗车指数、穿衣指数、紫外线指数、晾晒指数
-        Mono<WeatherIndicesResponse> weatherIndicesMono = qWeatherApi.getWeatherIndices(location, "1,2,3,5,14")
-                .onErrorResume(e -> {
-                    log.error("获取天气指数失败: {}", e.getMessage());
-                    return Mono.justOrEmpty(Optional.empty());
-                });
-
-        // 3. 聚合天气数据
-        return Mono.zip(realTimeWeatherMono, dailyWeatherMono, hourlyWeatherMono, weatherIndicesMono)
-                .map(tuple -> {
-                    RealTimeWeatherResponse realTimeWeatherResponse = tuple.getT1();
-                    DailyWeatherResponse dailyWeatherResponse = tuple.getT2();
-                    HourlyWeatherResponse hourlyWeatherResponse = tuple.getT3();
-                    WeatherIndicesResponse weatherIndicesResponse = tuple.getT4();
-                    // 构建返回对象
-                    GetWeatherVO vo = new GetWeatherVO();
-                    vo.buildRealtimeWeather(realTimeWeatherResponse);
-                    vo.buildDailyWeather(dailyWeatherResponse);
-                    vo.buildHourlyWeather(hourlyWeatherResponse);
-                    vo.buildWeatherIndices(weatherIndicesResponse);
-                    return vo;
-                })
+        if (sections.contains(INDICES)) {
+            entries.put(INDICES, section(INDICES, budget, "weatherIndices", location + "-" + INDICES_TYPE,
+                    WeatherIndicesResponse.class,
+                    () -> qWeatherApi.getWeatherIndices(location, INDICES_TYPE),
+                    () -> qWeatherApi.fetchWeatherIndices(location, INDICES_TYPE)));
+        }
+
+        return aggregate(location, sections, indicesTypes, entries);
+    }
+
+    /**
+     * 聚合天气数据, 缺失的数据项不影响其他数据项
+     */
+    private Mono<GetWeatherVO> aggregate(String location, Collection<String> sections, Collection<String> indicesTypes,
+                                         Map<String, Mono<CacheEntry>> entries) {
+        return Flux.fromIterable(entries.entrySet())
+                .flatMap(section -> section.getValue().map(entry -> Map.entry(section.getKey(), entry)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .map(loaded -> buildVO(sections, indicesTypes, loaded))
                 .doOnError(e -> log.error("聚合天气数据时发生错误: location: {}", location, e));
     }
+
+    /**
+     * 从按位置聚合的 Redis Hash 中获取天气数据, 一次 HGETALL 读取全部数据项.
+     * 过期数据由 {@link WeatherBundleCache} 直接返回并在后台刷新. 截止时间按数据项作用于本次请求的等待,
+     * 超时后使用 Hash 中的原条目 (可能已过期), 共享的上游请求仍会完成并回写; 上游请求已合并, 不再发起对冲请求.
+     *
+     * @param location 经纬度
+     * @param budget   延迟预算
+     * @param sections     需要的数据项
+     * @param indicesTypes 需要的生活指数类型
+     * @return
+     */
+    private Mono<GetWeatherVO> getWeatherFromBundle(String location, Duration budget, Collection<String> sections,
+                                                    Collection<String> indicesTypes) {
+        Map<String, WeatherBundleCache.Section<?>> bundleSections = new LinkedHashMap<>();
+        if (sections.contains(REALTIME)) {
+            bundleSections.put(REALTIME, new WeatherBundleCache.Section<>("realtimeWeatherCache", "realtime",
+                    RealTimeWeatherResponse.class,
+                    () -> sectionDeadlineExecutor.timeUpstream(REALTIME, () -> qWeatherApi.fetchRealtimeWeather(location))));
+        }
+        if (sections.contains(DAILY)) {
+            bundleSections.put(DAILY, new WeatherBundleCache.Section<>("dailyWeatherCache", "daily",
+                    DailyWeatherResponse.class,
+                    () -> sectionDeadlineExecutor.timeUpstream(DAILY, () -> qWeatherApi.fetchDailyWeather(location))));
+        }
+        if (sections.contains(HOURLY)) {
+            bundleSections.put(HOURLY, new WeatherBundleCache.Section<>("hourlyWeatherCache", "hourly",
+                    HourlyWeatherResponse.class,
+                    () -> sectionDeadlineExecutor.timeUpstream(HOURLY,
+                            () -> qWeatherApi.fetchHourlyWeatherForecast24h(location))));
+        }
+        if (sections.contains(INDICES)) {
+            bundleSections.put(INDICES, new WeatherBundleCache.Section<>("weatherIndices", "indices:" + INDICES_TYPE,
+                    WeatherIndicesResponse.class,
+                    () -> sectionDeadlineExecutor.timeUpstream(INDICES,
+                            () -> qWeatherApi.fetchWeatherIndices(location, INDICES_TYPE))));
+        }
+        Map<String, Mono<CacheEntry>> loaded = weatherBundleCache.loadSections(location,
+                List.copyOf(bundleSections.values()));
+        Map<String, Mono<CacheEntry>> entries = new LinkedHashMap<>();
+        bundleSections.forEach((section, bundleSection) -> entries.put(section, sectionDeadlineExecutor.execute(section,
+                sectionDeadlineExecutor.deadline(section, budget),
+                () -> loaded.get(bundleSection.field()),
+                null,
+                () -> weatherBundleCache.readEntry(location, bundleSection))));
+        return aggregate(location, sections, indicesTypes, entries);
+    }
+
+    /**
+     * 在截止时间内获取一个数据项, 新获取的数据包装为新鲜的条目, 缓存返回的旧值与降级结果保留缓存中的原条目 (可能已过期)
+     */
+    private <T> Mono<CacheEntry> section(String section, Duration budget, String cacheName, String key, Class<T> type,
+                                         Supplier<Mono<T>> cached, Supplier<Mono<T>> fetch) {
+        // 只有真正请求上游时计时, 作为对冲延迟的依据
+        Supplier<Mono<T>> upstream = () -> sectionDeadlineExecutor.timeUpstream(section, fetch);
+        return sectionDeadlineExecutor.execute(section, sectionDeadlineExecutor.deadline(section, budget),
+                () -> cached(cacheName, key, type, cached, upstream),
+                () -> hedge(cacheName, key, upstream).map(CacheEntry::of),
+                () -> stale(cacheName, key, type));
+    }
+
+    /**
+     * 经过缓存读取数据项. 两级缓存直接读取缓存条目 (与 {@code @Cacheable} 相同的提前刷新、旧值返回与请求合并),
+     * 以便区分返回的是否为旧值, 后台刷新以低优先级占用调用额度; 其他缓存经过 {@code @Cacheable} 方法读取, 结果视为新鲜
+     */
+    private <T> Mono<CacheEntry> cached(String cacheName, String key, Class<T> type, Supplier<Mono<T>> cached,
+                                        Supplier<Mono<T>> fetch) {
+        if (!(cacheManager.getCache(cacheName) instanceof TwoLevelCache cache)) {
+            return cached.get().map(CacheEntry::of);
+        }
+        return Mono.fromFuture(() -> cache.retrieveEntry(key,
+                        () -> qWeatherApi.coalesce(cacheName, key, fetch).toFuture(),
+                        () -> QWeatherQuota.withPriority(qWeatherApi.coalesce(cacheName, key, fetch),
+                                QWeatherQuotaProperties.Priority.LOW).toFuture()))
+                .filter(entry -> type.isInstance(entry.getValue()));
+    }
+
+    /**
+     * 对冲请求: 直接请求上游并写入缓存, 同一数据项的并发对冲请求合并为一个.
+     * 与主请求共用负缓存 (同一 group + key), 上游最近对该 key 返回过错误时不再对冲
+     */
+    private <T> Mono<T> hedge(String cacheName, String key, Supplier<Mono<T>> fetch) {
+        Cache cache = cacheManager.getCache(cacheName);
+        return negativeCache.guard(cacheName, key, () -> singleFlight.execute("hedge:" + cacheName, key,
+                () -> fetch.get().doOnNext(value -> {
+                    if (cache != null) {
+                        cache.put(key, value);
+                    }
+                })));
+    }
+
+    /**
+     * 读取缓存中的数据, 包括已过期但仍在宽限期内的数据
+     */
+    private Mono<CacheEntry> stale(String cacheName, String key, Class<?> type) {
+        if (!(cacheManager.getCache(cacheName) instanceof TwoLevelCache cache)) {
+            return Mono.empty();
+        }
+        return Mono.fromFuture(() -> cache.retrieveEntry(key))
+                .filter(entry -> type.isInstance(entry.getValue()));
+    }
+
+    /**
+     * 构建返回对象, 每个数据项独立构建: 没有数据、code 非 200 或构建失败的数据项标记为 missing
+     *
+     * @param sections     需要的数据项
+     * @param indicesTypes 需要的生活指数类型
+     * @param loaded       数据项 -> 缓存条目
+     * @return GetWeatherVO
+     */
+    private GetWeatherVO buildVO(Collection<String> sections, Collection<String> indicesTypes,
+                                 Map<String, CacheEntry> loaded) {
+        GetWeatherVO vo = new GetWeatherVO();
+        long now = System.currentTimeMillis();
+        for (String section : SECTIONS) {
+            if (!sections.contains(section)) {
+                continue;
+            }
+            CacheEntry entry = loaded.get(section);
+            if (entry == null || !(entry.getValue() instanceof QWeatherApiResponseBase response)
+                    || !"200".equals(response.getCode())) {
+                vo.getSections().put(section, GetWeatherVO.SectionStatus.of(GetWeatherVO.SectionStatus.MISSING, null));
+                continue;
+            }
+            try {
+                switch (section) {
+                    case REALTIME -> vo.buildRealtimeWeather((RealTimeWeatherResponse) response);
+                    case DAILY -> vo.buildDailyWeather((DailyWeatherResponse) response);
+                    case HOURLY -> vo.buildHourlyWeather((HourlyWeatherResponse) response);
+                    case INDICES -> vo.buildWeatherIndices((WeatherIndicesResponse) response, indicesTypes);
+                    default -> throw new IllegalArgumentException(section);
+                }
+                String status = entry.isExpired(now) ? GetWeatherVO.SectionStatus.STALE : GetWeatherVO.SectionStatus.OK;
+                GetWeatherVO.SectionStatus sectionStatus = GetWeatherVO.SectionStatus.of(status, response.getUpdateTime());
+                sectionStatus.setExpiresAt(entry.getExpiresAt());
+                vo.getSections().put(section, sectionStatus);
+            } catch (RuntimeException e) {
+                log.warn("构建{}数据失败: {}", section, e.getMessage());
+                vo.getSections().put(section, GetWeatherVO.SectionStatus.of(GetWeatherVO.SectionStatus.MISSING, null));
+            }
+        }
+        return vo;
+    }
 }
@@ -0,0 +1,100 @@
+package app.weather.benchmark;
+
+import app.weather.cache.CacheEntry;
+import app.weather.cache.CompactCacheSerializer;
+import app.weather.config.CacheConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存值序列化对比: 旧的 default typing JSON 与 {@link CompactCacheSerializer}.
+ * <p>
+ * 运行: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=app.weather.benchmark.CacheSerializerBenchmark
+ * <p>
+ * 启动时先打印每种数据在各格式下的字节数.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheSerializerBenchmark {
+
+    @Param({"realtime", "daily", "hourly", "indices"})
+    private String section;
+
+    @Param({"json", "smile", "smile-gzip"})
+    private String format;
+
+    private RedisSerializer<Object> serializer;
+
+    private CacheEntry entry;
+
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        serializer = serializer(format);
+        entry = new CacheEntry(sample(section), System.currentTimeMillis(), System.currentTimeMillis() + 600_000L);
+        encoded = serializer.serialize(entry);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(entry);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return serializer.deserialize(encoded);
+    }
+
+    private static RedisSerializer<Object> serializer(String format) {
+        return switch (format) {
+            case "json" -> CacheConfig.createGenericJackson2JsonRedisSerializer();
+            case "smile" -> new CompactCacheSerializer(CacheConfig.createGenericJackson2JsonRedisSerializer(), 0);
+            case "smile-gzip" -> new CompactCacheSerializer(CacheConfig.createGenericJackson2JsonRedisSerializer(), 1024);
+            default -> throw new IllegalArgumentException(format);
+        };
+    }
+
+    private static Object sample(String section) {
+        return switch (section) {
+            case "realtime" -> SampleResponses.realtime();
+            case "daily" -> SampleResponses.daily();
+            case "hourly" -> SampleResponses.hourly();
+            case "indices" -> SampleResponses.indices();
+            default -> throw new IllegalArgumentException(section);
+        };
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        System.out.printf("%-10s %8s %8s %12s%n", "section", "json", "smile", "smile-gzip");
+        for (String section : new String[]{"realtime", "daily", "hourly", "indices"}) {
+            CacheEntry entry = new CacheEntry(sample(section), 0L, 600_000L);
+            System.out.printf("%-10s %8d %8d %12d%n", section,
+                    serializer("json").serialize(entry).length,
+                    serializer("smile").serialize(entry).length,
+                    serializer("smile-gzip").serialize(entry).length);
+        }
+        new Runner(new OptionsBuilder().include(CacheSerializerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
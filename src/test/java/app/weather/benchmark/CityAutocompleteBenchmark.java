@@ -0,0 +1,58 @@
+package app.weather.benchmark;
+
+import app.weather.service.CityAutocomplete;
+import app.weather.service.CityDataService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 城市/区县名称自动补全 (前缀树) 的查询耗时, 采样模式, 输出包含 p0.99 等分位数.
+ * <p>
+ * 运行 (带内存分配统计): java -cp ... org.openjdk.jmh.Main CityAutocompleteBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CityAutocompleteBenchmark {
+
+    /**
+     * 首字母 / 部分全拼 / 完整全拼 / 中文前缀
+     */
+    @Param({"bj", "beij", "shanghai", "北京"})
+    private String query;
+
+    private CityDataService cityDataService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cityDataService = new CityDataService();
+        cityDataService.init();
+    }
+
+    @Benchmark
+    public Object suggest() {
+        return cityDataService.suggest(query, CityAutocomplete.TOP_K);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CityAutocompleteBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,82 @@
+package app.weather.benchmark;
+
+import app.weather.service.CityDataService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 城市/区县名称搜索对比, 采样模式, 输出包含 p0.99 等分位数:
+ * <ul>
+ *     <li>linearScan: 原来的方式, 遍历全部一级行政区/城市/区县做 String.contains 并拼接结果</li>
+ *     <li>indexSearch: n-gram 倒排索引求交集, 排序后取前 20 条</li>
+ * </ul>
+ * 运行 (带内存分配统计): java -cp ... org.openjdk.jmh.Main CitySearchBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CitySearchBenchmark {
+
+    /**
+     * 大量匹配 / 常见两字 / 较长关键字 / 无匹配
+     */
+    @Param({"区", "朝阳", "乌鲁木齐", "不存在的地方"})
+    private String keyword;
+
+    private CityDataService cityDataService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cityDataService = new CityDataService();
+        cityDataService.init();
+    }
+
+    @Benchmark
+    public List<String> linearScan() {
+        List<String> results = new ArrayList<>();
+        for (String province : cityDataService.getAllCities()) {
+            for (Map.Entry<String, List<String>> entry : cityDataService.getCityDistrictMap(province).entrySet()) {
+                String cityName = entry.getKey();
+                if (cityName.contains(keyword)) {
+                    results.add(cityName + "-" + province);
+                }
+                for (String district : entry.getValue()) {
+                    if (district.contains(keyword)) {
+                        results.add(district + "-" + cityName + "-" + province);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    @Benchmark
+    public Object indexSearch() {
+        return cityDataService.search(keyword, 0, 20);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CitySearchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,82 @@
+package app.weather.benchmark;
+
+import app.weather.model.qweather.DailyWeatherResponse;
+import app.weather.model.qweather.HourlyWeatherResponse;
+import app.weather.model.qweather.RealTimeWeatherResponse;
+import app.weather.model.qweather.WeatherIndicesResponse;
+import app.weather.model.vo.GetWeatherVO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GetWeatherVO 各数据项的构建 (build) 与构建后序列化 (buildAndSerialize) 耗时.
+ * <p>
+ * 运行 (带内存分配统计): java -cp ... org.openjdk.jmh.Main GetWeatherVOBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetWeatherVOBenchmark {
+
+    @Param({"realtime", "daily", "hourly", "indices"})
+    private String section;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private RealTimeWeatherResponse realtime;
+
+    private DailyWeatherResponse daily;
+
+    private HourlyWeatherResponse hourly;
+
+    private WeatherIndicesResponse indices;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        realtime = SampleResponses.realtime();
+        daily = SampleResponses.daily();
+        hourly = SampleResponses.hourly();
+        indices = SampleResponses.indices();
+    }
+
+    @Benchmark
+    public GetWeatherVO build() {
+        GetWeatherVO vo = new GetWeatherVO();
+        return switch (section) {
+            case "realtime" -> vo.buildRealtimeWeather(realtime);
+            case "daily" -> vo.buildDailyWeather(daily);
+            case "hourly" -> vo.buildHourlyWeather(hourly);
+            case "indices" -> vo.buildWeatherIndices(indices);
+            default -> throw new IllegalArgumentException(section);
+        };
+    }
+
+    @Benchmark
+    public byte[] buildAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(build());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GetWeatherVOBenchmark.class.getSimpleName()).build()).run();
+    }
+}
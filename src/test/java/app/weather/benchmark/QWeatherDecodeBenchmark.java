@@ -0,0 +1,123 @@
+package app.weather.benchmark;
+
+import app.weather.config.WebClientConfig;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 和风天气响应解析对比, 输入按 1460 字节 (一个 TCP 分段) 切分为多个 DataBuffer:
+ * <ul>
+ *     <li>full-join: 原来的方式, 默认 ObjectMapper, 合并全部 DataBuffer 后解析所有字段</li>
+ *     <li>lean-join: 合并后解析, 通过 {@link WebClientConfig#createResponseObjectMapper()} 跳过未使用的字段</li>
+ *     <li>lean-stream: 逐个 DataBuffer 增量解析 (Jackson non-blocking parser), 同样跳过未使用的字段</li>
+ * </ul>
+ * 运行 (带内存分配统计): java -cp ... org.openjdk.jmh.Main QWeatherDecodeBenchmark -prof gc
+ * <p>
+ * main 方法会先打印各响应 JSON 原始大小与 gzip 后的大小.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QWeatherDecodeBenchmark {
+
+    private static final int CHUNK_SIZE = 1460;
+
+    private static final DefaultDataBufferFactory BUFFER_FACTORY = DefaultDataBufferFactory.sharedInstance;
+
+    @Param({"realtime", "daily", "hourly"})
+    private String section;
+
+    @Param({"full-join", "lean-join", "lean-stream"})
+    private String mode;
+
+    private Jackson2JsonDecoder decoder;
+
+    private ResolvableType type;
+
+    private List<byte[]> chunks;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = mode.startsWith("lean")
+                ? WebClientConfig.createResponseObjectMapper()
+                : new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        decoder = new Jackson2JsonDecoder(objectMapper);
+        Object sample = sample(section);
+        type = ResolvableType.forClass(sample.getClass());
+        chunks = split(new ObjectMapper().writeValueAsBytes(sample));
+    }
+
+    @Benchmark
+    public Object decode() {
+        Flux<DataBuffer> input = Flux.fromIterable(chunks).map(BUFFER_FACTORY::wrap);
+        if (mode.endsWith("stream")) {
+            return decoder.decode(input, type, MediaType.APPLICATION_JSON, Collections.emptyMap()).next().block();
+        }
+        return decoder.decodeToMono(input, type, MediaType.APPLICATION_JSON, Collections.emptyMap()).block();
+    }
+
+    private static List<byte[]> split(byte[] json) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < json.length; offset += CHUNK_SIZE) {
+            byte[] chunk = new byte[Math.min(CHUNK_SIZE, json.length - offset)];
+            System.arraycopy(json, offset, chunk, 0, chunk.length);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static Object sample(String section) {
+        return switch (section) {
+            case "realtime" -> SampleResponses.realtime();
+            case "daily" -> SampleResponses.daily();
+            case "hourly" -> SampleResponses.hourly();
+            default -> throw new IllegalArgumentException(section);
+        };
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        System.out.printf("%-10s %10s %10s%n", "section", "json", "gzip");
+        for (String section : new String[]{"realtime", "daily", "hourly", "indices"}) {
+            Object sample = "indices".equals(section) ? SampleResponses.indices() : sample(section);
+            byte[] json = new ObjectMapper().writeValueAsBytes(sample);
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                out.write(json);
+            }
+            System.out.printf("%-10s %10d %10d%n", section, json.length, gzipped.size());
+        }
+        new Runner(new OptionsBuilder().include(QWeatherDecodeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,144 @@
+package app.weather.benchmark;
+
+import app.weather.model.qweather.DailyWeatherResponse;
+import app.weather.model.qweather.HourlyWeatherResponse;
+import app.weather.model.qweather.QWeatherApiResponseBase;
+import app.weather.model.qweather.RealTimeWeatherResponse;
+import app.weather.model.qweather.WeatherIndicesResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试/单元测试使用的和风天气响应样例, 字段与条目数与真实接口一致
+ * (实时 1 条, 每日 7 天, 逐小时 24 小时, 指数 5 项)
+ */
+public final class SampleResponses {
+
+    private static final String[] TEXTS = {"晴", "多云", "阴", "小雨"};
+
+    private static final String[] WIND_DIRS = {"东北风", "东风", "南风", "西北风"};
+
+    private SampleResponses() {
+    }
+
+    public static RealTimeWeatherResponse realtime() {
+        RealTimeWeatherResponse response = base(new RealTimeWeatherResponse());
+        RealTimeWeatherResponse.NowData now = new RealTimeWeatherResponse.NowData();
+        now.setObsTime("2025-04-01T10:00+08:00");
+        now.setTemp("18");
+        now.setFeelsLike("17");
+        now.setIcon("101");
+        now.setText("多云");
+        now.setWind360("45");
+        now.setWindDir("东北风");
+        now.setWindScale("2");
+        now.setWindSpeed("9");
+        now.setHumidity("41");
+        now.setPrecip("0.0");
+        now.setPressure("1016");
+        now.setVis("16");
+        now.setCloud("40");
+        now.setDew("5");
+        response.setNow(now);
+        return response;
+    }
+
+    public static DailyWeatherResponse daily() {
+        DailyWeatherResponse response = base(new DailyWeatherResponse());
+        List<DailyWeatherResponse.Daily> days = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            DailyWeatherResponse.Daily day = new DailyWeatherResponse.Daily();
+            day.setFxDate(String.format("2025-04-%02d", i + 1));
+            day.setSunrise("06:0" + i);
+            day.setSunset("18:3" + i);
+            day.setMoonrise("1" + i + ":12");
+            day.setMoonset("0" + i + ":48");
+            day.setMoonPhase("峨眉月");
+            day.setMoonPhaseIcon("801");
+            day.setTempMax(String.valueOf(20 + i));
+            day.setTempMin(String.valueOf(8 + i));
+            day.setIconDay("10" + (i % 4));
+            day.setTextDay(TEXTS[i % 4]);
+            day.setIconNight("15" + (i % 2));
+            day.setTextNight(TEXTS[(i + 1) % 4]);
+            day.setWind360Day("45");
+            day.setWindDirDay(WIND_DIRS[i % 4]);
+            day.setWindScaleDay("1-3");
+            day.setWindSpeedDay("9");
+            day.setWind360Night("0");
+            day.setWindDirNight(WIND_DIRS[(i + 1) % 4]);
+            day.setWindScaleNight("1-3");
+            day.setWindSpeedNight("3");
+            day.setHumidity(String.valueOf(40 + i));
+            day.setPrecip("0.0");
+            day.setPressure("1015");
+            day.setVis("25");
+            day.setCloud("10");
+            day.setUvIndex("5");
+            days.add(day);
+        }
+        response.setDaily(days);
+        return response;
+    }
+
+    public static HourlyWeatherResponse hourly() {
+        HourlyWeatherResponse response = base(new HourlyWeatherResponse());
+        List<HourlyWeatherResponse.HourlyData> hours = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            HourlyWeatherResponse.HourlyData hour = new HourlyWeatherResponse.HourlyData();
+            hour.setFxTime(String.format("2025-04-01T%02d:00+08:00", i));
+            hour.setTemp(String.valueOf(10 + i % 10));
+            hour.setIcon("10" + (i % 4));
+            hour.setText(TEXTS[i / 6]);
+            hour.setWind360("45");
+            hour.setWindDir(WIND_DIRS[i / 6]);
+            hour.setWindScale("1-3");
+            hour.setWindSpeed("9");
+            hour.setHumidity(String.valueOf(40 + i));
+            hour.setPop(String.valueOf(i % 3 * 10));
+            hour.setPrecip("0.0");
+            hour.setPressure("1016");
+            hour.setCloud("30");
+            hour.setDew("4");
+            hours.add(hour);
+        }
+        response.setHourly(hours);
+        return response;
+    }
+
+    public static WeatherIndicesResponse indices() {
+        WeatherIndicesResponse response = base(new WeatherIndicesResponse());
+        String[][] items = {
+                {"1", "运动指数", "2", "较适宜", "天气较好，户外运动请注意防晒。"},
+                {"2", "洗车指数", "2", "较适宜", "较适宜洗车，未来一天无雨，风力较小。"},
+                {"3", "穿衣指数", "5", "较舒适", "建议穿薄外套或牛仔裤等服装。"},
+                {"5", "紫外线指数", "3", "中等", "属中等强度紫外线辐射天气，外出时建议涂擦防晒霜。"},
+                {"14", "晾晒指数", "1", "极适宜", "天气不错，抓紧时机让衣物晒太阳吧。"}
+        };
+        List<WeatherIndicesResponse.DailyIndex> indices = new ArrayList<>();
+        for (String[] item : items) {
+            WeatherIndicesResponse.DailyIndex index = new WeatherIndicesResponse.DailyIndex();
+            index.setDate("2025-04-01");
+            index.setType(item[0]);
+            index.setName(item[1]);
+            index.setLevel(item[2]);
+            index.setCategory(item[3]);
+            index.setText(item[4]);
+            indices.add(index);
+        }
+        response.setDaily(indices);
+        return response;
+    }
+
+    private static <T extends QWeatherApiResponseBase> T base(T response) {
+        response.setCode("200");
+        response.setUpdateTime("2025-04-01T10:02+08:00");
+        response.setFxLink("https://www.qweather.com/weather/beijing-101010100.html");
+        QWeatherApiResponseBase.Refer refer = new QWeatherApiResponseBase.Refer();
+        refer.setSources(List.of("QWeather"));
+        refer.setLicense(List.of("QWeather Developers License"));
+        response.setRefer(refer);
+        return response;
+    }
+}
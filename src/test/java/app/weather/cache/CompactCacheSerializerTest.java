@@ -0,0 +1,81 @@
+package app.weather.cache;
+
+import app.weather.benchmark.SampleResponses;
+import app.weather.config.CacheConfig;
+import app.weather.model.qweather.DailyWeatherResponse;
+import app.weather.model.qweather.HourlyWeatherResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class CompactCacheSerializerTest {
+
+    private final GenericJackson2JsonRedisSerializer jsonSerializer = CacheConfig.createGenericJackson2JsonRedisSerializer();
+
+    private final CompactCacheSerializer serializer = new CompactCacheSerializer(jsonSerializer, 1024);
+
+    @Test
+    void testRoundTripCacheEntry() {
+        DailyWeatherResponse daily = SampleResponses.daily();
+        CacheEntry entry = new CacheEntry(daily, 1_000L, 2_000L);
+
+        byte[] compact = serializer.serialize(entry);
+        byte[] json = jsonSerializer.serialize(entry);
+        log.info("每日天气 CacheEntry: JSON {} 字节, 紧凑格式 {} 字节", json.length, compact.length);
+
+        assertEquals(entry, serializer.deserialize(compact));
+        assertTrue(compact.length < json.length / 2);
+    }
+
+    @Test
+    void testCompressionAboveThreshold() {
+        HourlyWeatherResponse hourly = SampleResponses.hourly();
+        CompactCacheSerializer uncompressed = new CompactCacheSerializer(jsonSerializer, 0);
+
+        byte[] compressed = serializer.serialize(hourly);
+        assertEquals(1, compressed[2]);
+        assertTrue(compressed.length < uncompressed.serialize(hourly).length);
+        assertEquals(hourly, serializer.deserialize(compressed));
+    }
+
+    @Test
+    void testReadsLegacyJson() {
+        CacheEntry entry = new CacheEntry(SampleResponses.realtime(), 1_000L, 2_000L);
+        assertEquals(entry, serializer.deserialize(jsonSerializer.serialize(entry)));
+        assertEquals("token", serializer.deserialize(jsonSerializer.serialize("token")));
+    }
+
+    @Test
+    void testJsonWriteFormatStillReadsCompactValues() {
+        // 回滚到 json 写入格式后, 仍能读取之前以 Smile 写入的数据
+        CompactCacheSerializer jsonWriter = new CompactCacheSerializer(jsonSerializer, 1024, false);
+        CacheEntry entry = new CacheEntry(SampleResponses.realtime(), 1_000L, 2_000L);
+
+        byte[] written = jsonWriter.serialize(entry);
+        assertArrayEquals(jsonSerializer.serialize(entry), written);
+        assertEquals(entry, jsonWriter.deserialize(serializer.serialize(entry)));
+        assertEquals(entry, serializer.deserialize(written));
+    }
+
+    @Test
+    void testUnknownVersionIsTreatedAsMiss() {
+        byte[] bytes = serializer.serialize("sunny");
+        bytes[1] = 99;
+        assertNull(serializer.deserialize(bytes));
+    }
+
+    @Test
+    void testRejectsTypesOutsideAllowedPackages() {
+        byte[] bytes = serializer.serialize("sunny");
+        String encoded = new String(bytes, StandardCharsets.ISO_8859_1)
+                .replace("java.lang.String", "javax.xxxx.String");
+        assertThrows(SerializationException.class,
+                () -> serializer.deserialize(encoded.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+}
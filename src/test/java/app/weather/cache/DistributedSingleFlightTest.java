@@ -0,0 +1,152 @@
+package app.weather.cache;
+
+import app.weather.config.WeatherCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多实例场景下的上游请求次数测试, 需要本地 Redis:
+ * REDIS_TEST_HOST=localhost mvn test -Dtest=DistributedSingleFlightTest
+ */
+@Slf4j
+@EnabledIfEnvironmentVariable(named = "REDIS_TEST_HOST", matches = ".+")
+class DistributedSingleFlightTest {
+
+    private static final String CACHE_NAME = "realtimeWeatherCache";
+
+    private static final String LOCATION = "116.41,39.90";
+
+    private static final int INSTANCES = 4;
+
+    private static final int REQUESTS = 200;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private ReactiveStringRedisTemplate redisTemplate;
+
+    private RedisCacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(System.getenv("REDIS_TEST_HOST"),
+                Integer.parseInt(System.getenv().getOrDefault("REDIS_TEST_PORT", "6379")));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        cacheManager = RedisCacheManager.builder(connectionFactory)
+                .withCacheConfiguration(CACHE_NAME, RedisCacheConfiguration.defaultCacheConfig()
+                        .entryTtl(Duration.ofSeconds(30))
+                        .prefixCacheNameWith("test:")
+                        .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer())))
+                .build();
+        cacheManager.initializeCaches();
+        cleanUp();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cleanUp();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void testLeaseDeduplicatesUpstreamCallsAcrossInstances() {
+        int upstreamCalls = runLoad(true);
+        log.info("启用 Redis 租约: {} 个实例, {} 个并发请求, 上游请求 {} 次", INSTANCES, REQUESTS, upstreamCalls);
+        assertEquals(1, upstreamCalls);
+    }
+
+    @Test
+    void testWithoutLeaseEachInstanceCallsUpstream() {
+        int upstreamCalls = runLoad(false);
+        log.info("关闭 Redis 租约: {} 个实例, {} 个并发请求, 上游请求 {} 次", INSTANCES, REQUESTS, upstreamCalls);
+        assertEquals(INSTANCES, upstreamCalls);
+    }
+
+    @Test
+    void testLeaseIsReleasedWhenHolderCompletesEmpty() {
+        WeatherCacheProperties properties = new WeatherCacheProperties();
+        properties.getLease().setEnabled(true);
+        properties.getLease().setKeyPrefix("test:lease:");
+        DistributedSingleFlight singleFlight = new DistributedSingleFlight(properties, redisTemplate, cacheManager,
+                new SimpleMeterRegistry());
+
+        assertNull(singleFlight.<String>execute(CACHE_NAME, LOCATION, Mono::empty).block(Duration.ofSeconds(5)));
+
+        // 释放是异步的, 短时间内应完成 (远小于租约 ttl)
+        assertEquals(Boolean.FALSE, Mono.defer(() -> redisTemplate.hasKey("test:lease:" + CACHE_NAME + ":" + LOCATION))
+                .filter(leased -> !leased)
+                .repeatWhenEmpty(10, repeat -> repeat.delayElements(Duration.ofMillis(50)))
+                .block(Duration.ofSeconds(5)));
+    }
+
+    /**
+     * 模拟多个实例同时处理同一 location 的缓存未命中, 返回上游实际请求次数
+     */
+    private int runLoad(boolean leaseEnabled) {
+        WeatherCacheProperties properties = new WeatherCacheProperties();
+        properties.getLease().setEnabled(leaseEnabled);
+        properties.getLease().setKeyPrefix("test:lease:");
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        List<Instance> instances = IntStream.range(0, INSTANCES)
+                .mapToObj(i -> new Instance(new SingleFlight(new SimpleMeterRegistry()),
+                        new DistributedSingleFlight(properties, redisTemplate, cacheManager, new SimpleMeterRegistry())))
+                .toList();
+
+        List<String> results = Flux.range(0, REQUESTS)
+                .flatMap(i -> instances.get(i % INSTANCES).get(cache, () -> Mono.fromCallable(upstreamCalls::incrementAndGet)
+                        .delayElement(Duration.ofMillis(300))
+                        .map(n -> "sunny-" + n)), REQUESTS)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertNotNull(results);
+        assertEquals(REQUESTS, results.size());
+        return upstreamCalls.get();
+    }
+
+    private void cleanUp() {
+        redisTemplate.delete(Flux.just("test:lease:" + CACHE_NAME + ":" + LOCATION, "test:" + CACHE_NAME + "::" + LOCATION))
+                .block(Duration.ofSeconds(5));
+    }
+
+    /**
+     * 模拟一个节点上 @Cacheable 方法的行为: 读缓存, 未命中时合并请求并回填缓存
+     */
+    private record Instance(SingleFlight singleFlight, DistributedSingleFlight distributedSingleFlight) {
+
+        @SuppressWarnings("unchecked")
+        Mono<String> get(Cache cache, java.util.function.Supplier<Mono<String>> upstream) {
+            return Mono.fromFuture(() -> (CompletableFuture<Cache.ValueWrapper>) cache.retrieve(LOCATION))
+                    .mapNotNull(wrapper -> (String) wrapper.get())
+                    .switchIfEmpty(Mono.defer(() -> singleFlight.execute(CACHE_NAME, LOCATION,
+                            () -> distributedSingleFlight.execute(CACHE_NAME, LOCATION, upstream)
+                                    .doOnNext(value -> cache.put(LOCATION, value)))));
+        }
+    }
+}
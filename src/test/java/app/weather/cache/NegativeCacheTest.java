@@ -0,0 +1,50 @@
+package app.weather.cache;
+
+import app.weather.config.WeatherCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NegativeCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final NegativeCache negativeCache = new NegativeCache(new WeatherCacheProperties(), registry);
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @Test
+    void testClientErrorIsAbsorbed() {
+        for (int i = 0; i < 5; i++) {
+            assertThrows(WebClientResponseException.class, () -> call("realtimeWeatherCache", "999,999", 404));
+        }
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(4, registry.get("qweather.cache.negative")
+                .tags("cache", "realtimeWeatherCache", "type", "error", "result", "hit").counter().count());
+        // 其他 key 不受影响
+        assertThrows(WebClientResponseException.class, () -> call("realtimeWeatherCache", "116.41,39.90", 404));
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void testRateLimitIsNotCached() {
+        for (int i = 0; i < 3; i++) {
+            assertThrows(WebClientResponseException.class, () -> call("dailyWeatherCache", "116.41,39.90", 429));
+        }
+
+        assertEquals(3, upstreamCalls.get());
+    }
+
+    private Object call(String group, String key, int status) {
+        return negativeCache.guard(group, key, () -> Mono.fromCallable(() -> {
+            upstreamCalls.incrementAndGet();
+            throw WebClientResponseException.create(status, "error", null, null, null);
+        })).block();
+    }
+}
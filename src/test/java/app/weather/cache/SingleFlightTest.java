@@ -0,0 +1,47 @@
+package app.weather.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareOneUpstreamRequest() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight singleFlight = new SingleFlight(meterRegistry);
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        List<String> results = Flux.range(0, 20)
+                .flatMap(i -> singleFlight.execute("realtimeWeatherCache", "116.41,39.90",
+                        () -> Mono.fromCallable(upstreamCalls::incrementAndGet)
+                                .delayElement(Duration.ofMillis(100))
+                                .map(n -> "result-" + n)))
+                .collectList()
+                .block();
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(20, results.size());
+        assertTrue(results.stream().allMatch("result-1"::equals));
+        assertEquals(1, meterRegistry.get("qweather.singleflight.calls").tag("role", "leader").counter().count());
+        assertEquals(19, meterRegistry.get("qweather.singleflight.calls").tag("role", "follower").counter().count());
+    }
+
+    @Test
+    void testFinishedRequestIsNotReused() {
+        SingleFlight singleFlight = new SingleFlight(new SimpleMeterRegistry());
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        singleFlight.execute("dailyWeatherCache", "116.41,39.90", () -> Mono.fromCallable(upstreamCalls::incrementAndGet)).block();
+        singleFlight.execute("dailyWeatherCache", "116.41,39.90", () -> Mono.fromCallable(upstreamCalls::incrementAndGet)).block();
+
+        assertEquals(2, upstreamCalls.get());
+    }
+}
@@ -0,0 +1,297 @@
+package app.weather.cache;
+
+import app.weather.config.WeatherCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TwoLevelCacheManagerTest {
+
+    private static final String CACHE_NAME = "realtimeWeatherCache";
+
+    private static final String POLICY_CACHE_NAME = "hourlyWeatherCache";
+
+    private static final CachePolicy POLICY = new CachePolicy(Duration.ofMinutes(10), 0.8, Duration.ofMinutes(10), true,
+            Duration.ofMinutes(1));
+
+    private static final String CHANNEL = "test:invalidate";
+
+    private RedisCache redisCache;
+
+    private ReactiveStringRedisTemplate redisTemplate;
+
+    private Sinks.Many<ReactiveSubscription.Message<String, String>> channel;
+
+    private TwoLevelCacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        redisCache = mock(RedisCache.class);
+        when(redisCache.getCacheConfiguration())
+                .thenReturn(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(10)));
+        RedisCacheManager redisCacheManager = mock(RedisCacheManager.class);
+        when(redisCacheManager.getCache(CACHE_NAME)).thenReturn(redisCache);
+        when(redisCacheManager.getCache(POLICY_CACHE_NAME)).thenReturn(redisCache);
+        when(redisCacheManager.getCacheNames()).thenReturn(List.of(CACHE_NAME, POLICY_CACHE_NAME));
+
+        channel = Sinks.many().multicast().onBackpressureBuffer();
+        redisTemplate = mock(ReactiveStringRedisTemplate.class);
+        when(redisTemplate.convertAndSend(anyString(), anyString())).thenReturn(Mono.just(1L));
+        doReturn(channel.asFlux()).when(redisTemplate).listenToChannel(CHANNEL);
+
+        WeatherCacheProperties.L1 properties = new WeatherCacheProperties.L1();
+        properties.setInvalidationChannel(CHANNEL);
+        cacheManager = new TwoLevelCacheManager(redisCacheManager, properties, redisTemplate, new SimpleMeterRegistry(),
+                Map.of(POLICY_CACHE_NAME, POLICY), value -> !"error".equals(value));
+        cacheManager.afterPropertiesSet();
+    }
+
+    @Test
+    void testLocalHitSkipsRedis() {
+        when(redisCache.retrieve("116.41,39.90"))
+                .thenReturn(CompletableFuture.completedFuture(new SimpleValueWrapper("sunny")));
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+
+        assertEquals("sunny", cache.retrieve("116.41,39.90").join());
+        assertEquals("sunny", cache.retrieve("116.41,39.90").join());
+        verify(redisCache, times(1)).retrieve("116.41,39.90");
+    }
+
+    @Test
+    void testPutBroadcastsInvalidation() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        cache.put("116.41,39.90", "sunny");
+
+        verify(redisCache, timeout(1000)).put("116.41,39.90", "sunny");
+        verify(redisTemplate, timeout(1000)).convertAndSend(eq(CHANNEL), endsWith(":" + CACHE_NAME + ":116.41,39.90"));
+        assertEquals("sunny", cache.get("116.41,39.90").get());
+        verify(redisCache, never()).get("116.41,39.90");
+    }
+
+    @Test
+    void testRemoteInvalidationEvictsLocalEntry() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        cache.put("116.41,39.90", "sunny");
+        // 等待异步写入 Redis 完成, 避免与下面的打桩并发调用 mock
+        verify(redisCache, timeout(1000)).put(eq("116.41,39.90"), any());
+        when(redisCache.get("116.41,39.90")).thenReturn(new SimpleValueWrapper("rainy"));
+
+        channel.tryEmitNext(new ReactiveSubscription.ChannelMessage<>(CHANNEL, "other-node:" + CACHE_NAME + ":116.41,39.90"));
+
+        assertEquals("rainy", cache.get("116.41,39.90").get());
+    }
+
+    @Test
+    void testUncacheableValueIsNotWritten() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        cache.put("116.41,39.90", "error");
+
+        verify(redisCache, after(200).never()).put(any(), any());
+        when(redisCache.get("116.41,39.90")).thenReturn(null);
+        assertNull(cache.get("116.41,39.90"));
+    }
+
+    @Test
+    void testExpiredEntryServedStaleAndRefreshedInBackground() {
+        long now = System.currentTimeMillis();
+        CacheEntry stale = new CacheEntry("old", now - Duration.ofMinutes(15).toMillis(), now - Duration.ofMinutes(5).toMillis());
+        when(redisCache.retrieve("116.41,39.90")).thenReturn(CompletableFuture.completedFuture(new SimpleValueWrapper(stale)));
+        Cache cache = cacheManager.getCache(POLICY_CACHE_NAME);
+        AtomicInteger loads = new AtomicInteger();
+
+        Object value = cache.retrieve("116.41,39.90", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("new");
+        }).join();
+
+        assertEquals("old", value);
+        assertEquals(1, loads.get());
+        verify(redisCache, timeout(1000)).put(eq("116.41,39.90"), argThat(entry -> entry instanceof CacheEntry e && "new".equals(e.getValue())));
+        assertEquals("new", cache.retrieve("116.41,39.90").join());
+    }
+
+    @Test
+    void testRefreshAheadReturnsCurrentValueAndReloads() {
+        long now = System.currentTimeMillis();
+        CacheEntry aging = new CacheEntry("current", now - Duration.ofMinutes(9).toMillis(), now + Duration.ofMinutes(1).toMillis());
+        when(redisCache.retrieve("116.41,39.90")).thenReturn(CompletableFuture.completedFuture(new SimpleValueWrapper(aging)));
+        Cache cache = cacheManager.getCache(POLICY_CACHE_NAME);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        // 刷新未完成前的重复命中不会再次触发刷新
+        for (int i = 0; i < 3; i++) {
+            assertEquals("current", cache.retrieve("116.41,39.90", () -> {
+                loads.incrementAndGet();
+                return pending;
+            }).join());
+        }
+        assertEquals(1, loads.get());
+
+        pending.complete("refreshed");
+        assertEquals("refreshed", cache.retrieve("116.41,39.90").join());
+    }
+
+    @Test
+    void testConcurrentMissesLoadAndStoreOnce() {
+        when(redisCache.retrieve("116.41,39.90")).thenReturn(CompletableFuture.completedFuture(null));
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(cache.retrieve("116.41,39.90", () -> {
+                loads.incrementAndGet();
+                return pending;
+            }));
+        }
+        pending.complete("sunny");
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals("sunny", result.join());
+        }
+        assertEquals(1, loads.get());
+        verify(redisCache, times(1)).retrieve("116.41,39.90");
+        // 只写入一次, 只广播一次失效消息
+        verify(redisCache, timeout(1000)).put("116.41,39.90", "sunny");
+        verify(redisCache, after(200).times(1)).put(any(), any());
+        verify(redisTemplate, times(1)).convertAndSend(eq(CHANNEL), anyString());
+    }
+
+    @Test
+    void testValueFilledByAnotherNodeIsNotStoredAgain() {
+        long now = System.currentTimeMillis();
+        CacheEntry peerEntry = new CacheEntry("sunny", now - 1000, now + Duration.ofMinutes(5).toMillis());
+        when(redisCache.retrieve("116.41,39.90")).thenReturn(CompletableFuture.completedFuture(null),
+                CompletableFuture.completedFuture(new SimpleValueWrapper(peerEntry)));
+        TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(POLICY_CACHE_NAME);
+
+        // 未拿到租约, 等待期间读到其他节点回填的值 (见 DistributedSingleFlight)
+        CacheEntry entry = cache.retrieveEntry("116.41,39.90", () -> cache.readFilled("116.41,39.90")).join();
+
+        assertEquals("sunny", entry.getValue());
+        assertEquals(peerEntry.getCreatedAt(), entry.getCreatedAt());
+        assertEquals(peerEntry.getExpiresAt(), entry.getExpiresAt());
+        verify(redisCache, after(200).never()).put(any(), any());
+        verify(redisTemplate, never()).convertAndSend(eq(CHANNEL), anyString());
+    }
+
+    @Test
+    void testBackgroundRefreshUsesRefreshLoader() {
+        long now = System.currentTimeMillis();
+        CacheEntry stale = new CacheEntry("old", now - Duration.ofMinutes(15).toMillis(), now - Duration.ofMinutes(5).toMillis());
+        when(redisCache.retrieve("116.41,39.90")).thenReturn(CompletableFuture.completedFuture(new SimpleValueWrapper(stale)));
+        TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(POLICY_CACHE_NAME);
+        AtomicInteger loads = new AtomicInteger();
+        AtomicInteger refreshes = new AtomicInteger();
+
+        CacheEntry entry = cache.retrieveEntry("116.41,39.90", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("new");
+        }, () -> {
+            refreshes.incrementAndGet();
+            return CompletableFuture.completedFuture("refreshed");
+        }).join();
+
+        assertEquals("old", entry.getValue());
+        verify(redisCache, timeout(1000)).put(eq("116.41,39.90"), argThat(e -> e instanceof CacheEntry c && "refreshed".equals(c.getValue())));
+        assertEquals(0, loads.get());
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    void testReloadStoresFreshEntry() {
+        long now = System.currentTimeMillis();
+        CacheEntry aging = new CacheEntry("current", now - Duration.ofMinutes(9).toMillis(), now + Duration.ofMinutes(1).toMillis());
+        when(redisCache.retrieve("116.41,39.90")).thenReturn(CompletableFuture.completedFuture(new SimpleValueWrapper(aging)));
+        TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(POLICY_CACHE_NAME);
+
+        CacheEntry entry = cache.reload("116.41,39.90", () -> CompletableFuture.completedFuture("prefetched")).join();
+
+        assertEquals("prefetched", entry.getValue());
+        verify(redisCache).put(eq("116.41,39.90"), argThat(e -> e instanceof CacheEntry c && "prefetched".equals(c.getValue())));
+        assertEquals("prefetched", cache.retrieve("116.41,39.90").join());
+    }
+
+    @Test
+    void testRefreshLeftToLeaseHolderIsNotStored() {
+        long now = System.currentTimeMillis();
+        CacheEntry aging = new CacheEntry("current", now - Duration.ofMinutes(9).toMillis(), now + Duration.ofMinutes(1).toMillis());
+        when(redisCache.retrieve("116.41,39.90")).thenReturn(CompletableFuture.completedFuture(new SimpleValueWrapper(aging)));
+        TwoLevelCache cache = (TwoLevelCache) cacheManager.getCache(POLICY_CACHE_NAME);
+
+        // 其他节点持有租约并负责刷新, 本节点等待租约时读到当前条目, 不重复写入与广播
+        assertEquals("current", cache.retrieve("116.41,39.90", () -> cache.readFilled("116.41,39.90")).join());
+
+        verify(redisCache, after(200).never()).put(any(), any());
+        verify(redisTemplate, never()).convertAndSend(eq(CHANNEL), anyString());
+    }
+
+    @Test
+    void testExpiredEntryWithoutPolicyIsReloaded() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        when(redisCache.retrieve("116.41,39.90")).thenReturn(CompletableFuture.completedFuture(null));
+
+        Object value = cache.retrieve("116.41,39.90", () -> CompletableFuture.completedFuture("sunny")).join();
+
+        assertEquals("sunny", value);
+        verify(redisCache, timeout(1000)).put("116.41,39.90", "sunny");
+    }
+
+    @Test
+    void testNegativeResultIsCachedBriefly() {
+        when(redisCache.retrieve("0,0")).thenReturn(CompletableFuture.completedFuture(null));
+        Cache cache = cacheManager.getCache(POLICY_CACHE_NAME);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("error", cache.retrieve("0,0", () -> {
+                loads.incrementAndGet();
+                return CompletableFuture.completedFuture("error");
+            }).join());
+        }
+
+        assertEquals(1, loads.get());
+        verify(redisCache, timeout(1000)).put(eq("0,0"), argThat(entry -> entry instanceof CacheEntry e
+                && e.getExpiresAt() - e.getCreatedAt() == Duration.ofMinutes(1).toMillis()));
+    }
+
+    @Test
+    void testExpiredNegativeEntryIsNotServedStale() {
+        long now = System.currentTimeMillis();
+        CacheEntry negative = new CacheEntry("error", now - Duration.ofMinutes(2).toMillis(), now - Duration.ofMinutes(1).toMillis());
+        when(redisCache.retrieve("0,0")).thenReturn(CompletableFuture.completedFuture(new SimpleValueWrapper(negative)));
+        Cache cache = cacheManager.getCache(POLICY_CACHE_NAME);
+
+        Object value = cache.retrieve("0,0", () -> CompletableFuture.completedFuture("sunny")).join();
+
+        assertEquals("sunny", value);
+    }
+
+    private static String endsWith(String suffix) {
+        return argThat(message -> message != null && message.endsWith(suffix));
+    }
+}
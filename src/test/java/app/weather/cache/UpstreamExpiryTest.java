@@ -0,0 +1,81 @@
+package app.weather.cache;
+
+import app.weather.model.qweather.DailyWeatherResponse;
+import app.weather.model.qweather.RealTimeWeatherResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamExpiryTest {
+
+    private static final DateTimeFormatter QWEATHER_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mmxxx");
+
+    private static final OffsetDateTime NOW = OffsetDateTime.of(2024, 6, 1, 12, 0, 0, 0, ZoneOffset.ofHours(8));
+
+    private static final long NOW_MILLIS = NOW.toInstant().toEpochMilli();
+
+    private final UpstreamExpiry expiry = new UpstreamExpiry(Duration.ofMinutes(10), Duration.ofMinutes(1),
+            Duration.ofMinutes(15), 0);
+
+    @Test
+    void testTtlEndsAtNextPublication() {
+        // updateTime 3 分钟前, obsTime 更晚 (1 分钟前), 以 obsTime 为准
+        RealTimeWeatherResponse response = realTime(NOW.minusMinutes(3), NOW.minusMinutes(1));
+
+        assertEquals(Duration.ofMinutes(9), expiry.ttlFor(response, NOW_MILLIS, Duration.ofMinutes(10)));
+    }
+
+    @Test
+    void testTtlIsClamped() {
+        // 上游发布延迟: 按最短 TTL 重试
+        assertEquals(Duration.ofMinutes(1),
+                expiry.ttlFor(realTime(NOW.minusHours(1), null), NOW_MILLIS, Duration.ofMinutes(10)));
+        // 时间异常 (未来时间): 不超过最长 TTL
+        assertEquals(Duration.ofMinutes(15),
+                expiry.ttlFor(realTime(NOW.plusHours(1), null), NOW_MILLIS, Duration.ofMinutes(10)));
+    }
+
+    @Test
+    void testFallbackAndJitter() {
+        DailyWeatherResponse response = new DailyWeatherResponse();
+        response.setCode("200");
+        response.setUpdateTime("invalid");
+        assertEquals(Duration.ofHours(1), expiry.ttlFor(response, NOW_MILLIS, Duration.ofHours(1)));
+
+        UpstreamExpiry jittered = new UpstreamExpiry(Duration.ofMinutes(10), Duration.ofMinutes(1),
+                Duration.ofMinutes(15), 0.2);
+        long distinct = IntStream.range(0, 50)
+                .mapToObj(i -> jittered.ttlFor(realTime(NOW, null), NOW_MILLIS, Duration.ofMinutes(10)))
+                .peek(ttl -> assertTrue(ttl.compareTo(Duration.ofMinutes(8)) >= 0 && ttl.compareTo(Duration.ofMinutes(10)) <= 0))
+                .distinct()
+                .count();
+        assertTrue(distinct > 1);
+    }
+
+    @Test
+    void testPolicyUsesExpiry() {
+        CachePolicy policy = new CachePolicy(Duration.ofMinutes(10), 0.8, Duration.ofMinutes(10), true,
+                Duration.ofMinutes(5), expiry);
+        RealTimeWeatherResponse response = realTime(NOW.minusMinutes(4), null);
+
+        assertEquals(NOW_MILLIS + Duration.ofMinutes(6).toMillis(), policy.expiresAt(response, NOW_MILLIS, false));
+        assertEquals(NOW_MILLIS + Duration.ofMinutes(5).toMillis(), policy.expiresAt(response, NOW_MILLIS, true));
+        assertEquals(Duration.ofMinutes(15), policy.maxTtl());
+    }
+
+    private static RealTimeWeatherResponse realTime(OffsetDateTime updateTime, OffsetDateTime obsTime) {
+        RealTimeWeatherResponse response = new RealTimeWeatherResponse();
+        response.setCode("200");
+        response.setUpdateTime(updateTime.format(QWEATHER_TIME));
+        RealTimeWeatherResponse.NowData now = new RealTimeWeatherResponse.NowData();
+        now.setObsTime(obsTime == null ? null : obsTime.format(QWEATHER_TIME));
+        response.setNow(now);
+        return response;
+    }
+}
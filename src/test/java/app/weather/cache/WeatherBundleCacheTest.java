@@ -0,0 +1,131 @@
+package app.weather.cache;
+
+import app.weather.config.WeatherCacheProperties;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 聚合存储测试, 需要本地 Redis:
+ * REDIS_TEST_HOST=localhost mvn test -Dtest=WeatherBundleCacheTest
+ */
+@EnabledIfEnvironmentVariable(named = "REDIS_TEST_HOST", matches = ".+")
+class WeatherBundleCacheTest {
+
+    private static final String LOCATION = "116.41,39.90";
+
+    private static final String KEY = "test:bundle:" + LOCATION;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private WeatherBundleCache bundleCache;
+
+    private final AtomicInteger realtimeCalls = new AtomicInteger();
+
+    private final AtomicInteger dailyCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(System.getenv("REDIS_TEST_HOST"),
+                Integer.parseInt(System.getenv().getOrDefault("REDIS_TEST_PORT", "6379")));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        WeatherCacheProperties properties = new WeatherCacheProperties();
+        properties.getBundle().setKeyPrefix("test:bundle:");
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.activateDefaultTyping(objectMapper.getPolymorphicTypeValidator(),
+                ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReactiveStringRedisTemplate redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        bundleCache = new WeatherBundleCache(properties,
+                Map.of("realtimeWeatherCache", new CachePolicy(Duration.ofMillis(500), 0, Duration.ofMinutes(1), false),
+                        "dailyWeatherCache", new CachePolicy(Duration.ofHours(1), 0, Duration.ZERO, false)),
+                new GenericJackson2JsonRedisSerializer(objectMapper), connectionFactory,
+                new SingleFlight(registry), new DistributedSingleFlight(properties, redisTemplate, null, registry),
+                new NegativeCache(properties, registry), registry);
+        redisTemplate.delete(KEY).block(Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        new ReactiveStringRedisTemplate(connectionFactory).delete(KEY).block(Duration.ofSeconds(5));
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void testSectionsRefreshIndependently() throws InterruptedException {
+        assertEquals(Map.of("realtime", "sunny-1", "daily", "week-1"), load());
+        assertEquals(Map.of("realtime", "sunny-1", "daily", "week-1"), awaitWritten());
+        assertEquals(1, realtimeCalls.get());
+        assertEquals(1, dailyCalls.get());
+
+        // 实时数据过期后只重新请求实时数据, 每日数据仍从 Hash 读取
+        Thread.sleep(600);
+        assertEquals(Map.of("realtime", "sunny-2", "daily", "week-1"), load());
+        assertEquals(2, realtimeCalls.get());
+        assertEquals(1, dailyCalls.get());
+    }
+
+    @Test
+    void testCallerDeadlineDoesNotCancelSharedFetch() throws InterruptedException {
+        WeatherBundleCache.Section<String> slow = new WeatherBundleCache.Section<>("dailyWeatherCache", "daily",
+                String.class, () -> Mono.fromCallable(() -> "week-" + dailyCalls.incrementAndGet())
+                .delayElement(Duration.ofMillis(300)));
+
+        // 调用方的截止时间先到达, 共享的上游请求仍会完成并回写 Hash
+        CacheEntry timedOut = bundleCache.loadSections(LOCATION, List.of(slow)).get("daily")
+                .timeout(Duration.ofMillis(50), Mono.empty())
+                .block(Duration.ofSeconds(5));
+        assertNull(timedOut);
+
+        CacheEntry written = null;
+        for (int i = 0; i < 50 && written == null; i++) {
+            Thread.sleep(20);
+            written = bundleCache.readEntry(LOCATION, slow).block(Duration.ofSeconds(5));
+        }
+        assertNotNull(written);
+        assertEquals("week-1", written.getValue());
+        assertEquals(1, dailyCalls.get());
+    }
+
+    private Map<String, Object> load() {
+        return bundleCache.load(LOCATION, List.of(
+                new WeatherBundleCache.Section<>("realtimeWeatherCache", "realtime", String.class,
+                        () -> Mono.fromCallable(() -> "sunny-" + realtimeCalls.incrementAndGet())),
+                new WeatherBundleCache.Section<>("dailyWeatherCache", "daily", String.class,
+                        () -> Mono.fromCallable(() -> "week-" + dailyCalls.incrementAndGet()))
+        )).block(Duration.ofSeconds(5));
+    }
+
+    /**
+     * 写入是异步的, 等待两个 field 都写入 Hash
+     */
+    private Map<String, Object> awaitWritten() throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            Long size = new ReactiveStringRedisTemplate(connectionFactory).opsForHash().size(KEY).block();
+            if (size != null && size == 2) {
+                return load();
+            }
+            Thread.sleep(20);
+        }
+        return load();
+    }
+}
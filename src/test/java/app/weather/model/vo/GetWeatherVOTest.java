@@ -0,0 +1,56 @@
+package app.weather.model.vo;
+
+import app.weather.model.qweather.DailyWeatherResponse;
+import app.weather.model.qweather.HourlyWeatherResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GetWeatherVOTest {
+
+    @Test
+    void testHourlyTimeIsShownInBeijingTime() {
+        HourlyWeatherResponse response = new HourlyWeatherResponse();
+        response.setHourly(List.of(hourly("2025-04-01T16:00+08:00"), hourly("2025-04-01T08:00Z"),
+                hourly("2025-04-01T23:30-01:00")));
+
+        List<GetWeatherVO.HourlyWeather> hourlyWeather = new GetWeatherVO().buildHourlyWeather(response)
+                .getHourlyWeatherList();
+
+        assertEquals("16:00", hourlyWeather.get(0).getFxDate());
+        assertEquals("16:00", hourlyWeather.get(1).getFxDate());
+        assertEquals("08:30", hourlyWeather.get(2).getFxDate());
+    }
+
+    @Test
+    void testDailyDateAndDayOfWeek() {
+        LocalDate today = LocalDate.now(ZoneId.of("Asia/Shanghai"));
+        DailyWeatherResponse response = new DailyWeatherResponse();
+        response.setDaily(List.of(daily(today.toString()), daily("2025-04-07")));
+
+        List<GetWeatherVO.DailyWeather> dailyWeather = new GetWeatherVO().buildDailyWeather(response)
+                .getDailyWeatherList();
+
+        assertEquals(String.format("%02d月%02d日", today.getMonthValue(), today.getDayOfMonth()),
+                dailyWeather.get(0).getFxDate());
+        assertEquals("今天", dailyWeather.get(0).getDayOfWeek());
+        assertEquals("04月07日", dailyWeather.get(1).getFxDate());
+        assertEquals("周一", dailyWeather.get(1).getDayOfWeek());
+    }
+
+    private static HourlyWeatherResponse.HourlyData hourly(String fxTime) {
+        HourlyWeatherResponse.HourlyData data = new HourlyWeatherResponse.HourlyData();
+        data.setFxTime(fxTime);
+        return data;
+    }
+
+    private static DailyWeatherResponse.Daily daily(String fxDate) {
+        DailyWeatherResponse.Daily data = new DailyWeatherResponse.Daily();
+        data.setFxDate(fxDate);
+        return data;
+    }
+}
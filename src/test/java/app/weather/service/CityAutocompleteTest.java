@@ -0,0 +1,52 @@
+package app.weather.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CityAutocompleteTest {
+
+    private static CityDataService cityDataService;
+
+    @BeforeAll
+    static void setUp() {
+        cityDataService = new CityDataService();
+        cityDataService.init();
+    }
+
+    private static List<String> labels(String query) {
+        return cityDataService.suggest(query, CityAutocomplete.TOP_K).stream()
+                .map(CitySearchIndex.Entry::label)
+                .toList();
+    }
+
+    @Test
+    void testPinyinInitialsAndChinesePrefixes() {
+        assertEquals("北京市-北京市", labels("bj").get(0));
+        assertEquals("北京市-北京市", labels("beij").get(0));
+        assertEquals("北京市-北京市", labels("北京").get(0));
+        assertEquals("上海市-上海市", labels("shanghai").get(0));
+        assertEquals("上海市-上海市", labels("Shang Hai").get(0));
+    }
+
+    @Test
+    void testPolyphonicReadings() {
+        assertEquals("重庆市-重庆市", labels("chongqing").get(0));
+        assertEquals("长春市-吉林省", labels("changchun").get(0));
+        assertEquals("厦门市-福建省", labels("xiamen").get(0));
+    }
+
+    @Test
+    void testCitiesRankAboveDistrictsAndLimit() {
+        List<String> labels = labels("chaoyang");
+        assertEquals("朝阳市-辽宁省", labels.get(0));
+        assertTrue(labels.contains("朝阳区-北京市-北京市"));
+        assertEquals(3, cityDataService.suggest("z", 3).size());
+        assertTrue(labels("xyzxyz").isEmpty());
+        assertTrue(labels(" ").isEmpty());
+    }
+}
@@ -26,4 +26,19 @@ class CityDataServiceTest {
         log.info("searchDistrictWithCity: {}", searchDistrictWithCity);
         assertFalse(searchDistrictWithCity.isEmpty());
     }
+
+    @Test
+    void testProvinceIndexIsNormalizedAndReadOnly() {
+        // 重庆市的 "市辖区" 与 "县" 合并为重庆市
+        Map<String, List<String>> chongqing = cityDataService.getCityDistrictMap("重庆市");
+        assertEquals(Set.of("重庆市"), chongqing.keySet());
+        assertTrue(chongqing.get("重庆市").containsAll(List.of("渝中区", "城口县")));
+        // "省直辖县级行政区划" 下的县级市作为独立城市
+        assertEquals(List.of("济源市"), cityDataService.getCityDistrictMap("河南省").get("济源市"));
+
+        assertSame(chongqing, cityDataService.getCityDistrictMap("重庆市"));
+        assertThrows(UnsupportedOperationException.class, () -> chongqing.get("重庆市").add("测试区"));
+        assertTrue(cityDataService.getCityDistrictMap("不存在").isEmpty());
+        assertTrue(cityDataService.searchDistrictWithCity("渝中").contains("渝中区-重庆市-重庆市"));
+    }
 }
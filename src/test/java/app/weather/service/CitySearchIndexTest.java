@@ -0,0 +1,61 @@
+package app.weather.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CitySearchIndexTest {
+
+    private final CitySearchIndex index = new CitySearchIndex(provinceIndex());
+
+    private static Map<String, Map<String, List<String>>> provinceIndex() {
+        Map<String, Map<String, List<String>>> provinceIndex = new LinkedHashMap<>();
+        provinceIndex.put("北京市", Map.of("北京市", List.of("东城区", "朝阳区", "海淀区")));
+        Map<String, List<String>> jilin = new LinkedHashMap<>();
+        jilin.put("长春市", List.of("南关区", "朝阳区"));
+        jilin.put("朝阳市", List.of("双塔区", "北票市"));
+        provinceIndex.put("吉林省", jilin);
+        provinceIndex.put("湖南省", Map.of("张家界市", List.of("永定区", "武陵源区")));
+        return provinceIndex;
+    }
+
+    private List<String> labels(String keyword) {
+        return index.search(keyword, 0, 100).items().stream().map(CitySearchIndex.Entry::label).toList();
+    }
+
+    @Test
+    void testExactAndPrefixMatchesRankFirst() {
+        assertEquals(List.of("朝阳区-北京市-北京市", "朝阳区-长春市-吉林省", "朝阳市-吉林省"), labels("朝阳"));
+        assertEquals(List.of("朝阳区-北京市-北京市", "朝阳区-长春市-吉林省"), labels("朝阳区"));
+        assertEquals("北京市-北京市", labels("北京市").get(0));
+    }
+
+    @Test
+    void testNonContiguousBigramsAreNotMatched() {
+        // "张家界市" 的 bigram 中包含 "家界" 与 "界市", 但名称中不含 "家界市区"
+        assertTrue(labels("家界市区").isEmpty());
+        assertEquals(List.of("张家界市-湖南省"), labels("家界市"));
+        assertEquals(List.of("武陵源区-张家界市-湖南省"), labels("陵"));
+        assertTrue(labels("上海").isEmpty());
+    }
+
+    @Test
+    void testCursorPaging() {
+        CitySearchIndex.Page first = index.search("区", 0, 4);
+        assertEquals(4, first.items().size());
+        assertEquals(4, first.nextCursor());
+
+        CitySearchIndex.Page second = index.search("区", first.nextCursor(), 4);
+        assertEquals(first.total() - 4, second.items().size());
+        assertNull(second.nextCursor());
+        assertEquals(labels("区"), Stream.concat(first.items().stream(), second.items().stream())
+                .map(CitySearchIndex.Entry::label).toList());
+    }
+}
@@ -0,0 +1,139 @@
+package app.weather.service;
+
+import app.weather.cache.NegativeCache;
+import app.weather.cache.SingleFlight;
+import app.weather.config.WeatherCacheProperties;
+import app.weather.model.qweather.GeoLookupResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+class GeoLookupServiceTest {
+
+    /**
+     * 模拟和风天气的城市数据: {名称, 所属城市, 省份}
+     */
+    private static final String[][] CITIES = {
+            {"北京", "北京", "北京市"}, {"朝阳", "北京", "北京市"}, {"海淀", "北京", "北京市"}, {"东城", "北京", "北京市"},
+            {"西城", "北京", "北京市"}, {"丰台", "北京", "北京市"}, {"通州", "北京", "北京市"}, {"昌平", "北京", "北京市"},
+            {"大兴", "北京", "北京市"}, {"顺义", "北京", "北京市"}, {"房山", "北京", "北京市"}, {"怀柔", "北京", "北京市"},
+            {"朝阳", "朝阳", "辽宁省"}, {"北票", "朝阳", "辽宁省"}, {"北海", "北海", "广西壮族自治区"},
+            {"上海", "上海", "上海市"}, {"浦东新区", "上海", "上海市"}, {"徐汇", "上海", "上海市"},
+            {"广州", "广州", "广东省"}, {"天河", "广州", "广东省"}, {"杭州", "杭州", "浙江省"}, {"西湖", "杭州", "浙江省"},
+            {"成都", "成都", "四川省"}, {"武侯", "成都", "四川省"}, {"深圳", "深圳", "广东省"}, {"南山", "深圳", "广东省"},
+    };
+
+    /**
+     * 回放的搜索日志: 用户在搜索框中逐字输入, 每个字触发一次搜索
+     */
+    private static final List<String> TYPED_QUERIES = List.of(
+            "北京朝阳", "北京海淀", "北京", "朝阳", "上海浦东新区", "上海徐汇", "广州天河", "杭州西湖",
+            "成都武侯", "深圳南山", "北海", "北京通州", "上海", "朝阳", "北京朝阳", "杭州", "beijing", "beijing"
+    );
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    private GeoLookupService geoLookupService;
+
+    @BeforeEach
+    void setUp() {
+        QWeatherApi qWeatherApi = mock(QWeatherApi.class);
+        when(qWeatherApi.lookup(anyString())).thenAnswer(invocation -> {
+            upstreamCalls.incrementAndGet();
+            return Mono.just(search(invocation.getArgument(0)));
+        });
+        geoLookupService = new GeoLookupService(qWeatherApi, new ConcurrentMapCacheManager(GeoLookupService.CACHE_NAME),
+                new SingleFlight(new SimpleMeterRegistry()),
+                new NegativeCache(new WeatherCacheProperties(), new SimpleMeterRegistry()), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testPrefixResultIsNarrowedLocally() {
+        assertEquals(List.of("朝阳", "朝阳", "北票"), names(geoLookupService.lookup("朝").block()));
+        assertEquals(1, upstreamCalls.get());
+
+        // "朝" 的结果未被截断, "朝阳" 的候选城市一定都在其中, 直接在本地筛选
+        assertEquals(List.of("朝阳", "朝阳", "北票"), names(geoLookupService.lookup("朝阳").block()));
+        assertEquals(List.of("朝阳", "朝阳", "北票"), names(geoLookupService.lookup(" 朝阳 ").block()));
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void testTruncatedPrefixIsNotReused() {
+        // "北" 匹配超过 10 个城市, 结果被截断, "北京" 仍需请求上游
+        geoLookupService.lookup("北").block();
+        geoLookupService.lookup("北京").block();
+        assertEquals(2, upstreamCalls.get());
+        // "北京" 的结果同样被截断
+        geoLookupService.lookup("北京朝").block();
+        assertEquals(3, upstreamCalls.get());
+    }
+
+    @Test
+    void testNonChineseQueryOnlyUsesExactKey() {
+        geoLookupService.lookup("bei").block();
+        geoLookupService.lookup("beij").block();
+        geoLookupService.lookup("BEIJ").block();
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    /**
+     * 回放搜索日志, 对比不缓存/只按完整关键字缓存/前缀复用三种情况下的上游请求次数
+     */
+    @Test
+    void testReplayQueryLog() {
+        List<String> keystrokes = new ArrayList<>();
+        for (String query : TYPED_QUERIES) {
+            for (int i = 1; i <= query.length(); i++) {
+                keystrokes.add(query.substring(0, i));
+            }
+        }
+        Set<String> distinct = new HashSet<>();
+        for (String keystroke : keystrokes) {
+            GeoLookupResponse response = geoLookupService.lookup(keystroke).block();
+            assertNotNull(response);
+            assertEquals(names(search(keystroke)), names(response), "关键字: " + keystroke);
+            distinct.add(keystroke);
+        }
+        log.info("回放 {} 次城市搜索: 不缓存 {} 次上游请求, 按完整关键字缓存 {} 次, 前缀复用 {} 次",
+                keystrokes.size(), keystrokes.size(), distinct.size(), upstreamCalls.get());
+        assertTrue(upstreamCalls.get() < distinct.size());
+    }
+
+    private static GeoLookupResponse search(String keyword) {
+        List<GeoLookupResponse.City> matched = new ArrayList<>();
+        for (String[] row : CITIES) {
+            boolean pinyin = "beijing".startsWith(keyword) && row[1].equals("北京");
+            if (pinyin || row[0].contains(keyword) || row[1].contains(keyword) || row[2].contains(keyword)) {
+                GeoLookupResponse.City city = new GeoLookupResponse.City();
+                city.setName(row[0]);
+                city.setAdm2(row[1]);
+                city.setAdm1(row[2]);
+                matched.add(city);
+            }
+        }
+        GeoLookupResponse response = new GeoLookupResponse();
+        response.setCode("200");
+        response.setLocation(matched.subList(0, Math.min(matched.size(), QWeatherApi.LOOKUP_LIMIT)));
+        return response;
+    }
+
+    private static List<String> names(GeoLookupResponse response) {
+        return response.getLocation().stream().map(GeoLookupResponse.City::getName).toList();
+    }
+}
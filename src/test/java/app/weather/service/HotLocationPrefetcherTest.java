@@ -0,0 +1,91 @@
+package app.weather.service;
+
+import app.weather.benchmark.SampleResponses;
+import app.weather.config.PrefetchProperties;
+import app.weather.config.WeatherCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class HotLocationPrefetcherTest {
+
+    private static final String HOT = "116.41,39.92";
+
+    private static final String COLD = "121.47,31.23";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final CacheManager cacheManager = new ConcurrentMapCacheManager();
+
+    private QWeatherApi qWeatherApi;
+
+    private HotLocationPrefetcher prefetcher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        qWeatherApi = mock(QWeatherApi.class);
+        when(qWeatherApi.coalesce(anyString(), anyString(), any()))
+                .thenAnswer(invocation -> ((Supplier<Mono<?>>) invocation.getArgument(2)).get());
+        when(qWeatherApi.fetchRealtimeWeather(anyString())).thenReturn(Mono.just(SampleResponses.realtime()));
+        when(qWeatherApi.fetchDailyWeather(anyString())).thenReturn(Mono.just(SampleResponses.daily()));
+        when(qWeatherApi.fetchHourlyWeatherForecast24h(anyString())).thenReturn(Mono.just(SampleResponses.hourly()));
+        when(qWeatherApi.fetchWeatherIndices(anyString(), anyString())).thenReturn(Mono.just(SampleResponses.indices()));
+        PrefetchProperties properties = new PrefetchProperties();
+        properties.setEnabled(true);
+        properties.setPermitsPerSecond(1000);
+        prefetcher = new HotLocationPrefetcher(properties, new WeatherCacheProperties(), qWeatherApi, cacheManager,
+                registry);
+    }
+
+    @Test
+    void testOnlyHotLocationsArePrefetched() {
+        for (int i = 0; i < 5; i++) {
+            prefetcher.record(HOT);
+        }
+        prefetcher.record(COLD);
+
+        prefetcher.prefetchHotLocations().block();
+
+        assertEquals(List.of(HOT), prefetcher.getHotLocations());
+        verify(qWeatherApi).fetchRealtimeWeather(HOT);
+        verify(qWeatherApi, never()).fetchRealtimeWeather(COLD);
+        // 与用户请求共用请求合并
+        verify(qWeatherApi).coalesce(eq("realtimeWeatherCache"), eq(WeatherService.cacheKey(WeatherService.REALTIME, HOT)),
+                any());
+        assertNotNull(cacheManager.getCache("realtimeWeatherCache").get(HOT));
+        assertNotNull(cacheManager.getCache("weatherIndices").get(HOT + "-1,2,3,5,14"));
+        assertEquals(4, registry.get("qweather.prefetch.refreshes").tag("result", "success").counters().stream()
+                .mapToDouble(counter -> counter.count()).sum());
+
+        // 缓存仍然新鲜, 下一轮不再请求上游
+        prefetcher.record(HOT);
+        prefetcher.prefetchHotLocations().block();
+        verify(qWeatherApi, times(1)).fetchRealtimeWeather(HOT);
+    }
+
+    @Test
+    void testRequestAfterPrefetchCountsAsHit() {
+        for (int i = 0; i < 5; i++) {
+            prefetcher.record(HOT);
+        }
+        prefetcher.prefetchHotLocations().block();
+
+        prefetcher.record(HOT);
+
+        assertEquals(4, registry.get("qweather.prefetch.outcomes").tag("result", "hit").counter().count());
+        assertEquals(0, registry.get("qweather.prefetch.outcomes").tag("result", "wasted").counter().count());
+    }
+}
@@ -0,0 +1,87 @@
+package app.weather.service;
+
+import app.weather.config.JwtProperties;
+import app.weather.config.QWeatherApiConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.i2p.crypto.eddsa.EdDSAEngine;
+import net.i2p.crypto.eddsa.EdDSAPrivateKey;
+import net.i2p.crypto.eddsa.EdDSAPublicKey;
+import net.i2p.crypto.eddsa.KeyPairGenerator;
+import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
+import net.i2p.crypto.eddsa.spec.EdDSAPublicKeySpec;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtServiceTest {
+
+    private QWeatherApiConfig config;
+
+    private EdDSAPublicKey publicKey;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        KeyPair keyPair = new KeyPairGenerator().generateKeyPair();
+        EdDSAPrivateKey privateKey = (EdDSAPrivateKey) keyPair.getPrivate();
+        publicKey = new EdDSAPublicKey(new EdDSAPublicKeySpec(privateKey.getA(), privateKey.getParams()));
+        config = new QWeatherApiConfig();
+        config.setKeyId("kid");
+        config.setProjectId("project");
+        config.setPrivateKey(Base64.getEncoder().encodeToString(privateKey.getEncoded()));
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testTokenIsSignedOnceAndKeptInMemory() throws Exception {
+        JwtService jwtService = new JwtService(config, new JwtProperties(), registry);
+        String token = jwtService.getToken();
+
+        assertSame(token, jwtService.getToken());
+        assertEquals(1, registry.get("qweather.jwt.sign").timer().count());
+
+        String[] parts = token.split("\\.");
+        JSONObject payload = new JSONObject(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+        assertEquals("project", payload.getString("sub"));
+        assertEquals(Duration.ofHours(24).toSeconds(), payload.getLong("exp") - payload.getLong("iat"));
+
+        Signature verifier = new EdDSAEngine(MessageDigest.getInstance(
+                EdDSANamedCurveTable.getByName(EdDSANamedCurveTable.ED_25519).getHashAlgorithm()));
+        verifier.initVerify(publicKey);
+        verifier.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.UTF_8));
+        assertTrue(verifier.verify(Base64.getUrlDecoder().decode(parts[2])));
+    }
+
+    @Test
+    void testBackgroundRefreshRotatesBeforeExpiry() {
+        JwtProperties properties = new JwtProperties();
+        JwtService jwtService = new JwtService(config, properties, registry);
+        String token = jwtService.getToken();
+
+        // 剩余有效期仍大于 refresh-before, 不轮换
+        jwtService.refresh();
+        assertSame(token, jwtService.getToken());
+
+        // refresh-before 超过有效期, 下一次检查时轮换
+        properties.setRefreshBefore(Duration.ofHours(25));
+        jwtService.refresh();
+        assertEquals(2, registry.get("qweather.jwt.sign").timer().count());
+    }
+
+    @Test
+    void testInvalidKeyDoesNotFailStartup() {
+        config.setPrivateKey("not-a-key");
+        JwtService jwtService = new JwtService(config, new JwtProperties(), registry);
+        assertThrows(IllegalStateException.class, jwtService::getToken);
+    }
+}
@@ -0,0 +1,81 @@
+package app.weather.service;
+
+import app.weather.config.LocationProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class LocationCanonicalizerTest {
+
+    private final LocationCanonicalizer canonicalizer = new LocationCanonicalizer(new LocationProperties());
+
+    @Test
+    void testSnapToGrid() {
+        assertEquals(Optional.of("116.41,39.90"), canonicalizer.canonicalize("116.4074,39.9042"));
+        assertEquals(Optional.of("116.41,39.90"), canonicalizer.canonicalize("116.41,39.90"));
+        assertEquals(Optional.of("116.41,39.90"), canonicalizer.canonicalize(" 116.405 , 39.8951 "));
+        assertEquals(Optional.of("-0.13,0.00"), canonicalizer.canonicalize("-0.1278,-0.001"));
+    }
+
+    @Test
+    void testCoarserGrid() {
+        LocationProperties properties = new LocationProperties();
+        properties.setGrid(new BigDecimal("0.05"));
+        LocationCanonicalizer coarse = new LocationCanonicalizer(properties);
+        assertEquals(Optional.of("116.40,39.90"), coarse.canonicalize("116.4074,39.9042"));
+        assertEquals(Optional.of("121.45,31.25"), coarse.canonicalize("121.4737,31.2304"));
+    }
+
+    @Test
+    void testInvalidLocation() {
+        assertTrue(canonicalizer.canonicalize(null).isEmpty());
+        assertTrue(canonicalizer.canonicalize("").isEmpty());
+        assertTrue(canonicalizer.canonicalize("北京").isEmpty());
+        assertTrue(canonicalizer.canonicalize("116.41").isEmpty());
+        assertTrue(canonicalizer.canonicalize("116.41,39.90,1").isEmpty());
+        assertTrue(canonicalizer.canonicalize("181,39.90").isEmpty());
+        assertTrue(canonicalizer.canonicalize("116.41,-90.5").isEmpty());
+    }
+
+    /**
+     * 模拟移动端 GPS 抖动下的缓存命中率: 50 个热门地点, 每次请求在真实位置附近随机偏移 (σ≈100m),
+     * 假设缓存在 TTL 内容量足够, 命中率 = 1 - 不同 key 数 / 请求数
+     */
+    @Test
+    void testHitRatioWithGpsJitter() {
+        int requests = 20_000;
+        double rawHitRatio = simulateHitRatio(requests, location -> location);
+        double snappedHitRatio = simulateHitRatio(requests, location -> canonicalizer.canonicalize(location).orElseThrow());
+        log.info("GPS 抖动下的缓存命中率: 原始坐标 {}%, 对齐到 0.01° 网格 {}%",
+                String.format("%.2f", rawHitRatio * 100), String.format("%.2f", snappedHitRatio * 100));
+        assertTrue(rawHitRatio < 0.1);
+        assertTrue(snappedHitRatio > 0.95);
+    }
+
+    private static double simulateHitRatio(int requests, UnaryOperator<String> keyFunction) {
+        Random random = new Random(42);
+        double[][] places = new double[50][2];
+        for (double[] place : places) {
+            place[0] = 100 + random.nextDouble() * 20;
+            place[1] = 25 + random.nextDouble() * 15;
+        }
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < requests; i++) {
+            double[] place = places[random.nextInt(places.length)];
+            String location = String.format(Locale.ROOT, "%.6f,%.6f",
+                    place[0] + random.nextGaussian() * 0.001, place[1] + random.nextGaussian() * 0.001);
+            keys.add(keyFunction.apply(location));
+        }
+        return 1 - (double) keys.size() / requests;
+    }
+}
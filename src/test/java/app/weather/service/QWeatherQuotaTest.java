@@ -0,0 +1,115 @@
+package app.weather.service;
+
+import app.weather.config.QWeatherQuotaProperties;
+import app.weather.exception.QuotaExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 调用额度优先级测试, 需要本地 Redis:
+ * REDIS_TEST_HOST=localhost mvn test -Dtest=QWeatherQuotaTest
+ */
+@EnabledIfEnvironmentVariable(named = "REDIS_TEST_HOST", matches = ".+")
+class QWeatherQuotaTest {
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private ReactiveStringRedisTemplate redisTemplate;
+
+    private QWeatherQuotaProperties properties;
+
+    private SimpleMeterRegistry registry;
+
+    private QWeatherQuota quota;
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(System.getenv("REDIS_TEST_HOST"),
+                Integer.parseInt(System.getenv().getOrDefault("REDIS_TEST_PORT", "6379")));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        properties = new QWeatherQuotaProperties();
+        properties.setKeyPrefix("{qweather:quota:test}:");
+        properties.setDailyLimit(100);
+        registry = new SimpleMeterRegistry();
+        Clock clock = Clock.fixed(Instant.parse("2025-04-01T02:00:00Z"), ZoneId.of("Asia/Shanghai"));
+        quota = new QWeatherQuota(properties, redisTemplate, registry, clock);
+        cleanUp();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cleanUp();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void testLowPriorityStopsFirstAndHighPriorityUsesReserve() {
+        // LOW 保留 20%: 只能用到 80 次
+        assertEquals(80, callUntilRejected("lookup"));
+        // MEDIUM 保留 5%: 还能用到 95 次
+        assertEquals(15, callUntilRejected("daily"));
+        // HIGH 不保留: 用完剩余额度
+        assertEquals(5, callUntilRejected("now"));
+        assertEquals(100, upstreamCalls.get());
+        assertEquals(100, registry.get("qweather.quota.used").tag("window", "day").gauge().value());
+        assertEquals(1, registry.get("qweather.quota.calls").tags("endpoint", "now", "result", "rejected")
+                .counter().count());
+    }
+
+    @Test
+    void testMinuteLimit() {
+        properties.setDailyLimit(0);
+        properties.setMinuteLimit(10);
+
+        assertEquals(8, callUntilRejected("indices"));
+        assertEquals(2, callUntilRejected("now"));
+    }
+
+    @Test
+    void testBackgroundCallsUseLowerPriority() {
+        // 预取等后台调用即使请求 HIGH 接口, 也只能用到 LOW 的额度
+        assertEquals(80, callUntilRejected("now", QWeatherQuotaProperties.Priority.LOW));
+        assertEquals(20, callUntilRejected("now"));
+    }
+
+    private int callUntilRejected(String endpoint) {
+        return callUntilRejected(endpoint, QWeatherQuotaProperties.Priority.HIGH);
+    }
+
+    private int callUntilRejected(String endpoint, QWeatherQuotaProperties.Priority priority) {
+        int allowed = 0;
+        while (allowed < 1000) {
+            try {
+                QWeatherQuota.withPriority(quota.guard(endpoint, Mono.fromCallable(upstreamCalls::incrementAndGet)),
+                        priority).block();
+                allowed++;
+            } catch (QuotaExceededException e) {
+                return allowed;
+            }
+        }
+        return fail("额度未生效");
+    }
+
+    private void cleanUp() {
+        redisTemplate.keys(properties.getKeyPrefix() + "*").flatMap(redisTemplate::delete).blockLast();
+    }
+}
@@ -0,0 +1,84 @@
+package app.weather.service;
+
+import app.weather.config.QWeatherResilienceProperties;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QWeatherResilienceTest {
+
+    private QWeatherResilienceProperties properties;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new QWeatherResilienceProperties();
+        properties.getCircuitBreaker().setSlidingWindowSize(4);
+        properties.getCircuitBreaker().setMinimumNumberOfCalls(4);
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testServerErrorsOpenOnlyThatEndpoint() {
+        QWeatherResilience resilience = new QWeatherResilience(properties, registry);
+        for (int i = 0; i < 4; i++) {
+            call(resilience, "indices", Mono.error(serverError(503)));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, resilience.circuitBreaker("indices").getState());
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Throwable error = call(resilience, "indices", Mono.fromCallable(upstreamCalls::incrementAndGet));
+        assertInstanceOf(CallNotPermittedException.class, error);
+        assertEquals(0, upstreamCalls.get());
+        // 其他接口不受影响
+        assertNull(call(resilience, "now", Mono.just(1)));
+        assertEquals(1, registry.get("qweather.circuitbreaker.transitions")
+                .tags("name", "indices", "from", "closed", "to", "open").counter().count());
+    }
+
+    @Test
+    void testClientErrorsDoNotOpenCircuit() {
+        QWeatherResilience resilience = new QWeatherResilience(properties, registry);
+        for (int i = 0; i < 4; i++) {
+            call(resilience, "lookup", Mono.error(serverError(400)));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.circuitBreaker("lookup").getState());
+    }
+
+    @Test
+    void testBulkheadRejectsBeyondConcurrencyLimit() {
+        properties.getBulkhead().setMaxConcurrentCalls(1);
+        QWeatherResilience resilience = new QWeatherResilience(properties, registry);
+        resilience.protect("daily", Mono.delay(Duration.ofSeconds(5))).subscribe();
+
+        assertInstanceOf(BulkheadFullException.class, call(resilience, "daily", Mono.just(1)));
+        assertEquals(1, registry.get("qweather.bulkhead.rejections").tag("name", "daily").counter().count());
+        // 并发已满不计入熔断失败率
+        assertEquals(0, resilience.circuitBreaker("daily").getMetrics().getNumberOfFailedCalls());
+    }
+
+    private static Throwable call(QWeatherResilience resilience, String endpoint, Mono<?> upstream) {
+        try {
+            resilience.protect(endpoint, upstream).block();
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static WebClientResponseException serverError(int status) {
+        return WebClientResponseException.create(status, "error", null, null, null);
+    }
+}
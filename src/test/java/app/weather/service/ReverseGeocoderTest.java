@@ -0,0 +1,89 @@
+package app.weather.service;
+
+import app.weather.config.ReverseGeocodeProperties;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReverseGeocoderTest {
+
+    private static CityDataService cityDataService;
+
+    @BeforeAll
+    static void setUp() {
+        cityDataService = new CityDataService();
+        cityDataService.init();
+    }
+
+    private static ReverseGeocoder geocoder(String dataset) {
+        ReverseGeocodeProperties properties = new ReverseGeocodeProperties();
+        properties.setDataset(dataset);
+        ReverseGeocoder reverseGeocoder = new ReverseGeocoder(properties, cityDataService);
+        reverseGeocoder.init();
+        return reverseGeocoder;
+    }
+
+    @Test
+    void testResolvesNearestDistrict() {
+        ReverseGeocoder reverseGeocoder = geocoder("classpath:reverse-geocode-test.csv");
+        assertTrue(reverseGeocoder.isAvailable());
+
+        assertEquals("东城区-北京市-北京市", reverseGeocoder.resolve("116.40,39.91").orElseThrow().label());
+        assertEquals("黄浦区-上海市-上海市", reverseGeocoder.resolve(121.49, 31.23).orElseThrow().label());
+        // 只有城市中心点的行
+        assertEquals("济源市-河南省", reverseGeocoder.resolve(112.60, 35.07).orElseThrow().label());
+        // 超出 max-distance-km
+        assertTrue(reverseGeocoder.resolve(0, 0).isEmpty());
+        assertTrue(reverseGeocoder.resolve("abc").isEmpty());
+    }
+
+    @Test
+    void testMissingDatasetDisablesLookup() {
+        ReverseGeocoder reverseGeocoder = geocoder("classpath:not-exists.csv");
+        assertFalse(reverseGeocoder.isAvailable());
+        assertTrue(reverseGeocoder.resolve(116.40, 39.91).isEmpty());
+    }
+
+    @Test
+    void testKdTreeMatchesBruteForce() {
+        Random random = new Random(42);
+        List<CitySearchIndex.Entry> regions = new ArrayList<>();
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            regions.add(new CitySearchIndex.Entry("区" + i, "市", "省", "区" + i));
+            points.add(point(73 + random.nextDouble() * 62, 18 + random.nextDouble() * 36));
+        }
+        ReverseGeocoder.KdTree tree = new ReverseGeocoder.KdTree(regions, points);
+        for (int i = 0; i < 2000; i++) {
+            double[] target = point(73 + random.nextDouble() * 62, 18 + random.nextDouble() * 36);
+            int expected = 0;
+            for (int j = 1; j < points.size(); j++) {
+                if (squared(points.get(j), target) < squared(points.get(expected), target)) {
+                    expected = j;
+                }
+            }
+            assertSame(regions.get(expected), tree.nearest(target, Double.MAX_VALUE));
+        }
+    }
+
+    private static double[] point(double longitude, double latitude) {
+        double lon = Math.toRadians(longitude);
+        double lat = Math.toRadians(latitude);
+        return new double[]{Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat)};
+    }
+
+    private static double squared(double[] a, double[] b) {
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        double dz = a[2] - b[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
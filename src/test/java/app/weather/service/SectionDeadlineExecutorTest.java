@@ -0,0 +1,151 @@
+package app.weather.service;
+
+import app.weather.config.LatencyBudgetProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SectionDeadlineExecutorTest {
+
+    private LatencyBudgetProperties properties;
+
+    private SimpleMeterRegistry registry;
+
+    private SectionDeadlineExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        properties = new LatencyBudgetProperties();
+        properties.getHedge().setInitialDelay(Duration.ofMillis(50));
+        registry = new SimpleMeterRegistry();
+        executor = new SectionDeadlineExecutor(properties, registry);
+    }
+
+    @Test
+    void testHedgeWinsWhenPrimaryIsSlow() {
+        AtomicInteger hedges = new AtomicInteger();
+        String value = executor.execute("realtime", Duration.ofSeconds(1),
+                () -> Mono.just("primary").delayElement(Duration.ofMillis(500)),
+                () -> Mono.fromSupplier(() -> {
+                    hedges.incrementAndGet();
+                    return "hedge";
+                }),
+                Mono::empty).block();
+
+        assertEquals("hedge", value);
+        assertEquals(1, hedges.get());
+        assertEquals(1, registry.get("qweather.section.hedges").tag("section", "realtime").counter().count());
+    }
+
+    @Test
+    void testFastPrimaryDoesNotHedge() {
+        AtomicInteger hedges = new AtomicInteger();
+        String value = executor.execute("realtime", Duration.ofSeconds(1),
+                () -> Mono.just("primary"),
+                () -> Mono.fromSupplier(() -> {
+                    hedges.incrementAndGet();
+                    return "hedge";
+                }),
+                Mono::empty).block();
+
+        assertEquals("primary", value);
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    void testFailedPrimaryDoesNotHedge() {
+        AtomicInteger hedges = new AtomicInteger();
+        String value = executor.execute("realtime", Duration.ofSeconds(1),
+                () -> Mono.<String>error(new IllegalStateException("negative")),
+                () -> Mono.fromSupplier(() -> {
+                    hedges.incrementAndGet();
+                    return "hedge";
+                }),
+                () -> Mono.just("stale")).block();
+
+        assertEquals("stale", value);
+        assertEquals(0, hedges.get());
+        assertTrue(registry.find("qweather.section.hedges").tag("section", "realtime").counters().isEmpty());
+    }
+
+    @Test
+    void testFailedHedgeWaitsForPrimary() {
+        String value = executor.execute("realtime", Duration.ofSeconds(1),
+                () -> Mono.just("primary").delayElement(Duration.ofMillis(200)),
+                () -> Mono.<String>error(new IllegalStateException("boom")),
+                Mono::empty).block();
+
+        assertEquals("primary", value);
+        assertEquals(1, registry.get("qweather.section.hedges").tag("section", "realtime").counter().count());
+    }
+
+    @Test
+    void testHedgeDelayIgnoresCacheHits() {
+        properties.getHedge().setMinSamples(2);
+        properties.getHedge().setMinDelay(Duration.ofMillis(50));
+        for (int i = 0; i < 2; i++) {
+            executor.timeUpstream("daily", () -> Mono.just("upstream").delayElement(Duration.ofMillis(150))).block();
+        }
+        // 缓存命中不计入上游耗时, 不会把对冲延迟压低到 min-delay
+        for (int i = 0; i < 40; i++) {
+            executor.execute("daily", Duration.ofSeconds(1), () -> Mono.just("cached"), () -> Mono.just("hedge"),
+                    Mono::empty).block();
+        }
+        assertEquals(2, registry.get("qweather.section.latency").tag("section", "daily").timer().count());
+
+        String value = executor.execute("daily", Duration.ofSeconds(1),
+                () -> Mono.just("primary").delayElement(Duration.ofMillis(100)),
+                () -> Mono.just("hedge"),
+                Mono::empty).block();
+
+        assertEquals("primary", value);
+        assertTrue(registry.find("qweather.section.hedges").tag("section", "daily").counters().isEmpty());
+    }
+
+    @Test
+    void testDeadlineFallsBackToStaleValue() {
+        properties.getHedge().setEnabled(false);
+        long start = System.nanoTime();
+        String value = executor.execute("daily", Duration.ofMillis(100),
+                () -> Mono.just("primary").delayElement(Duration.ofSeconds(5)),
+                null,
+                () -> Mono.just("stale")).block();
+
+        assertEquals("stale", value);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) < 0);
+        assertEquals(1, registry.get("qweather.section.fallbacks")
+                .tags("section", "daily", "reason", "deadline", "result", "stale").counter().count());
+    }
+
+    @Test
+    void testErrorWithoutStaleValueIsEmpty() {
+        String value = executor.execute("hourly", Duration.ofSeconds(1),
+                () -> Mono.<String>error(new IllegalStateException("boom")),
+                null,
+                Mono::empty).block();
+
+        assertNull(value);
+        assertEquals(1, registry.get("qweather.section.fallbacks")
+                .tags("section", "hourly", "reason", "error", "result", "empty").counter().count());
+    }
+
+    @Test
+    void testResolveBudget() {
+        properties.getSections().put("realtime", Duration.ofMillis(800));
+
+        assertEquals(properties.getBudget(), executor.resolveBudget(null));
+        assertEquals(properties.getBudget(), executor.resolveBudget("abc"));
+        assertEquals(Duration.ofMillis(1000), executor.resolveBudget("1000"));
+        assertEquals(properties.getMinBudget(), executor.resolveBudget("10"));
+        assertEquals(properties.getMaxBudget(), executor.resolveBudget("600000"));
+        assertEquals(Duration.ofMillis(800), executor.deadline("realtime", Duration.ofSeconds(2)));
+        assertEquals(Duration.ofMillis(500), executor.deadline("realtime", Duration.ofMillis(500)));
+        assertEquals(Duration.ofSeconds(2), executor.deadline("daily", Duration.ofSeconds(2)));
+    }
+}
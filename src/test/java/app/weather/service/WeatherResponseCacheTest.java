@@ -0,0 +1,132 @@
+package app.weather.service;
+
+import app.weather.cache.CacheChangeListener;
+import app.weather.cache.TwoLevelCacheManager;
+import app.weather.config.WeatherCacheProperties;
+import app.weather.model.vo.GetWeatherVO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WeatherResponseCacheTest {
+
+    private static final String LOCATION = "116.41,39.92";
+
+    private WeatherResponseCache responseCache;
+
+    private CacheChangeListener listener;
+
+    @BeforeEach
+    void setUp() {
+        TwoLevelCacheManager cacheManager = mock(TwoLevelCacheManager.class);
+        responseCache = new WeatherResponseCache(new WeatherCacheProperties(), cacheManager, new ObjectMapper(),
+                new SimpleMeterRegistry());
+        ArgumentCaptor<CacheChangeListener> captor = ArgumentCaptor.forClass(CacheChangeListener.class);
+        verify(cacheManager).addListener(captor.capture());
+        listener = captor.getValue();
+    }
+
+    @Test
+    void testCachedBytesAreServedWithGzip() throws IOException {
+        String key = responseCache.key(LOCATION, WeatherService.SECTIONS, WeatherService.INDICES_TYPES);
+        WeatherResponseCache.Encoded encoded = responseCache.encode(Map.of("text", "晴".repeat(1000)));
+        responseCache.put(key, LOCATION, WeatherService.SECTIONS, encoded, responseCache.generation());
+
+        WeatherResponseCache.Encoded cached = responseCache.get(key);
+        assertNotNull(cached);
+        assertArrayEquals(encoded.json(), cached.json());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8");
+        ResponseEntity<byte[]> response = responseCache.toResponse(cached, headers);
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+            assertArrayEquals(encoded.json(), in.readAllBytes());
+        }
+
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0");
+        assertNull(responseCache.toResponse(cached, headers).getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void testSectionChangeInvalidatesDependentResponses() {
+        String all = responseCache.key(LOCATION, WeatherService.SECTIONS, WeatherService.INDICES_TYPES);
+        String realtime = responseCache.key(LOCATION, List.of(WeatherService.REALTIME), WeatherService.INDICES_TYPES);
+        put(all, WeatherService.SECTIONS);
+        put(realtime, List.of(WeatherService.REALTIME));
+
+        listener.onChange("weatherIndices", LOCATION + "-1,2,3,5,14");
+        assertNull(responseCache.get(all));
+        assertNotNull(responseCache.get(realtime));
+
+        listener.onChange("realtimeWeatherCache", "121.47,31.23");
+        assertNotNull(responseCache.get(realtime));
+        listener.onChange("realtimeWeatherCache", LOCATION);
+        assertNull(responseCache.get(realtime));
+    }
+
+    @Test
+    void testResponseBuiltBeforeChangeIsNotCached() {
+        String key = responseCache.key(LOCATION, WeatherService.SECTIONS, WeatherService.INDICES_TYPES);
+        long generation = responseCache.generation();
+
+        listener.onChange("dailyWeatherCache", LOCATION);
+        responseCache.put(key, LOCATION, WeatherService.SECTIONS, responseCache.encode(Map.of()), generation);
+
+        assertNull(responseCache.get(key));
+    }
+
+    @Test
+    void testResponseExpiresWithEarliestSection() throws InterruptedException {
+        GetWeatherVO vo = new GetWeatherVO();
+        long now = System.currentTimeMillis();
+        GetWeatherVO.SectionStatus realtime = GetWeatherVO.SectionStatus.of(GetWeatherVO.SectionStatus.OK, null);
+        realtime.setExpiresAt(now + 100);
+        GetWeatherVO.SectionStatus daily = GetWeatherVO.SectionStatus.of(GetWeatherVO.SectionStatus.OK, null);
+        daily.setExpiresAt(now + 60_000);
+        vo.getSections().put(WeatherService.REALTIME, realtime);
+        vo.getSections().put(WeatherService.DAILY, daily);
+        assertEquals(now + 100, WeatherResponseCache.expiresAt(vo));
+
+        List<String> sections = List.of(WeatherService.REALTIME, WeatherService.DAILY);
+        String key = responseCache.key(LOCATION, sections, WeatherService.INDICES_TYPES);
+        responseCache.put(key, LOCATION, sections, responseCache.encode(Map.of()), responseCache.generation(),
+                WeatherResponseCache.expiresAt(vo));
+        assertNotNull(responseCache.get(key));
+
+        // 最早过期的数据项过期后不再返回基于它的响应 (qweather.cache.response.ttl 尚未到期)
+        Thread.sleep(150);
+        assertNull(responseCache.get(key));
+    }
+
+    @Test
+    void testResponseWithStaleSectionIsNotCacheable() {
+        GetWeatherVO vo = new GetWeatherVO();
+        vo.getSections().put(WeatherService.REALTIME, GetWeatherVO.SectionStatus.of(GetWeatherVO.SectionStatus.OK, null));
+        vo.getSections().put(WeatherService.DAILY, GetWeatherVO.SectionStatus.of(GetWeatherVO.SectionStatus.OK, null));
+        assertTrue(WeatherResponseCache.isCacheable(vo));
+
+        vo.getSections().put(WeatherService.DAILY, GetWeatherVO.SectionStatus.of(GetWeatherVO.SectionStatus.STALE, null));
+        assertFalse(WeatherResponseCache.isCacheable(vo));
+
+        vo.getSections().put(WeatherService.DAILY, GetWeatherVO.SectionStatus.of(GetWeatherVO.SectionStatus.MISSING, null));
+        assertFalse(WeatherResponseCache.isCacheable(vo));
+    }
+
+    private void put(String key, List<String> sections) {
+        responseCache.put(key, LOCATION, sections, responseCache.encode(Map.of("key", key)), responseCache.generation());
+    }
+}
@@ -0,0 +1,152 @@
+package app.weather.service;
+
+import app.weather.benchmark.SampleResponses;
+import app.weather.cache.CacheEntry;
+import app.weather.cache.NegativeCache;
+import app.weather.cache.SingleFlight;
+import app.weather.cache.TwoLevelCache;
+import app.weather.cache.WeatherBundleCache;
+import app.weather.config.LatencyBudgetProperties;
+import app.weather.config.WeatherCacheProperties;
+import app.weather.model.vo.GetWeatherVO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class WeatherServiceTest {
+
+    private static final String LOCATION = "116.41,39.92";
+
+    private QWeatherApi qWeatherApi;
+
+    private WeatherService weatherService;
+
+    private LatencyBudgetProperties latencyBudgetProperties;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        qWeatherApi = mock(QWeatherApi.class);
+        when(qWeatherApi.getRealtimeWeather(anyString())).thenReturn(Mono.just(SampleResponses.realtime()));
+        when(qWeatherApi.getDailyWeather(anyString())).thenReturn(Mono.just(SampleResponses.daily()));
+        when(qWeatherApi.getHourlyWeatherForecast24h(anyString())).thenReturn(Mono.just(SampleResponses.hourly()));
+        when(qWeatherApi.getWeatherIndices(anyString(), anyString()))
+                .thenReturn(Mono.error(new IllegalStateException("indices unavailable")));
+        when(qWeatherApi.fetchWeatherIndices(anyString(), anyString()))
+                .thenReturn(Mono.error(new IllegalStateException("indices unavailable")));
+        latencyBudgetProperties = new LatencyBudgetProperties();
+        registry = new SimpleMeterRegistry();
+        weatherService = weatherService(new ConcurrentMapCacheManager());
+    }
+
+    private WeatherService weatherService(CacheManager cacheManager) {
+        return new WeatherService(qWeatherApi, mock(WeatherBundleCache.class), new WeatherCacheProperties(),
+                latencyBudgetProperties, new SectionDeadlineExecutor(latencyBudgetProperties, registry),
+                cacheManager, new SingleFlight(registry), new NegativeCache(new WeatherCacheProperties(), registry));
+    }
+
+    @Test
+    void testFailedSectionDoesNotDropOthers() {
+        GetWeatherVO vo = weatherService.getWeather(LOCATION).block();
+
+        assertNotNull(vo);
+        assertEquals("18", vo.getTemp());
+        assertEquals(7, vo.getDailyWeatherList().size());
+        assertEquals(24, vo.getHourlyWeatherList().size());
+        assertNull(vo.getIndicesList());
+        assertEquals(Map.of("realtime", "ok", "daily", "ok", "hourly", "ok", "indices", "missing"), statuses(vo));
+        assertNotNull(vo.getSections().get("realtime").getUpdateTime());
+    }
+
+    @Test
+    void testOnlyRequestedSectionsAreFetched() {
+        GetWeatherVO vo = weatherService.getWeather(LOCATION, Duration.ofSeconds(1), List.of("realtime"),
+                WeatherService.INDICES_TYPES).block();
+
+        assertNotNull(vo);
+        assertEquals(Map.of("realtime", "ok"), statuses(vo));
+        verify(qWeatherApi, never()).getDailyWeather(anyString());
+        verify(qWeatherApi, never()).getWeatherIndices(anyString(), anyString());
+    }
+
+    @Test
+    void testIndicesTypeSubsetIsFilteredLocally() {
+        when(qWeatherApi.getWeatherIndices(anyString(), anyString())).thenReturn(Mono.just(SampleResponses.indices()));
+
+        GetWeatherVO vo = weatherService.getWeather(LOCATION, Duration.ofSeconds(1), List.of("indices"), List.of("3"))
+                .block();
+
+        assertNotNull(vo);
+        assertEquals(List.of("3"), vo.getIndicesList().stream().map(GetWeatherVO.WeatherIndices::getType).toList());
+        // 仍按默认类型请求, 与其他客户端共用缓存
+        verify(qWeatherApi).getWeatherIndices(LOCATION, "1,2,3,5,14");
+    }
+
+    @Test
+    void testExpiredEntryServedFromCacheIsStale() {
+        long now = System.currentTimeMillis();
+        TwoLevelCache realtimeCache = mock(TwoLevelCache.class);
+        when(realtimeCache.retrieveEntry(eq(LOCATION), any(), any())).thenReturn(CompletableFuture.completedFuture(
+                new CacheEntry(SampleResponses.realtime(), now - Duration.ofMinutes(30).toMillis(),
+                        now - Duration.ofMinutes(10).toMillis())));
+        CacheManager cacheManager = mock(CacheManager.class);
+        when(cacheManager.getCache("realtimeWeatherCache")).thenReturn(realtimeCache);
+
+        GetWeatherVO vo = weatherService(cacheManager).getWeather(LOCATION, Duration.ofSeconds(1),
+                List.of("realtime", "daily"), WeatherService.INDICES_TYPES).block();
+
+        assertNotNull(vo);
+        assertEquals("18", vo.getTemp());
+        // 两级缓存返回的旧值如实标记为 stale, 其他缓存的结果视为新鲜
+        assertEquals(Map.of("realtime", "stale", "daily", "ok"), statuses(vo));
+        assertFalse(WeatherResponseCache.isCacheable(vo));
+        verify(qWeatherApi, never()).getRealtimeWeather(anyString());
+    }
+
+    @Test
+    void testBundleSectionPastDeadlineFallsBackToStoredEntry() {
+        long now = System.currentTimeMillis();
+        WeatherBundleCache bundleCache = mock(WeatherBundleCache.class);
+        when(bundleCache.loadSections(eq(LOCATION), any())).thenReturn(Map.of(
+                "realtime", Mono.never(),
+                "daily", Mono.just(CacheEntry.of(SampleResponses.daily()))));
+        when(bundleCache.readEntry(eq(LOCATION), any())).thenReturn(Mono.just(new CacheEntry(SampleResponses.realtime(),
+                now - Duration.ofMinutes(30).toMillis(), now - Duration.ofMinutes(10).toMillis())));
+        WeatherCacheProperties cacheProperties = new WeatherCacheProperties();
+        cacheProperties.setStorageMode(WeatherCacheProperties.StorageMode.BUNDLE);
+        WeatherService bundleService = new WeatherService(qWeatherApi, bundleCache, cacheProperties,
+                latencyBudgetProperties, new SectionDeadlineExecutor(latencyBudgetProperties, registry),
+                new ConcurrentMapCacheManager(), new SingleFlight(registry),
+                new NegativeCache(cacheProperties, registry));
+
+        GetWeatherVO vo = bundleService.getWeather(LOCATION, Duration.ofMillis(200), List.of("realtime", "daily"),
+                WeatherService.INDICES_TYPES).block(Duration.ofSeconds(5));
+
+        assertNotNull(vo);
+        assertEquals("18", vo.getTemp());
+        assertEquals(Map.of("realtime", "stale", "daily", "ok"), statuses(vo));
+        // 截止时间只作用于本次请求的等待, 不另行请求上游
+        verify(qWeatherApi, never()).fetchRealtimeWeather(anyString());
+    }
+
+    private static Map<String, String> statuses(GetWeatherVO vo) {
+        return vo.getSections().entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getStatus()));
+    }
+}